@@ -0,0 +1,159 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.ConcurrentLedger;
+import com.pluralsight.GroupKey;
+import com.pluralsight.LedgerAnalytics;
+import com.pluralsight.LedgerLoader;
+import com.pluralsight.Money;
+import com.pluralsight.PagedView;
+import com.pluralsight.ReportPeriod;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+//Times the analytics reports on a generated ledger of tens of millions of rows: LedgerAnalytics on the
+//fork-join pool against a HashMap keyed by vendor and filled one row at a time, the usual first version
+//of such a report. The ledger is added to the store 100,000 lines at a time so the heap only holds the store.
+//Last year by vendor and month is then run again through a ConcurrentLedger, from its ReportCache after the first run,
+//and last year's period report right after each of a few deposits, which it can't take from the cache.
+public final class AnalyticsBenchmark {
+    private static final int BATCH = 100_000;
+
+    private AnalyticsBenchmark() {
+    }
+
+    /**
+     * Usage: AnalyticsBenchmark [rows] [rounds]
+     */
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = LedgerGenerator.cached(rows);
+        TransactionStore store = load(file);
+        System.out.printf("Ledger of %,d rows, %d fork-join workers%n", store.size(),
+                ForkJoinPool.getCommonPoolParallelism());
+        verifySame(legacyVendorTotals(store), report(store, GroupKey.VENDOR, null, null));
+
+        LocalDate yearAgo = LocalDate.now().minusYears(1);
+        for (int round = 1; round <= rounds; round++) {
+            long legacyNanos = time(() -> legacyVendorTotals(store));
+            long vendorNanos = time(() -> report(store, GroupKey.VENDOR, null, null));
+            long vendorMonthNanos = time(() -> report(store, GroupKey.VENDOR, GroupKey.MONTH, null));
+            long descriptionNanos = time(() -> report(store, GroupKey.DESCRIPTION, null, null));
+            long lastYearNanos = time(() -> report(store, GroupKey.DAY, null, yearAgo));
+            System.out.printf("Round %d: HashMap per vendor %,d ms, per vendor %,d ms (%.1fx), vendor by month %,d ms,"
+                            + " per description %,d ms, per day of the last year %,d ms%n",
+                    round, legacyNanos / 1_000_000, vendorNanos / 1_000_000, (double) legacyNanos / vendorNanos,
+                    vendorMonthNanos / 1_000_000, descriptionNanos / 1_000_000, lastYearNanos / 1_000_000);
+        }
+
+        ConcurrentLedger ledger = ConcurrentLedger.start(store, null, 1024);
+        for (int round = 1; round <= rounds; round++) {
+            long cachedNanos = time(() -> cached(ledger, yearAgo));
+            System.out.printf("Round %d: last year by vendor and month through the ledger %,d us%n", round, cachedNanos / 1_000);
+        }
+        System.out.printf("%,d reports from the cache, %,d run%n", ledger.reports().getHits(), ledger.reports().getMisses());
+
+        //Every deposit makes the next report take a new snapshot, the period reports aren't cached
+        for (int round = 1; round <= rounds; round++) {
+            ledger.submit(new Transaction(LocalDate.now(), LocalTime.now().withNano(0), "Large Pepperoni", "Dave",
+                    Money.ofCents(1899))).join();
+            long periodNanos = time(() -> periodReport(ledger, ReportPeriod.PREVIOUS_YEAR));
+            System.out.printf("Round %d: previous year right after a deposit %,d us%n", round, periodNanos / 1_000);
+        }
+        ledger.close();
+    }
+
+    //What the menu and /reports do for a period: a snapshot, two binary searches, the totals and the first page
+    private static PagedView periodReport(ConcurrentLedger ledger, ReportPeriod period) {
+        TransactionStore snapshot = ledger.snapshot();
+        LocalDate today = LocalDate.now();
+        LocalDate start = period.start(today);
+        LocalDate end = period.end(today);
+        PagedView view = PagedView.ofPositions(snapshot, snapshot.firstPositionOnOrBefore(end),
+                snapshot.firstPositionBefore(start), null, 50);
+        if (snapshot.totals().between(start, end).getCount() != view.size()) {
+            throw new IllegalStateException("The totals don't match the rows of " + period.getName());
+        }
+        return view;
+    }
+
+    private static List<LedgerAnalytics.Group> cached(ConcurrentLedger ledger, LocalDate start) {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(GroupKey.VENDOR);
+        analytics.setThenBy(GroupKey.MONTH);
+        analytics.setStart(start);
+        return analytics.run(ledger);
+    }
+
+    private static TransactionStore load(Path file) throws IOException {
+        TransactionStore store = new TransactionStore();
+        List<Transaction> batch = new ArrayList<>(BATCH);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(LedgerLoader.parseLine(line.getBytes(StandardCharsets.UTF_8)));
+                if (batch.size() == BATCH) {
+                    store.addAll(batch);
+                    batch.clear();
+                }
+            }
+        }
+        store.addAll(batch);
+        return store;
+    }
+
+    private static List<LedgerAnalytics.Group> report(TransactionStore store, GroupKey groupBy, GroupKey thenBy,
+                                                      LocalDate start) {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(groupBy);
+        analytics.setThenBy(thenBy);
+        analytics.setStart(start);
+        return analytics.run(store);
+    }
+
+    //Count and cents per case-folded vendor
+    static Map<String, long[]> legacyVendorTotals(TransactionStore store) {
+        Map<String, long[]> totals = new HashMap<>();
+        for (int row = 0; row < store.size(); row++) {
+            long[] total = totals.computeIfAbsent(store.vendor(row).toLowerCase(Locale.ROOT), vendor -> new long[2]);
+            total[0]++;
+            total[1] += store.amountCents(row);
+        }
+        return totals;
+    }
+
+    private static void verifySame(Map<String, long[]> expected, List<LedgerAnalytics.Group> groups) {
+        if (groups.size() != expected.size()) {
+            throw new IllegalStateException(groups.size() + " groups instead of " + expected.size());
+        }
+        for (LedgerAnalytics.Group group : groups) {
+            long[] total = expected.get(group.getKey().toLowerCase(Locale.ROOT));
+            if (total == null || total[0] != group.getCount() || total[1] != group.getTotal().getCents()) {
+                throw new IllegalStateException("Different totals for " + group.getKey());
+            }
+        }
+    }
+
+    private static long time(Supplier<?> report) {
+        long started = System.nanoTime();
+        if (report.get() == null) {
+            throw new IllegalStateException();
+        }
+        return System.nanoTime() - started;
+    }
+}
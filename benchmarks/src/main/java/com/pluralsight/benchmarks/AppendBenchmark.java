@@ -0,0 +1,83 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.AppendLog;
+import com.pluralsight.FsyncPolicy;
+import com.pluralsight.Money;
+import com.pluralsight.Transaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+//Measures sustained append throughput of the AppendLog with several writer threads and fsync policies
+public final class AppendBenchmark {
+
+    private AppendBenchmark() {
+    }
+
+    /**
+     * Usage: AppendBenchmark [appends per thread] [threads]
+     */
+    public static void main(String[] args) throws Exception {
+        int appendsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        String[] policies = {"record", "records:100", "interval:10"};
+        for (String policy : policies) {
+            Path file = Files.createTempFile("append-", ".csv");
+            try {
+                long nanos = run(file, FsyncPolicy.parse(policy), appendsPerThread, threads);
+                long appends = (long) appendsPerThread * threads;
+                System.out.printf("%-12s %,d appends from %d threads in %,d ms: %,.0f appends/s%n",
+                        policy, appends, threads, nanos / 1_000_000, appends / (nanos / 1e9));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static long run(Path file, FsyncPolicy policy, int appendsPerThread, int threads) throws Exception {
+        Transaction transaction = new Transaction(LocalDate.now(), LocalTime.of(12, 0),
+                "2 Large Cheese Pizza", "Dave", Money.ofCents(3299));
+        List<Thread> writers = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        try (AppendLog log = AppendLog.open(file, policy)) {
+            for (int t = 0; t < threads; t++) {
+                Thread writer = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < appendsPerThread; i++) {
+                            log.append(transaction);
+                        }
+                    } catch (IOException exception) {
+                        synchronized (failures) {
+                            failures.add(exception);
+                        }
+                    }
+                });
+                writers.add(writer);
+                writer.start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        long lines;
+        try (var fileLines = Files.lines(file)) {
+            lines = fileLines.count();
+        }
+        if (lines != (long) appendsPerThread * threads) {
+            throw new IllegalStateException("Expected " + (long) appendsPerThread * threads + " lines but found " + lines);
+        }
+        return elapsed;
+    }
+}
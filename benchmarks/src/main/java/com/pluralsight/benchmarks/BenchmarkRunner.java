@@ -0,0 +1,27 @@
+package com.pluralsight.benchmarks;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Runs the JMH benchmarks with the allocation profiler on, so every result also shows bytes allocated per operation
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Usage: BenchmarkRunner [benchmark regex] [rows,rows,...]
+     */
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : ".*Benchmarks")
+                .addProfiler(GCProfiler.class);
+        if (args.length > 1) {
+            options.param("rows", args[1].split(","));
+        }
+        Options built = options.build();
+        new Runner(built).run();
+    }
+}
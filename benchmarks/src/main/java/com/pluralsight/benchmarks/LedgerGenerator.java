@@ -0,0 +1,109 @@
+package com.pluralsight.benchmarks;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Random;
+
+//Writes synthetic ledgers in the transactions.csv format so the loaders and reports can be timed on big files
+public final class LedgerGenerator {
+    private static final String[][] PAYMENTS = {
+            {"Phone Bill", "Verizon"},
+            {"Ingredients", "Tony's Wholesale"},
+            {"Soda Drinks", "Pepsi"},
+            {"Monthly Rent", "Landlord"},
+            {"Water Utility Bill", "Water"},
+            {"Electric Utility Bill", "Electric"},
+            {"Gas Utility Bill", "Gas"},
+            {"POS Subscription", "Square"}};
+    private static final String[] DEPOSITS = {
+            "2 Large Cheese Pizza", "Pizza Party", "3rd Party Weekly Payout", "Family Combo", "Garlic Knots"};
+    private static final String[] CUSTOMERS = {
+            "Dave", "Sims Family", "Doordash", "Uber Eats", "Maria", "Chen", "Walk-in", "ABC Company"};
+
+    private LedgerGenerator() {
+    }
+
+    /**
+     * Writes a ledger of the given size, the same seed always produces the same file
+     * @param file the file to create or overwrite
+     * @param rows the number of transactions to write
+     * @param seed the seed of the random generator
+     */
+    public static void generate(Path file, long rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        LocalDate firstDay = LocalDate.of(2015, 1, 1);
+        int days = (int) (LocalDate.now().toEpochDay() - firstDay.toEpochDay()) + 1;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(96);
+            for (long i = 0; i < rows; i++) {
+                line.setLength(0);
+                LocalDate date = firstDay.plusDays(random.nextInt(days));
+                int secondOfDay = random.nextInt(86_400);
+                line.append(date).append('|');
+                appendTwoDigits(line, secondOfDay / 3600).append(':');
+                appendTwoDigits(line, secondOfDay / 60 % 60).append(':');
+                appendTwoDigits(line, secondOfDay % 60).append('|');
+
+                long cents;
+                if (random.nextInt(3) == 0) {
+                    String[] payment = PAYMENTS[random.nextInt(PAYMENTS.length)];
+                    line.append(payment[0]).append('|').append(payment[1]).append('|');
+                    cents = -(1 + random.nextInt(250_000));
+                } else {
+                    line.append(DEPOSITS[random.nextInt(DEPOSITS.length)]).append('|')
+                            .append(CUSTOMERS[random.nextInt(CUSTOMERS.length)]).append('|');
+                    cents = 1 + random.nextInt(50_000);
+                }
+
+                if (cents < 0) {
+                    line.append('-');
+                    cents = -cents;
+                }
+                line.append(cents / 100).append('.');
+                appendTwoDigits(line, (int) (cents % 100)).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * Returns a generated ledger of the given size, written once under target/ledgers and reused by later runs
+     * @param rows the number of transactions
+     * @return the path of the ledger
+     */
+    public static Path cached(long rows) throws IOException {
+        Path directory = Path.of("target", "ledgers");
+        Files.createDirectories(directory);
+        Path file = directory.resolve("ledger-" + rows + ".csv");
+        if (!Files.exists(file)) {
+            Path partial = directory.resolve("ledger-" + rows + ".csv.tmp");
+            generate(partial, rows, 42);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return file;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        if (value < 10) {
+            line.append('0');
+        }
+        return line.append(value);
+    }
+
+    /**
+     * Usage: LedgerGenerator &lt;file&gt; &lt;rows&gt; [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LedgerGenerator <file> <rows> [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        generate(Path.of(args[0]), Long.parseLong(args[1]), seed);
+    }
+}
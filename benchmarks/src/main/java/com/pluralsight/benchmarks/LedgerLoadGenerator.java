@@ -0,0 +1,117 @@
+package com.pluralsight.benchmarks;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for the tracker's --serve mode. Every client thread sends one request, waits for the
+ * answer and sends the next one, mixing the ledger, report, vendor and search queries with a share of deposits.
+ * Latencies of the first few seconds are left out while the server warms up, then the throughput and
+ * the latency percentiles of everything else are printed.
+ */
+public final class LedgerLoadGenerator {
+    private static final String[] QUERIES = {
+            "/ledger?limit=50",
+            "/ledger?type=payments&limit=50&page=3",
+            "/reports/month-to-date?limit=50",
+            "/reports/previous-year?limit=50",
+            "/vendors/Dave?limit=50",
+            "/search?description=2%20Large%20Cheese%20Pizza&limit=50",
+    };
+
+    private LedgerLoadGenerator() {
+    }
+
+    /**
+     * Usage: LedgerLoadGenerator [server url] [clients] [seconds] [percent deposits]
+     */
+    public static void main(String[] args) throws Exception {
+        String server = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        long warmUpNanos = Duration.ofSeconds(Math.min(5, seconds / 5)).toNanos();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        AtomicLong errors = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmUpNanos;
+        long stopAt = start + Duration.ofSeconds(seconds).toNanos();
+        for (int c = 0; c < clients; c++) {
+            long[][] recorded = {new long[1024]};
+            int[] count = {0};
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < stopAt) {
+                    HttpRequest request = (random.nextInt(100) < writePercent)
+                            ? deposit(server, random)
+                            : HttpRequest.newBuilder(URI.create(server + QUERIES[random.nextInt(QUERIES.length)])).GET().build();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 300) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception exception) {
+                        errors.incrementAndGet();
+                    }
+                    long end = System.nanoTime();
+                    if (now >= measureFrom) {
+                        if (count[0] == recorded[0].length) {
+                            recorded[0] = Arrays.copyOf(recorded[0], count[0] * 2);
+                        }
+                        recorded[0][count[0]++] = end - now;
+                    }
+                }
+                synchronized (latencies) {
+                    latencies.add(Arrays.copyOf(recorded[0], count[0]));
+                }
+            }, "client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double measuredSeconds = (stopAt - measureFrom) / 1e9;
+        System.out.printf("%d clients, %,d requests in %.0f s after a %d s warm-up: %,.0f requests/s, %,d errors%n",
+                clients, all.length, measuredSeconds, warmUpNanos / 1_000_000_000, all.length / measuredSeconds, errors.get());
+        if (all.length > 0) {
+            System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    percentile(all, 50), percentile(all, 90), percentile(all, 99), percentile(all, 99.9),
+                    all[all.length - 1] / 1e6);
+        }
+    }
+
+    private static HttpRequest deposit(String server, ThreadLocalRandom random) {
+        String body = String.format("{\"date\":\"%s\",\"time\":\"%02d:%02d:%02d\",\"description\":\"Load test slice\","
+                        + "\"vendor\":\"Load Tester\",\"amount\":%d.%02d}", LocalDate.now(),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60), 1 + random.nextInt(99), random.nextInt(100));
+        return HttpRequest.newBuilder(URI.create(server + "/deposits"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    //Nearest-rank percentile of sorted latencies, in milliseconds
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,41 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionStore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated ledger shared by the JMH benchmarks, both as the old sorted ArrayList<Transaction>
+ * and as the TransactionStore the app uses now, so every benchmark can time the two side by side.
+ * Run with -p rows=50000000 for the largest ledger, it needs a heap of several GB.
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+    @Param({"10000", "1000000"})
+    public long rows;
+
+    public Path file;
+    public List<Transaction> transactions;
+    public TransactionStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = LedgerGenerator.cached(rows);
+        transactions = LoadBenchmark.mappedLoad(file);
+        store = new TransactionStore();
+        store.addAll(transactions);
+
+        ArrayList<Transaction> sorted = new ArrayList<>(transactions);
+        Collections.sort(sorted);
+        transactions = sorted;
+    }
+}
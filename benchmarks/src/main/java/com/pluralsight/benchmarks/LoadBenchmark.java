@@ -0,0 +1,123 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.LedgerLoader;
+import com.pluralsight.Money;
+import com.pluralsight.Transaction;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+//Times the startup load of a generated ledger with the old readLine/split loader and with LedgerLoader,
+//both sequential and chunked across the fork-join pool
+public final class LoadBenchmark {
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private LoadBenchmark() {
+    }
+
+    /**
+     * Usage: LoadBenchmark [rows] [rounds]
+     */
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("ledger-", ".csv");
+        try {
+            LedgerGenerator.generate(file, rows, 42);
+            System.out.printf("Ledger of %,d rows, %,d bytes%n", rows, Files.size(file));
+
+            List<Transaction> expected = legacyLoad(file);
+            verifySame(expected, mappedLoad(file));
+            verifySame(expected, parallelLoad(file));
+
+            for (int round = 1; round <= rounds; round++) {
+                long legacyNanos = time(() -> legacyLoad(file));
+                long mappedNanos = time(() -> mappedLoad(file));
+                long parallelNanos = time(() -> parallelLoad(file));
+                System.out.printf("Round %d: readLine/split %,d ms, LedgerLoader %,d ms (%.1fx), parallel %,d ms (%.1fx)%n",
+                        round, legacyNanos / 1_000_000,
+                        mappedNanos / 1_000_000, (double) legacyNanos / mappedNanos,
+                        parallelNanos / 1_000_000, (double) legacyNanos / parallelNanos);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    //The loader FinancialTracker used before LedgerLoader
+    static List<Transaction> legacyLoad(Path file) throws IOException {
+        ArrayList<Transaction> transactions = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] section = line.split("\\|");
+                transactions.add(new Transaction(
+                        LocalDate.parse(section[0], DATE_FMT),
+                        LocalTime.parse(section[1], TIME_FMT),
+                        section[2],
+                        section[3],
+                        Money.parse(section[4])));
+            }
+        }
+        return transactions;
+    }
+
+    static List<Transaction> mappedLoad(Path file) throws IOException {
+        ArrayList<Transaction> transactions = new ArrayList<>();
+        List<LedgerLoader.MalformedLine> malformedLines = LedgerLoader.load(file, transactions);
+        if (!malformedLines.isEmpty()) {
+            throw new IllegalStateException("Unexpected malformed line " + malformedLines.get(0));
+        }
+        return transactions;
+    }
+
+    static List<Transaction> parallelLoad(Path file) throws IOException {
+        ArrayList<Transaction> transactions = new ArrayList<>();
+        List<LedgerLoader.MalformedLine> malformedLines = LedgerLoader.loadParallel(file, transactions);
+        if (!malformedLines.isEmpty()) {
+            throw new IllegalStateException("Unexpected malformed line " + malformedLines.get(0));
+        }
+        return transactions;
+    }
+
+    static void verifySame(List<Transaction> expected, List<Transaction> actual) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException("Expected " + expected.size() + " rows but loaded " + actual.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Transaction e = expected.get(i);
+            Transaction a = actual.get(i);
+            boolean same = e.getDate().equals(a.getDate())
+                    && e.getTime().equals(a.getTime())
+                    && e.getDescription().equals(a.getDescription())
+                    && e.getVendor().equals(a.getVendor())
+                    && e.getAmount().equals(a.getAmount());
+            if (!same) {
+                throw new IllegalStateException("Row " + (i + 1) + " differs: " + e + " vs " + a);
+            }
+        }
+    }
+
+    private static long time(Load load) throws IOException {
+        long start = System.nanoTime();
+        List<Transaction> loaded = load.run();
+        long elapsed = System.nanoTime() - start;
+        if (loaded.isEmpty()) {
+            System.out.println("Nothing loaded");
+        }
+        return elapsed;
+    }
+
+    private interface Load {
+        List<Transaction> run() throws IOException;
+    }
+}
@@ -0,0 +1,45 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Startup cost: reading transactions.csv and building the store that loadTransactions fills
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadingBenchmarks {
+
+    @Benchmark
+    public List<Transaction> readLineAndSplit(LedgerState ledger) throws IOException {
+        return LoadBenchmark.legacyLoad(ledger.file);
+    }
+
+    @Benchmark
+    public List<Transaction> mappedLoad(LedgerState ledger) throws IOException {
+        return LoadBenchmark.mappedLoad(ledger.file);
+    }
+
+    @Benchmark
+    public List<Transaction> parallelLoad(LedgerState ledger) throws IOException {
+        return LoadBenchmark.parallelLoad(ledger.file);
+    }
+
+    @Benchmark
+    public TransactionStore loadIntoStore(LedgerState ledger) throws IOException {
+        TransactionStore store = new TransactionStore();
+        store.addAll(LoadBenchmark.parallelLoad(ledger.file));
+        return store;
+    }
+}
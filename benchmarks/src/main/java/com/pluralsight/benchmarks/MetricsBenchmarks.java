@@ -0,0 +1,68 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.LatencyHistogram;
+import com.pluralsight.LedgerMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the LedgerMetrics add to every operation they time. "clock" is the two System.nanoTime calls
+ * on their own, "timed" is start and stop of an operation, so the difference is the histogram.
+ * The contended benchmarks run on 4 threads recording into the same histogram, like a busy server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmarks {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long value = 12_345;
+
+    @Benchmark
+    public long clock() {
+        long started = System.nanoTime();
+        return System.nanoTime() - started;
+    }
+
+    @Benchmark
+    public long timed() {
+        long started = LedgerMetrics.CUSTOM_SEARCH.start();
+        LedgerMetrics.CUSTOM_SEARCH.stop(started);
+        return started;
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.record(value++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.record(value++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long timedContended() {
+        long started = LedgerMetrics.CUSTOM_SEARCH.start();
+        LedgerMetrics.CUSTOM_SEARCH.stop(started);
+        return started;
+    }
+
+    @Benchmark
+    public long[] percentiles() {
+        return histogram.percentiles(50, 90, 99, 99.9);
+    }
+}
@@ -0,0 +1,185 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.Money;
+import com.pluralsight.PagedView;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionSearch;
+import com.pluralsight.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The report paths of the menu. Each "legacy" benchmark is the loop FinancialTracker used to run
+ * over the sorted ArrayList, the other one is what it runs against the TransactionStore today.
+ * Printing is left out, matching rows go into a Blackhole instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmarks {
+    private static final LocalDate MONTH_START = LocalDate.now().withDayOfMonth(1);
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate YEAR_AGO = TODAY.minusYears(1);
+    private static final String VENDOR = "pepsi";
+    private static final String DESCRIPTION = "soda drinks";
+    private static final Money MIN_AMOUNT = Money.parse("250.00");
+    private static final Money MAX_AMOUNT = Money.parse("252.50");
+    private static final int TOP = 10;
+
+    @Benchmark
+    public long legacyBalance(LedgerState ledger) {
+        long totalBalance = 0;
+        for (Transaction transaction : ledger.transactions) {
+            totalBalance += transaction.getAmount().getCents();
+        }
+        return totalBalance;
+    }
+
+    @Benchmark
+    public long storeBalance(LedgerState ledger) {
+        return ledger.store.totals().overall().getBalanceCents();
+    }
+
+    @Benchmark
+    public long legacyMonthToDate(LedgerState ledger, Blackhole blackhole) {
+        long reportSum = 0;
+        for (Transaction transaction : ledger.transactions) {
+            if (!transaction.getDate().isAfter(TODAY) && !transaction.getDate().isBefore(MONTH_START)) {
+                blackhole.consume(transaction);
+                reportSum += transaction.getAmount().getCents();
+            }
+        }
+        return reportSum;
+    }
+
+    @Benchmark
+    public long storeMonthToDate(LedgerState ledger, Blackhole blackhole) {
+        TransactionStore store = ledger.store;
+        int last = store.firstPositionBefore(MONTH_START);
+        for (int position = store.firstPositionOnOrBefore(TODAY); position < last; position++) {
+            blackhole.consume(store.get(store.rowAt(position)));
+        }
+        return store.totals().between(MONTH_START, TODAY).getBalanceCents();
+    }
+
+    @Benchmark
+    public void legacyVendor(LedgerState ledger, Blackhole blackhole) {
+        for (Transaction transaction : ledger.transactions) {
+            if (transaction.getVendor().equalsIgnoreCase(VENDOR)) {
+                blackhole.consume(transaction);
+            }
+        }
+    }
+
+    @Benchmark
+    public void storeVendor(LedgerState ledger, Blackhole blackhole) {
+        TransactionStore store = ledger.store;
+        for (int row : store.inDisplayOrder(store.rowsWithVendor(VENDOR))) {
+            blackhole.consume(store.get(row));
+        }
+    }
+
+    @Benchmark
+    public void legacyCustomSearch(LedgerState ledger, Blackhole blackhole) {
+        for (Transaction transaction : ledger.transactions) {
+            if (!transaction.getDate().isBefore(YEAR_AGO) && !transaction.getDate().isAfter(TODAY)
+                    && transaction.getDescription().equalsIgnoreCase(DESCRIPTION)
+                    && transaction.getVendor().equalsIgnoreCase(VENDOR)) {
+                blackhole.consume(transaction);
+            }
+        }
+    }
+
+    @Benchmark
+    public void storeCustomSearch(LedgerState ledger, Blackhole blackhole) {
+        TransactionStore store = ledger.store;
+        int[] rows = intersect(store.rowsWithDescription(DESCRIPTION), store.rowsWithVendor(VENDOR));
+        long start = YEAR_AGO.toEpochDay();
+        long end = TODAY.toEpochDay();
+        for (int row : store.inDisplayOrder(rows)) {
+            int day = store.epochDay(row);
+            if (day >= start && day <= end) {
+                blackhole.consume(store.get(row));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyAmountRange(LedgerState ledger, Blackhole blackhole) {
+        for (Transaction transaction : ledger.transactions) {
+            if (transaction.getAmount().compareTo(MIN_AMOUNT) >= 0 && transaction.getAmount().compareTo(MAX_AMOUNT) <= 0) {
+                blackhole.consume(transaction);
+            }
+        }
+    }
+
+    @Benchmark
+    public void storeAmountRange(LedgerState ledger, Blackhole blackhole) {
+        TransactionSearch search = new TransactionSearch();
+        search.setMinAmount(MIN_AMOUNT);
+        search.setMaxAmount(MAX_AMOUNT);
+        PagedView view = search.find(ledger.store, 50);
+        do {
+            for (int row : view.page()) {
+                blackhole.consume(ledger.store.get(row));
+            }
+        } while (view.next());
+    }
+
+    //The 10 largest payments of the last year
+    @Benchmark
+    public void legacyTopPayments(LedgerState ledger, Blackhole blackhole) {
+        List<Transaction> lastYear = new ArrayList<>();
+        for (Transaction transaction : ledger.transactions) {
+            if (!transaction.getDate().isBefore(YEAR_AGO) && !transaction.getDate().isAfter(TODAY)) {
+                lastYear.add(transaction);
+            }
+        }
+        lastYear.sort(Comparator.comparing(Transaction::getAmount));
+        for (Transaction transaction : lastYear.subList(0, Math.min(TOP, lastYear.size()))) {
+            blackhole.consume(transaction);
+        }
+    }
+
+    @Benchmark
+    public void storeTopPayments(LedgerState ledger, Blackhole blackhole) {
+        TransactionSearch search = new TransactionSearch();
+        search.setStart(YEAR_AGO);
+        search.setEnd(TODAY);
+        for (int row : search.smallest(ledger.store, TOP, 50).page()) {
+            blackhole.consume(ledger.store.get(row));
+        }
+    }
+
+    //Same one-pass merge as TextIndex.intersect, which is package-private
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+}
@@ -0,0 +1,82 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Ordering the ledger newest first: the old per-menu-loop Collections.sort against the store's sorted inserts
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SortingBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Unsorted {
+        List<Transaction> copy;
+
+        //Collections.sort works in place, every call gets the rows back in the same shuffled order
+        @Setup(Level.Invocation)
+        public void copy(LedgerState ledger) {
+            copy = new ArrayList<>(ledger.transactions);
+            Collections.shuffle(copy, new Random(42));
+        }
+    }
+
+    //A store of its own for every iteration, so the rows storeAddNewest adds don't pile up in the shared one
+    @State(Scope.Thread)
+    public static class Growing {
+        TransactionStore store;
+
+        @Setup(Level.Iteration)
+        public void fill(LedgerState ledger) {
+            store = new TransactionStore();
+            store.addAll(ledger.transactions);
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> collectionsSort(Unsorted unsorted) {
+        Collections.sort(unsorted.copy);
+        return unsorted.copy;
+    }
+
+    //What the home screen did on every loop once the ledger was already sorted
+    @Benchmark
+    public List<Transaction> collectionsSortAlreadySorted(LedgerState ledger) {
+        Collections.sort(ledger.transactions);
+        return ledger.transactions;
+    }
+
+    @Benchmark
+    public TransactionStore storeAddAll(Unsorted unsorted) {
+        TransactionStore store = new TransactionStore();
+        store.addAll(unsorted.copy);
+        return store;
+    }
+
+    //One new sale dated after everything else, the usual case for addDeposit
+    @Benchmark
+    public int storeAddNewest(LedgerState ledger, Growing growing) {
+        Transaction newest = ledger.transactions.get(0);
+        return growing.store.add(new Transaction(newest.getDate(), LocalTime.MAX.withNano(0),
+                newest.getDescription(), newest.getVendor(), newest.getAmount()));
+    }
+}
@@ -0,0 +1,51 @@
+package com.pluralsight.benchmarks;
+import com.pluralsight.Transaction;
+import com.pluralsight.TransactionStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+//Compares the heap kept alive by an ArrayList<Transaction> with the same ledger in a TransactionStore
+public final class StoreFootprintBenchmark {
+
+    private StoreFootprintBenchmark() {
+    }
+
+    /**
+     * Usage: StoreFootprintBenchmark [rows]
+     */
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+
+        Path file = Files.createTempFile("ledger-", ".csv");
+        try {
+            LedgerGenerator.generate(file, rows, 42);
+
+            long baseline = usedHeap();
+            List<Transaction> list = LoadBenchmark.mappedLoad(file);
+            long listBytes = usedHeap() - baseline;
+
+            TransactionStore store = new TransactionStore();
+            store.addAll(list);
+            list = null;
+            long storeBytes = usedHeap() - baseline;
+
+            System.out.printf("ArrayList<Transaction>: %,d bytes (%.1f per row)%n", listBytes, (double) listBytes / rows);
+            System.out.printf("TransactionStore:       %,d bytes (%.1f per row), %d rows%n",
+                    storeBytes, (double) storeBytes / rows, store.size());
+            System.out.printf("%.1fx smaller%n", (double) listBytes / storeBytes);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
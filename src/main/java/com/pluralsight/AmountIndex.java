@@ -0,0 +1,149 @@
+package com.pluralsight;
+import java.util.Arrays;
+
+/**
+ * The row ids of a TransactionStore sorted by amount, smallest first, rows with the same amount
+ * by row id. A range of amounts is a binary search for each end, and the largest or smallest
+ * amounts are read straight off the ends, so neither reads the rows outside of what it returns.
+ * <p>
+ * The list is a RowList kept sorted the same way as the display order of the store: one new row is
+ * inserted where it goes, a batch is sorted on its own and then put in, see RowList.addAll.
+ * Amounts don't come in order the way dates mostly do, so a new row usually lands somewhere in the
+ * middle and the rows after it in its chunk move up. They are moved with arraycopy without reading their
+ * amounts, only the binary search for each new row reads the amount column. It adds 4 bytes a row.
+ */
+class AmountIndex {
+    private RowList rows;
+
+    AmountIndex() {
+        rows = new RowList();
+    }
+
+    private AmountIndex(RowList rows) {
+        this.rows = rows;
+    }
+
+    //Read-only copy for a snapshot of the store, it shares the chunks of the list
+    AmountIndex snapshot() {
+        return new AmountIndex(rows.share());
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * @param rank a position in the index, 0 is the smallest amount
+     * @return the row id at that position
+     */
+    int rowAt(int rank) {
+        if (rank < 0 || rank >= rows.size()) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " out of " + rows.size());
+        }
+        return rows.get(rank);
+    }
+
+    /**
+     * @param cents the amount to look for
+     * @param amounts the amount column of the store
+     * @return the number of rows with a smaller amount, which is the rank of the first row of at least that amount
+     */
+    int countBelow(long cents, long[] amounts) {
+        return rows.countWhile(row -> amounts[row] < cents);
+    }
+
+    /**
+     * Adds the rows that were appended to the store since the last call
+     * @param firstRow the first new row id, the same as the size of the index
+     * @param lastRow the row id after the last new one
+     * @param amounts the amount column of the store
+     */
+    void addRows(int firstRow, int lastRow, long[] amounts) {
+        int added = lastRow - firstRow;
+        int[] newRows = new int[added];
+        for (int i = 0; i < added; i++) {
+            newRows[i] = firstRow + i;
+        }
+        sort(newRows, amounts);
+        rows.addAll(newRows, (a, b) -> compare(a, b, amounts));
+    }
+
+    /**
+     * Takes over an index read back from a LedgerSnapshot
+     * @param restored row ids smallest amount first
+     * @param amounts the amount column of the store
+     * @throws IllegalArgumentException if it isn't every row once, sorted by amount and row id
+     */
+    void restore(int[] restored, long[] amounts) {
+        int count = restored.length;
+        if (amounts.length != count) {
+            throw new IllegalArgumentException("Amount order of a different length");
+        }
+        boolean[] seen = new boolean[count];
+        for (int rank = 0; rank < count; rank++) {
+            int row = restored[rank];
+            if (row < 0 || row >= count || seen[row]) {
+                throw new IllegalArgumentException("Amount rank " + rank + " has no valid row");
+            }
+            seen[row] = true;
+            if (rank > 0 && compare(restored[rank - 1], row, amounts) > 0) {
+                throw new IllegalArgumentException("Amounts out of order at rank " + rank);
+            }
+        }
+        rows = RowList.of(restored);
+    }
+
+    /**
+     * Sorts row ids by amount and then by id.
+     * When every amount fits in an int, amount and id are packed in one long and sorted as primitives,
+     * which is about twice as fast as a merge sort comparing through the column.
+     */
+    private static void sort(int[] newRows, long[] amounts) {
+        boolean packable = true;
+        for (int row : newRows) {
+            long cents = amounts[row];
+            if (cents < Integer.MIN_VALUE || cents > Integer.MAX_VALUE) {
+                packable = false;
+                break;
+            }
+        }
+        if (!packable) {
+            mergeSort(newRows, new int[newRows.length], 0, newRows.length, amounts);
+            return;
+        }
+
+        //The amount in the high half, the id (never negative) in the low half
+        long[] keys = new long[newRows.length];
+        for (int i = 0; i < newRows.length; i++) {
+            keys[i] = (amounts[newRows[i]] << 32) | newRows[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            newRows[i] = (int) keys[i];
+        }
+    }
+
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, long[] amounts) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, middle, amounts);
+        mergeSort(rows, buffer, middle, to, amounts);
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(buffer[left], buffer[right], amounts) <= 0)) {
+                rows[i] = buffer[left++];
+            } else {
+                rows[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static int compare(int a, int b, long[] amounts) {
+        int compareAmount = Long.compare(amounts[a], amounts[b]);
+        return (compareAmount != 0) ? compareAmount : Integer.compare(a, b);
+    }
+}
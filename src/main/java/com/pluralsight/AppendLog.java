@@ -0,0 +1,438 @@
+package com.pluralsight;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived append-only writer for the transactions file.
+ * <p>
+ * Appended lines are collected in memory and written with one write call per batch.
+ * When a batch is forced to disk depends on the FsyncPolicy: appenders that arrive while
+ * another thread is forcing a batch wait for it and go out together in the next one (group commit).
+ * write puts the lines in the file without forcing them, for callers that must not report a line as
+ * saved while it only exists in memory, whatever the policy.
+ * <p>
+ * recover should be called on startup, before the file is loaded, to clean up a last line
+ * that was cut off by a crash in the middle of a write.
+ * <p>
+ * When another program appends to the same file, trackWrites makes the log remember where its own
+ * batches landed, so a LedgerTail reading the file can skip them. The size of the file is taken before
+ * each write, and when the file grew by more than the write, the batch is looked up in the bytes between.
+ * That costs one more system call per batch while tracking.
+ */
+public class AppendLog implements Closeable {
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int RECOVERY_BLOCK_SIZE = 8192;
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final Path file;
+    private final FsyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+    //Only one thread writes and forces a batch at a time, appenders keep filling the next one meanwhile
+    private final Object syncLock = new Object();
+    private final StringBuilder line = new StringBuilder(128);
+
+    //Only replaced by replaceFile, while holding syncLock
+    private FileChannel channel;
+    private byte[] pending = new byte[8192];
+    private byte[] spare = new byte[8192];
+    private int pendingLength;
+    private long appendedSequence;
+    private long bytesWritten;
+    private boolean closed;
+    private volatile long writtenSequence;
+    private volatile long durableSequence;
+    //Set once a batch couldn't be written, its lines are lost and the log refuses everything after them
+    private volatile IOException failure;
+    //Start and end offset of every batch written since trackWrites, oldest first, null when not tracking
+    private ArrayDeque<long[]> ownWrites;
+
+    private AppendLog(Path file, FileChannel channel, FsyncPolicy policy) {
+        this.file = file;
+        this.channel = channel;
+        this.policy = policy;
+
+        if (policy.getMode() == FsyncPolicy.Mode.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "append-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushInBackground, policy.getValue(), policy.getValue(), TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens the file for appending, creating it if needed
+     * @param file the transactions file
+     * @param policy when appended lines are forced to disk
+     * @return the open log, close it on exit so nothing is left in memory
+     */
+    public static AppendLog open(Path file, FsyncPolicy policy) throws IOException {
+        return new AppendLog(file, openChannel(file), policy);
+    }
+
+    private static FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends one transaction as a date|time|description|vendor|amount line.
+     * With the record policy the call returns once the line is on disk.
+     * @param transaction the transaction to append
+     */
+    public void append(Transaction transaction) throws IOException {
+        appendAll(List.of(transaction));
+    }
+
+    /**
+     * Appends the transactions in order as one batch
+     * @param transactions the transactions to append
+     */
+    public void appendAll(Collection<Transaction> transactions) throws IOException {
+        long started = LedgerMetrics.APPEND.start();
+        long sequence;
+        boolean flushNow;
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The transactions log is closed");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            int lengthBefore = pendingLength;
+            for (Transaction transaction : transactions) {
+                encode(transaction);
+            }
+            LedgerMetrics.APPEND.addBytes(pendingLength - lengthBefore);
+            appendedSequence += transactions.size();
+            sequence = appendedSequence;
+            flushNow = switch (policy.getMode()) {
+                case EVERY_RECORD -> true;
+                case EVERY_N_RECORDS -> sequence - durableSequence >= policy.getValue();
+                case INTERVAL -> false;
+            } || pendingLength >= FLUSH_THRESHOLD;
+        }
+
+        if (flushNow) {
+            syncUpTo(sequence);
+        }
+        LedgerMetrics.APPEND.stop(started);
+    }
+
+    /**
+     * Forces every line appended so far to disk
+     */
+    public void sync() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        syncUpTo(sequence);
+    }
+
+    /**
+     * Writes every line appended so far to the file without forcing it to disk, that is still up to the FsyncPolicy.
+     * A written line survives the app crashing, only an fsync makes it survive the machine going down.
+     */
+    public void write() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        writeUpTo(sequence, false);
+    }
+
+    /**
+     * @return the number of bytes written to the file since it was opened
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Starts remembering the byte ranges of the file this log writes, see ownWriteAt
+     */
+    public void trackWrites() {
+        synchronized (syncLock) {
+            if (ownWrites == null) {
+                ownWrites = new ArrayDeque<>();
+            }
+        }
+    }
+
+    /**
+     * @return the size of the file, taken while no batch is being written, so every batch of this log
+     *         that ends before it is known to ownWriteAt
+     */
+    public long fileSize() throws IOException {
+        synchronized (syncLock) {
+            return channel.size();
+        }
+    }
+
+    /**
+     * Forgets the batches written before the offset and looks for the next one
+     * @param position an offset of the file that has been read up to
+     * @return the start and end offset of the first batch this log wrote at or after the position,
+     *         null if there is none or writes aren't tracked
+     */
+    public long[] ownWriteAt(long position) {
+        synchronized (syncLock) {
+            if (ownWrites == null) {
+                return null;
+            }
+            while (!ownWrites.isEmpty() && ownWrites.peekFirst()[1] <= position) {
+                ownWrites.pollFirst();
+            }
+            return ownWrites.peekFirst();
+        }
+    }
+
+    /**
+     * Moves a rewritten copy of the file over it and goes on appending to the new file, used by a LedgerArchive
+     * compaction. Every line appended so far has to be synced, and the copy must hold all of them.
+     * @param replacement the new file, in the same folder
+     * @throws IllegalStateException if lines are still waiting to be written
+     */
+    public void replaceFile(Path replacement) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("The transactions log is closed");
+                }
+                if (pendingLength > 0) {
+                    throw new IllegalStateException("Sync the log before replacing its file");
+                }
+            }
+            Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = openChannel(file);
+            if (ownWrites != null) {
+                ownWrites.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces whatever is still in memory, then closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            sync();
+        } finally {
+            synchronized (syncLock) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Checks the end of the file for a line cut off by a crash and cuts it away.
+     * The log only ever writes whole lines ending in a line break, so a last line without one is the
+     * torn end of a write, even when what is left of it still reads as a transaction: 1250.00 cut
+     * after 12 would be kept as 12.
+     * @param file the transactions file
+     * @return the number of bytes removed, 0 if the file was fine
+     */
+    public static long recover(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long lineStart = lastLineStart(channel, size);
+            if (lineStart == size) {
+                return 0;
+            }
+
+            channel.truncate(lineStart);
+            channel.force(false);
+            return size - lineStart;
+        }
+    }
+
+    /**
+     * Finds where the whole lines of a file end without changing it, for a file that another program may be
+     * in the middle of appending to. Only a \n ends a line here, the same as for the LedgerTail reading on
+     * from the offset, which leaves a last line without one until the rest of it is written.
+     * @param file the transactions file
+     * @return the offset right after the last \n of the file, 0 if there is none
+     */
+    public static long wholeLinesEnd(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return lastLineStart(channel, channel.size(), false);
+        }
+    }
+
+    //Position right after the last line break of the file, 0 if there is none
+    private static long lastLineStart(FileChannel channel, long size) throws IOException {
+        return lastLineStart(channel, size, true);
+    }
+
+    private static long lastLineStart(FileChannel channel, long size, boolean carriageReturns) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(RECOVERY_BLOCK_SIZE);
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - RECOVERY_BLOCK_SIZE);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                //keep reading until the block is full
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                byte b = block.get(i);
+                if (b == '\n' || (b == '\r' && carriageReturns)) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    //Adds the line of the transaction to the pending batch
+    private void encode(Transaction transaction) {
+        line.setLength(0);
+        line.append(transaction.getDate()).append('|')
+                .append(TIME_FMT.format(transaction.getTime())).append('|')
+                .append(transaction.getDescription()).append('|')
+                .append(transaction.getVendor()).append('|');
+        Money.appendTo(line, transaction.getAmount().getCents()).append('\n');
+
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (pendingLength + bytes.length > pending.length) {
+            byte[] bigger = new byte[Math.max(pendingLength + bytes.length, pending.length * 2)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+        pendingLength += bytes.length;
+    }
+
+    private void syncUpTo(long sequence) throws IOException {
+        writeUpTo(sequence, true);
+    }
+
+    /**
+     * Writes the pending batch, and forces it with what was written before it if asked to, unless a batch
+     * that already covers the sequence got there first.
+     * If the write or the force fails, the lines of the batch may or may not be in the file, so they are
+     * not written again. The log fails instead: this call, every later append, sync and close throw.
+     */
+    private void writeUpTo(long sequence, boolean force) throws IOException {
+        synchronized (syncLock) {
+            if (failure != null) {
+                throw failure;
+            }
+            if ((force ? durableSequence : writtenSequence) >= sequence) {
+                return;
+            }
+
+            byte[] batch;
+            int length;
+            long batchSequence;
+            synchronized (this) {
+                batch = pending;
+                length = pendingLength;
+                batchSequence = appendedSequence;
+                pending = spare;
+                pendingLength = 0;
+                spare = batch;
+            }
+
+            long started = LedgerMetrics.FSYNC.start();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+                while (buffer.hasRemaining()) {
+                    int start = buffer.position();
+                    long sizeBefore = (ownWrites != null) ? channel.size() : 0;
+                    int written = channel.write(buffer);
+                    if (ownWrites != null && written > 0) {
+                        ownWrites.addLast(locate(file, batch, start, written, sizeBefore, channel.position()));
+                    }
+                }
+                if (force) {
+                    channel.force(false);
+                }
+            } catch (IOException exception) {
+                failure = new IOException("Transactions after number " + durableSequence
+                        + " may not have been saved: " + exception.getMessage(), exception);
+                throw failure;
+            }
+            LedgerMetrics.FSYNC.addBytes(length);
+
+            synchronized (this) {
+                bytesWritten += length;
+            }
+            writtenSequence = batchSequence;
+            if (force) {
+                LedgerMetrics.FSYNC.stop(started);
+                durableSequence = batchSequence;
+            }
+        }
+    }
+
+    /**
+     * Finds where a write in append mode landed. It lands at the end of the file, somewhere between its size
+     * before the write and the position after it, but another program may append in between and then the
+     * bytes of the write are found by reading that part of the file back.
+     * @param file the file that was written
+     * @param bytes the array holding the written bytes
+     * @param offset where the written bytes start in the array
+     * @param length the number of bytes written
+     * @param sizeBefore the size of the file right before the write
+     * @param sizeAfter the position of the channel right after the write
+     * @return the start and end offset of the write in the file
+     */
+    static long[] locate(Path file, byte[] bytes, int offset, int length, long sizeBefore, long sizeAfter) throws IOException {
+        if (sizeAfter - sizeBefore == length) {
+            return new long[]{sizeBefore, sizeAfter};
+        }
+        ByteBuffer window = ByteBuffer.allocate(Math.toIntExact(sizeAfter - sizeBefore));
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (window.hasRemaining() && reader.read(window, sizeBefore + window.position()) >= 0) {
+                //keep reading until the window is full
+            }
+        }
+        //Another program writing exactly the same bytes is read the same either way
+        for (int start = 0; start + length <= window.position(); start++) {
+            if (Arrays.equals(window.array(), start, start + length, bytes, offset, offset + length)) {
+                return new long[]{sizeBefore + start, sizeBefore + start + length};
+            }
+        }
+        //Not there as a whole, which a single append to a local file doesn't do, so the position is the best guess left
+        return new long[]{sizeAfter - length, sizeAfter};
+    }
+
+    private void flushInBackground() {
+        try {
+            sync();
+        } catch (IOException exception) {
+            //Kept in failure by syncUpTo, the next append or close reports it
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.pluralsight;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Imports an exported file of date|time|description|vendor|amount lines in one go.
+ * <p>
+ * Every line is checked like the deposit and payment prompts check their input, and lines that are
+ * already in the ledger (same date, time, description, vendor and amount) or earlier in the same file
+ * are skipped, so importing the same export twice adds nothing. The accepted transactions go to the
+ * transactions file as one batch through the AppendLog, then into the store with one sorted merge.
+ */
+public final class BatchImport {
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private BatchImport() {
+    }
+
+    /**
+     * Imports the file into the ledger
+     * @param source the file to import
+     * @param store the ledger to add to
+     * @param log the append log of the transactions file
+     * @return what was imported and what was skipped
+     * @throws IOException if the source can't be read or the transactions file can't be written
+     */
+    public static Result importFile(Path source, TransactionStore store, AppendLog log) throws IOException {
+        ArrayList<Transaction> parsed = new ArrayList<>();
+        List<LedgerLoader.MalformedLine> malformedLines = LedgerLoader.load(source, parsed);
+        Result result = new Result();
+        result.rejected.addAll(malformedLines);
+        if (parsed.isEmpty()) {
+            result.rejected.sort((a, b) -> Long.compare(a.getLineNumber(), b.getLineNumber()));
+            return result;
+        }
+
+        HashSet<Key> seen = existingKeys(store, parsed);
+        List<Transaction> accepted = new ArrayList<>();
+
+        //Every line is either a parsed row or a malformed line, so the line numbers of the rows can be counted back
+        long lineNumber = 1;
+        int nextMalformed = 0;
+        for (Transaction transaction : parsed) {
+            while (nextMalformed < malformedLines.size() && malformedLines.get(nextMalformed).getLineNumber() == lineNumber) {
+                nextMalformed++;
+                lineNumber++;
+            }
+
+            //The prompts only take positive deposits and turn payments negative, zero is neither
+            if (transaction.getAmount().getCents() == 0) {
+                result.rejected.add(new LedgerLoader.MalformedLine(lineNumber, asLine(transaction),
+                        "Amount must be positive for a deposit or negative for a payment"));
+            } else if (transaction.getDescription().isBlank() || transaction.getVendor().isBlank()) {
+                result.rejected.add(new LedgerLoader.MalformedLine(lineNumber, asLine(transaction),
+                        "Description and vendor can't be empty"));
+            } else if (!seen.add(new Key(transaction))) {
+                result.duplicates++;
+            } else {
+                accepted.add(transaction);
+            }
+            lineNumber++;
+        }
+        result.rejected.sort((a, b) -> Long.compare(a.getLineNumber(), b.getLineNumber()));
+
+        if (!accepted.isEmpty()) {
+            //Saved first, like a single deposit, so the ledger never shows rows that aren't in the file
+            log.appendAll(accepted);
+            store.addAll(accepted);
+        }
+        result.imported = accepted.size();
+        return result;
+    }
+
+    private static String asLine(Transaction transaction) {
+        return transaction.getDate() + "|" + TIME_FMT.format(transaction.getTime()) + "|" + transaction.getDescription()
+                + "|" + transaction.getVendor() + "|" + transaction.getAmount();
+    }
+
+    /**
+     * Keys of the rows already in the store, only for the days the import covers
+     */
+    private static HashSet<Key> existingKeys(TransactionStore store, List<Transaction> parsed) {
+        LocalDate first = parsed.get(0).getDate();
+        LocalDate last = first;
+        for (Transaction transaction : parsed) {
+            if (transaction.getDate().isBefore(first)) {
+                first = transaction.getDate();
+            }
+            if (transaction.getDate().isAfter(last)) {
+                last = transaction.getDate();
+            }
+        }
+
+        HashSet<Key> keys = new HashSet<>();
+        int end = store.firstPositionBefore(first);
+        for (int position = store.firstPositionOnOrBefore(last); position < end; position++) {
+            int row = store.rowAt(position);
+            keys.add(new Key(store.epochDay(row), store.secondOfDay(row), store.amountCents(row),
+                    store.description(row), store.vendor(row)));
+        }
+        return keys;
+    }
+
+    //The values that make two transactions the same, amounts compared in cents
+    private static final class Key {
+        private final int epochDay;
+        private final int secondOfDay;
+        private final long cents;
+        private final String description;
+        private final String vendor;
+
+        private Key(int epochDay, int secondOfDay, long cents, String description, String vendor) {
+            this.epochDay = epochDay;
+            this.secondOfDay = secondOfDay;
+            this.cents = cents;
+            this.description = description;
+            this.vendor = vendor;
+        }
+
+        private Key(Transaction transaction) {
+            this((int) transaction.getDate().toEpochDay(), transaction.getTime().toSecondOfDay(),
+                    transaction.getAmount().getCents(), transaction.getDescription(), transaction.getVendor());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key key)) {
+                return false;
+            }
+            return epochDay == key.epochDay && secondOfDay == key.secondOfDay && cents == key.cents
+                    && description.equals(key.description) && vendor.equals(key.vendor);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * epochDay + secondOfDay;
+            hash = 31 * hash + Long.hashCode(cents);
+            hash = 31 * hash + description.hashCode();
+            return 31 * hash + vendor.hashCode();
+        }
+    }
+
+    /**
+     * Counts of an import, and the lines that were turned down with the reason
+     */
+    public static final class Result {
+        private final List<LedgerLoader.MalformedLine> rejected = new ArrayList<>();
+        private int imported;
+        private int duplicates;
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        //Lines that couldn't be read or broke a rule, in file order
+        public List<LedgerLoader.MalformedLine> getRejected() {
+            return rejected;
+        }
+    }
+}
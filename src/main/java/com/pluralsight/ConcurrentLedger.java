@@ -0,0 +1,392 @@
+package com.pluralsight;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The ledger shared by everything in the process that adds transactions and everything that reads them,
+ * for example a register feed recording sales while someone runs reports.
+ * <p>
+ * Writers never touch the store: submit puts the transaction in a bounded ingest queue and returns.
+ * One writer thread takes whatever has queued up, saves it through the AppendLog as one batch and then
+ * adds it to the store with one sorted merge, so only one thread ever changes the store and a burst of
+ * writers costs one write and one merge. A writer only waits when the queue is full. The batch is always
+ * written to the file before its submits complete, the FsyncPolicy only decides when it is forced to disk.
+ * <p>
+ * Readers never see the store itself either. snapshot returns a read-only copy of the store as it was
+ * between two batches, which doesn't change however long it is read, so a report paged through while
+ * sales come in doesn't shift under the reader. The copy shares its rows and indexes with the store
+ * (see TransactionStore.snapshot), so it takes microseconds to make whatever the size of the ledger and
+ * holds up the writer thread no longer than that. At most one snapshot is made per batch, and only once
+ * somebody asks for it, until the next batch every reader gets the same one. Screens that only show
+ * the balance or a period's totals read totals instead, which the writer thread publishes after every batch.
+ * <p>
+ * The ledger also keeps a ReportCache of the last report results, and tells it the dates of every batch
+ * before the batch completes, so a report run after a submit completed never gets a result without it.
+ */
+public class ConcurrentLedger implements Closeable {
+    private static final int MAX_BATCH = 4096;
+    //The most groups of analytics reports the ReportCache keeps
+    private static final int REPORT_CACHE_ITEMS = 200_000;
+    private static final Pending STOP = new Pending(null, null);
+
+    private final TransactionStore store;
+    private final AppendLog log;
+    private final ArrayBlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final ReportCache reports = new ReportCache(REPORT_CACHE_ITEMS, this::version);
+    //Held by the writer thread while it changes the store, and while a snapshot of the store is made
+    private final Object storeLock = new Object();
+
+    private volatile long version;
+    private volatile Snapshot published;
+    //The totals of the store as of the last batch, replaced by the writer thread after every batch
+    private volatile LedgerTotals totals;
+    private volatile boolean closed;
+    //Set when a batch that is in the file couldn't be added to the store, the ledger takes nothing more after that
+    private volatile RuntimeException broken;
+
+    private ConcurrentLedger(TransactionStore store, AppendLog log, int queueCapacity) {
+        this.store = store;
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.totals = store.totals().snapshot();
+        this.writer = new Thread(this::writeBatches, "ledger-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread. From now on the store must only be changed through submit.
+     * @param store the loaded ledger
+     * @param log the append log of the transactions file, null to keep the transactions in memory only
+     * @param queueCapacity the most transactions waiting to be written before submit waits
+     * @return the running ledger, close it on exit so the queued transactions are written
+     */
+    public static ConcurrentLedger start(TransactionStore store, AppendLog log, int queueCapacity) {
+        ConcurrentLedger ledger = new ConcurrentLedger(store, log, queueCapacity);
+        ledger.writer.start();
+        return ledger;
+    }
+
+    /**
+     * Queues a transaction to be saved and added to the ledger
+     * @param transaction the transaction to add
+     * @return completes once the transaction is written to the file and in the snapshots taken after that,
+     *         so it survives the app crashing, and with the record FsyncPolicy the machine going down too.
+     *         Completes exceptionally if it couldn't be saved, or can't be because its description
+     *         or vendor would break its line in the file (see Transaction.isSavable). A transaction that
+     *         is saved but can't be added to the store still completes normally, since it is in the file,
+     *         and the ledger stops: every submit after it fails with an IllegalStateException.
+     */
+    public CompletableFuture<Void> submit(Transaction transaction) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("The ledger is closed"));
+        }
+        if (broken != null) {
+            return CompletableFuture.failedFuture(stopped());
+        }
+        //Checked by the prompts and the server already, a bad line would break the file for every later start
+        if (!Transaction.isSavable(transaction.getDescription()) || !Transaction.isSavable(transaction.getVendor())) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("A description or vendor with | or a control character can't be saved"));
+        }
+        return enqueue(new Pending(transaction, null));
+    }
+
+    /**
+     * Runs a task on the writer thread after everything queued before it is written and before anything
+     * queued after it, so the store holds exactly the transactions that are in the file while it runs.
+     * Used to save a LedgerSnapshot while other threads keep adding transactions.
+     * @param task the task, it gets the store itself and must not keep it
+     * @return completes once the task has run, exceptionally if it threw
+     */
+    public CompletableFuture<Void> betweenBatches(StoreTask task) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("The ledger is closed"));
+        }
+        if (broken != null) {
+            return CompletableFuture.failedFuture(stopped());
+        }
+        return enqueue(new Pending(null, task));
+    }
+
+    /**
+     * Adds transactions that are in the file already, such as lines another program appended to it,
+     * without writing them again. Only called from a betweenBatches task, on the writer thread.
+     * @param transactions the transactions to add
+     * @throws IllegalStateException if called from another thread
+     */
+    public void addWritten(List<Transaction> transactions) {
+        if (Thread.currentThread() != writer) {
+            throw new IllegalStateException("Only the writer thread changes the ledger");
+        }
+        if (transactions.isEmpty()) {
+            return;
+        }
+        try {
+            merge(transactions);
+        } catch (RuntimeException exception) {
+            //Already in the file like a written batch, see write
+            broken = exception;
+            throw exception;
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Pending pending) {
+        try {
+            queue.put(pending);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        //Queued while the ledger was closing, it may be behind the stop marker
+        if (closed) {
+            awaitWriter();
+            failQueued();
+        }
+        return pending.done;
+    }
+
+    /**
+     * @return a read-only store with every transaction added so far, safe to read from any thread
+     */
+    public TransactionStore snapshot() {
+        Snapshot current = published;
+        if (current != null && current.version == version) {
+            return current.store;
+        }
+        synchronized (storeLock) {
+            current = published;
+            if (current == null || current.version != version) {
+                long started = LedgerMetrics.STORE_SNAPSHOT.start();
+                current = new Snapshot(version, store.snapshot());
+                published = current;
+                LedgerMetrics.STORE_SNAPSHOT.stop(started);
+            }
+            return current.store;
+        }
+    }
+
+    /**
+     * @return the balance and the per-day/month/year totals of every transaction added so far,
+     *         read-only and safe to read from any thread, without taking a snapshot of the store
+     */
+    public LedgerTotals totals() {
+        return totals;
+    }
+
+    /**
+     * @return the number of batches added so far, goes up by one every time the ledger changes
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the results of the last reports, dropped when a transaction dated inside them is added
+     */
+    public ReportCache reports() {
+        return reports;
+    }
+
+    /**
+     * Writes everything queued so far and stops the writer thread.
+     * The append log stays open, it is closed by whoever opened it.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(STOP);
+                break;
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        awaitWriter();
+        failQueued();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatches() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        List<Pending> run = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException exception) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            //Transactions between two tasks go out together, a task waits for the ones queued before it
+            boolean stop = false;
+            for (Pending pending : batch) {
+                if (stop) {
+                    pending.done.completeExceptionally(new IOException("The ledger is closed"));
+                } else if (pending == STOP) {
+                    stop = true;
+                } else if (pending.task != null) {
+                    write(run);
+                    run.clear();
+                    runTask(pending);
+                } else {
+                    run.add(pending);
+                }
+            }
+            write(run);
+            run.clear();
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    //Saved first, like a single deposit, so a snapshot never shows rows that aren't in the file
+    private void write(List<Pending> run) {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (broken != null) {
+            fail(run, stopped());
+            return;
+        }
+        List<Transaction> transactions = new ArrayList<>(run.size());
+        for (Pending pending : run) {
+            transactions.add(pending.transaction);
+        }
+
+        try {
+            if (log != null) {
+                log.appendAll(transactions);
+                //The policy may leave the lines in memory, they have to be in the file before anyone is told they're saved
+                log.write();
+            }
+        } catch (IOException | RuntimeException exception) {
+            //Not saved, the callers can try again
+            fail(run, exception);
+            return;
+        }
+
+        try {
+            merge(transactions);
+        } catch (RuntimeException exception) {
+            //Saved, so failing the callers would only make them save it twice. The store no longer matches
+            //the file and takes nothing more, the next start loads the batch from the file.
+            broken = exception;
+        }
+        for (Pending pending : run) {
+            pending.done.complete(null);
+        }
+    }
+
+    private void merge(List<Transaction> transactions) {
+        synchronized (storeLock) {
+            store.addAll(transactions);
+            version++;
+            totals = store.totals().snapshot();
+        }
+        reports.added(version, epochDays(transactions));
+    }
+
+    private IllegalStateException stopped() {
+        return new IllegalStateException("The ledger stopped after it couldn't add saved transactions, "
+                + "restart to load them from the file: " + broken.getMessage(), broken);
+    }
+
+    private static void fail(List<Pending> run, Exception failure) {
+        for (Pending pending : run) {
+            pending.done.completeExceptionally(failure);
+        }
+    }
+
+    private static int[] epochDays(List<Transaction> transactions) {
+        int[] epochDays = new int[transactions.size()];
+        for (int i = 0; i < epochDays.length; i++) {
+            epochDays[i] = (int) transactions.get(i).getDate().toEpochDay();
+        }
+        Arrays.sort(epochDays);
+        return epochDays;
+    }
+
+    private void runTask(Pending pending) {
+        if (broken != null) {
+            pending.done.completeExceptionally(stopped());
+            return;
+        }
+        try {
+            pending.task.run(store);
+            pending.done.complete(null);
+        } catch (IOException | RuntimeException exception) {
+            pending.done.completeExceptionally(exception);
+        }
+    }
+
+    private void awaitWriter() {
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Only called once the writer thread is gone, nothing else takes from the queue then
+    private void failQueued() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            if (pending != STOP) {
+                pending.done.completeExceptionally(new IOException("The ledger is closed"));
+            }
+        }
+    }
+
+    /**
+     * Work done on the store by the writer thread, see betweenBatches
+     */
+    @FunctionalInterface
+    public interface StoreTask {
+        void run(TransactionStore store) throws IOException;
+    }
+
+    //A queued transaction, or a task when transaction is null
+    private static final class Pending {
+        private final Transaction transaction;
+        private final StoreTask task;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Pending(Transaction transaction, StoreTask task) {
+            this.transaction = transaction;
+            this.task = task;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final TransactionStore store;
+
+        private Snapshot(long version, TransactionStore store) {
+            this.version = version;
+            this.store = store;
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.pluralsight;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class FinancialTracker {
     /* ------------------------------------------------------------------
@@ -24,8 +32,45 @@ public class FinancialTracker {
     private static final String BLUE = "\u001B[34m";
     private static final String PURPLE = "\u001B[35m";
 
-    private static final ArrayList<Transaction> transactions = new ArrayList<>();
+    private static final TransactionStore transactions = new TransactionStore();
     private static final String FILE_NAME = "transactions.csv";
+    private static final long PARALLEL_LOAD_THRESHOLD = 16L * 1024 * 1024;
+    private static final int MALFORMED_LINES_SHOWN = 10;
+    private static final int SUGGESTIONS_SHOWN = 10;
+    private static final int PAGE_SIZE = 50;
+    private static final int INGEST_QUEUE_CAPACITY = 10_000;
+    private static final int SERVER_PORT = 8080;
+    //Set with -Dledger.fsync=record, records:N or interval:MILLIS
+    private static final String FSYNC_POLICY = System.getProperty("ledger.fsync", "record");
+    //Set -Dledger.snapshot=false to always load the whole transactions file
+    private static final boolean SNAPSHOT_ENABLED = Boolean.parseBoolean(System.getProperty("ledger.snapshot", "true"));
+    private static final int SNAPSHOT_EVERY_ROWS = 100_000;
+    //Set -Dledger.watch=true to pick up lines other programs append to the transactions file while the app runs
+    private static final boolean WATCH_ENABLED = Boolean.parseBoolean(System.getProperty("ledger.watch", "false"));
+    //Set -Dledger.compact=true to move the closed months of the transactions file into the archive in the background
+    private static final boolean COMPACT_ENABLED = Boolean.parseBoolean(System.getProperty("ledger.compact", "false"));
+    private static final long COMPACT_DELAY_SECONDS = 10;
+    private static final long COMPACT_INTERVAL_HOURS = 24;
+    //Folder of the per-store, per-month ledgers used by --partition and --report
+    private static final String LEDGERS_DIRECTORY = System.getProperty("ledger.dir", "ledgers");
+    private static final int LOADED_PARTITIONS = Integer.getInteger("ledger.partitions.loaded", 24);
+    //Where and how often the LedgerMetrics are written, -Dledger.metrics=false turns them off
+    private static final String METRICS_FILE = System.getProperty("ledger.metrics.file", "ledger-metrics.txt");
+    private static final long METRICS_INTERVAL_SECONDS = Long.getLong("ledger.metrics.interval", 60);
+
+    private static AppendLog appendLog;
+    //Started once the file is loaded, every deposit and payment goes through it from then on
+    private static volatile ConcurrentLedger ledger;
+    //Only set in --serve mode
+    private static volatile LedgerServer server;
+    //Only set with -Dledger.watch=true
+    private static volatile LedgerTail tail;
+    //Only set with -Dledger.compact=true
+    private static ScheduledExecutorService compactor;
+    //How much of the transactions file was loaded, a LedgerTail reads on from there
+    private static long loadedBytes;
+    private static int rowsSinceSnapshot;
+    private static LedgerPrinter printer;
 
     private static final String DATE_PATTERN = "yyyy-MM-dd";
     private static final String TIME_PATTERN = "HH:mm:ss";
@@ -38,13 +83,53 @@ public class FinancialTracker {
        Main menu
        ------------------------------------------------------------------ */
     public static void main(String[] args) {
+        LedgerMetrics.publish(Path.of(METRICS_FILE), METRICS_INTERVAL_SECONDS);
+
+        //java FinancialTracker --report downtown previous-month reads the partitioned ledgers, not transactions.csv
+        if (args.length == 3 && args[0].equals("--report")) {
+            storeReport(args[1], args[2]);
+            LedgerMetrics.close();
+            return;
+        }
+
         loadTransactions(FILE_NAME);
+        if (!openAppendLog(FILE_NAME)) {
+            return;
+        }
+
+        //java FinancialTracker --import export.csv adds a whole file without going through the menu
+        if (args.length == 2 && args[0].equals("--import")) {
+            importTransactions(args[1]);
+            if (rowsSinceSnapshot > 0) {
+                saveSnapshot(FILE_NAME);
+            }
+            closeAppendLog();
+            return;
+        }
+        //java FinancialTracker --compact moves the closed months into the archive right away
+        if (args.length == 1 && args[0].equals("--compact")) {
+            compactNow();
+            closeAppendLog();
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--partition")) {
+            partitionTransactions(args[1]);
+            closeAppendLog();
+            return;
+        }
+        //java FinancialTracker --serve 8080 answers HTTP/JSON requests instead of showing the menu
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            serve((args.length > 1) ? args[1] : String.valueOf(SERVER_PORT));
+            return;
+        }
 
+        ledger = ConcurrentLedger.start(transactions, appendLog, INGEST_QUEUE_CAPACITY);
+        startTail(FILE_NAME);
+        startCompactor();
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
 
         while (running) {
-            Collections.sort(transactions);
             displayWelcomeArt();
             displayWelcomeMessage();
             System.out.println(GREEN + "D) Add Deposit");
@@ -68,6 +153,26 @@ public class FinancialTracker {
             }
         }
         scanner.close();
+        if (rowsSinceSnapshot > 0) {
+            saveSnapshot(FILE_NAME);
+        }
+        closeAppendLog();
+    }
+
+    /**
+     * @return the ledger as it is now, a snapshot that other threads adding transactions won't change
+     */
+    private static TransactionStore currentTransactions() {
+        ConcurrentLedger running = ledger;
+        return (running != null) ? running.snapshot() : transactions;
+    }
+
+    /**
+     * @return the balance and period totals as they are now, without a snapshot of the rows
+     */
+    private static LedgerTotals currentTotals() {
+        ConcurrentLedger running = ledger;
+        return (running != null) ? running.totals() : transactions.totals();
     }
     /* ------------------------------------------------------------------
        File I/O
@@ -76,39 +181,69 @@ public class FinancialTracker {
      * Load transactions from FILE_NAME.
      * If the file doesn’t exist, create an empty one so that future writes succeed.
      * Each line in the file looks like: date|time|description|vendor|amount
+     * The lines are parsed by LedgerLoader straight from a memory-mapped buffer.
+     * If a LedgerSnapshot of the file is there, it is loaded instead and only the lines added after it are parsed.
      * @param fileName the name of the transactions file to load
      */
     public static void loadTransactions(String fileName) {
 
         try {
-            BufferedReader myReader = new BufferedReader(new FileReader(fileName));
+            long started = LedgerMetrics.LOAD.start();
             File transactionsFile = new File(fileName);
+            if (LedgerArchive.recover(transactionsFile.toPath())) {
+                System.out.println(CYAN + "Finished boxing up the old months, the oven went off in the middle of it" + RESET);
+            }
 
             //Creates new file if the file doesn't exist
             //Reads the transactions from the file if file exists
             if (transactionsFile.createNewFile()) {
                 System.out.println(GREEN + "Fresh file created!" + RESET);
             } else {
-                String line;
-
-                while ((line = myReader.readLine()) != null) {
-                    String[] section = line.split("\\|");
-                    LocalDate transactionDate = LocalDate.parse(section[0], DATE_FMT);
-                    LocalTime transactionTime = LocalTime.parse(section[1], TIME_FMT);
-                    String transactionDescription = section[2];
-                    String transactionVendor = section[3];
-                    double transactionPrice = Double.parseDouble(section[4]);
-
-                    transactions.add(new Transaction(
-                            transactionDate,
-                            transactionTime,
-                            transactionDescription,
-                            transactionVendor,
-                            transactionPrice));
+                if (WATCH_ENABLED) {
+                    //A half line at the end may be another program's write in progress, the LedgerTail reads it once it's whole,
+                    //the same as the lines another program appends while the file loads
+                    loadedBytes = AppendLog.wholeLinesEnd(transactionsFile.toPath());
+                } else {
+                    //A crash in the middle of a write can leave half a line at the end of the file
+                    long removedBytes = AppendLog.recover(transactionsFile.toPath());
+                    if (removedBytes > 0) {
+                        System.out.println(ORANGE + "Cleaned up " + removedBytes + " bytes of a half-written transaction at the end of the file" + RESET);
+                    }
+                    loadedBytes = transactionsFile.length();
                 }
-            }
 
-            myReader.close();
+                long snapshotBytes = SNAPSHOT_ENABLED
+                        ? LedgerSnapshot.load(LedgerSnapshot.pathFor(transactionsFile.toPath()), transactionsFile.toPath(), transactions)
+                        : -1;
+
+                //Big ledgers are cut into chunks and parsed on every core
+                ArrayList<Transaction> loaded = new ArrayList<>();
+                List<LedgerLoader.MalformedLine> malformedLines;
+                //The snapshot holds the archived months too
+                if (snapshotBytes < 0) {
+                    LedgerArchive.load(transactionsFile.toPath(), loaded);
+                }
+                if (snapshotBytes >= 0) {
+                    malformedLines = LedgerLoader.load(transactionsFile.toPath(), snapshotBytes, loadedBytes, loaded);
+                } else if (loadedBytes >= PARALLEL_LOAD_THRESHOLD) {
+                    malformedLines = LedgerLoader.loadParallel(transactionsFile.toPath(), loadedBytes, loaded);
+                } else {
+                    malformedLines = LedgerLoader.load(transactionsFile.toPath(), 0, loadedBytes, loaded);
+                }
+                transactions.addAll(loaded);
+                rowsSinceSnapshot = loaded.size();
+                LedgerMetrics.LOAD.stop(started);
+                LedgerMetrics.LOAD.addRows(transactions.size() + malformedLines.size(), transactions.size());
+                if (snapshotBytes >= 0 && !malformedLines.isEmpty()) {
+                    System.out.println(ORANGE + "Line numbers below count from the lines added since the last quick-start copy" + RESET);
+                }
+                displayMalformedLines(malformedLines);
+
+                //A big file that had to be parsed gets its snapshot right away, not only on exit
+                if (rowsSinceSnapshot >= SNAPSHOT_EVERY_ROWS) {
+                    saveSnapshot(fileName);
+                }
+            }
 
         } catch (Exception exception) {
             System.out.println(RED + "Oops, something went wrong. Contact the Piz-xperts" + RESET);
@@ -116,18 +251,408 @@ public class FinancialTracker {
         }
 
     }
+    /**
+     * Opens the long-lived append log that deposits and payments are written through.
+     * A shutdown hook closes it so batched lines still reach the disk if the app is stopped with Ctrl+C.
+     * @param fileName the name of the transactions file
+     * @return true if the log could be opened
+     */
+    private static boolean openAppendLog(String fileName) {
+        try {
+            appendLog = AppendLog.open(new File(fileName).toPath(), FsyncPolicy.parse(FSYNC_POLICY));
+            Runtime.getRuntime().addShutdownHook(new Thread(FinancialTracker::shutDown));
+            return true;
+        } catch (Exception exception) {
+            System.out.println(RED + "Uh-oh, the oven can't open the dough file for writing" + RESET);
+            System.out.println(exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Follows the transactions file with a LedgerTail when -Dledger.watch=true, so the sales another program
+     * appends to it show up in the running ledger. Started right after the ConcurrentLedger.
+     * @param fileName the name of the transactions file
+     */
+    private static void startTail(String fileName) {
+        if (!WATCH_ENABLED) {
+            return;
+        }
+        try {
+            tail = LedgerTail.start(new File(fileName).toPath(), loadedBytes, ledger, appendLog);
+            System.out.println(CYAN + "Watching " + fileName + " for slices from the other registers" + RESET);
+        } catch (IOException exception) {
+            System.out.println(ORANGE + "Can't watch " + fileName + ", slices other registers add show up after a restart" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * Saves a LedgerSnapshot of the ledger so the next start only has to parse the lines added after it.
+     * Pending appends are synced first, the snapshot has to match the file byte for byte.
+     * When the file is followed by a LedgerTail, the lines it hasn't read yet are read first,
+     * and a last line that is still half written is left out of the snapshot.
+     * When the file is watched but there is no tail, because it isn't started yet or couldn't be, the snapshot
+     * covers the loadedBytes of the file, and once this app appended lines the last snapshot is kept.
+     * @param fileName the name of the transactions file
+     */
+    private static void saveSnapshot(String fileName) {
+        if (!SNAPSHOT_ENABLED) {
+            return;
+        }
+        try {
+            long started = LedgerMetrics.SNAPSHOT_SAVE.start();
+            Path file = new File(fileName).toPath();
+            ConcurrentLedger running = ledger;
+            boolean[] saved = new boolean[1];
+            if (running != null) {
+                //Taken on the writer thread between two batches, when the store and the file match
+                running.betweenBatches(store -> {
+                    appendLog.sync();
+                    long fileBytes = LedgerTail.coveredBytes(tail, WATCH_ENABLED, loadedBytes, appendLog.getBytesWritten());
+                    if (fileBytes >= 0) {
+                        LedgerSnapshot.write(LedgerSnapshot.pathFor(file), file, store, fileBytes);
+                        saved[0] = true;
+                    }
+                }).join();
+            } else {
+                long written = 0;
+                if (appendLog != null) {
+                    appendLog.sync();
+                    written = appendLog.getBytesWritten();
+                }
+                long fileBytes = LedgerTail.coveredBytes(null, WATCH_ENABLED, loadedBytes, written);
+                if (fileBytes >= 0) {
+                    LedgerSnapshot.write(LedgerSnapshot.pathFor(file), file, transactions, fileBytes);
+                    saved[0] = true;
+                }
+            }
+            rowsSinceSnapshot = 0;
+            //The last snapshot is still right for the start of the file, the next start replays the rest
+            if (!saved[0]) {
+                return;
+            }
+            LedgerMetrics.SNAPSHOT_SAVE.stop(started);
+            LedgerMetrics.SNAPSHOT_SAVE.addBytes(Files.size(LedgerSnapshot.pathFor(file)));
+        } catch (IOException | CompletionException exception) {
+            System.out.println(ORANGE + "Couldn't save the quick-start copy of the ledger, the next start will be slower" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * Counts a transaction added since the last snapshot and takes a new snapshot every SNAPSHOT_EVERY_ROWS of them
+     */
+    private static void countForSnapshot() {
+        rowsSinceSnapshot++;
+        if (rowsSinceSnapshot >= SNAPSHOT_EVERY_ROWS) {
+            saveSnapshot(FILE_NAME);
+        }
+    }
+
+    /**
+     * Runs on exit and on Ctrl+C. A server is stopped first and its ledger saved for a quick start next time.
+     * The metrics file is written last, so it has the final appends too.
+     */
+    private static void shutDown() {
+        LedgerServer running = server;
+        if (running != null) {
+            server = null;
+            running.stop();
+            ConcurrentLedger runningLedger = ledger;
+            if (runningLedger != null && runningLedger.version() > 0) {
+                saveSnapshot(FILE_NAME);
+            }
+        }
+        closeAppendLog();
+        LedgerMetrics.close();
+    }
+
+    /**
+     * Stops following the file and the compaction, writes any queued and pending lines to disk and closes the append log
+     */
+    private static void closeAppendLog() {
+        if (compactor != null) {
+            //A compaction that is being written is thrown away, one that is being committed finishes
+            compactor.shutdownNow();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            compactor = null;
+        }
+        LedgerTail following = tail;
+        if (following != null) {
+            tail = null;
+            try {
+                following.close();
+            } catch (IOException exception) {
+                System.out.println(exception.getMessage());
+            }
+        }
+        ConcurrentLedger running = ledger;
+        if (running != null) {
+            running.close();
+            ledger = null;
+        }
+        try {
+            appendLog.close();
+        } catch (IOException exception) {
+            System.out.println(RED + "Uh-oh, the last slices didn't make it to the file" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * Lists the lines of the file that were skipped while loading
+     * Only the first few are shown so a badly broken file doesn't flood the screen
+     * @param malformedLines the lines that couldn't be read, with their line numbers
+     */
+    private static void displayMalformedLines(List<LedgerLoader.MalformedLine> malformedLines) {
+        if (malformedLines.isEmpty()) {
+            return;
+        }
+
+        System.out.println(RED + "Some slices were burnt, " + malformedLines.size() + " line(s) of the file were skipped:" + RESET);
+        for (int i = 0; i < malformedLines.size() && i < MALFORMED_LINES_SHOWN; i++) {
+            System.out.println(malformedLines.get(i));
+        }
+        if (malformedLines.size() > MALFORMED_LINES_SHOWN) {
+            System.out.println("...and " + (malformedLines.size() - MALFORMED_LINES_SHOWN) + " more");
+        }
+        System.out.println();
+    }
+
+    /**
+     * Starts the LedgerServer on the loaded ledger. It keeps running after main returns, until Ctrl+C.
+     * @param port the port to listen on
+     */
+    private static void serve(String port) {
+        try {
+            ledger = ConcurrentLedger.start(transactions, appendLog, INGEST_QUEUE_CAPACITY);
+            //Before the first deposit, the tail has to know which lines the server wrote itself
+            startTail(FILE_NAME);
+            server = LedgerServer.start(ledger, Integer.parseInt(port));
+            startCompactor();
+            System.out.println(GREEN + "The pizza ledger is taking orders on http://localhost:" + server.getPort() + RESET);
+            System.out.println("Press Ctrl+C to close up shop");
+        } catch (IOException | NumberFormatException exception) {
+            System.out.println(RED + "Uh-oh, the server oven won't light" + RESET);
+            System.out.println(exception.getMessage());
+            closeAppendLog();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Partitioned ledgers of many stores
+       ------------------------------------------------------------------ */
+    /**
+     * Copies transactions.csv into the partitioned ledgers as the given store, one file per month
+     * @param store the name of the pizza store, letters, digits, - and _
+     */
+    private static void partitionTransactions(String store) {
+        try (PartitionedLedger partitions = PartitionedLedger.open(Path.of(LEDGERS_DIRECTORY), LOADED_PARTITIONS, FsyncPolicy.parse(FSYNC_POLICY))) {
+            if (partitions.stores().contains(store)) {
+                System.out.println(ORANGE + "The " + store + " store already has its ledgers, pick another name" + RESET);
+                return;
+            }
+
+            //Row ids follow the order of the file, so the month files keep that order too
+            List<Transaction> all = new ArrayList<>(transactions.size());
+            for (int row = 0; row < transactions.size(); row++) {
+                all.add(transactions.get(row));
+            }
+            partitions.addAll(store, all);
+            System.out.println(GREEN + "Copied " + all.size() + " transaction(s) into " + LEDGERS_DIRECTORY + "/" + store + RESET);
+        } catch (Exception exception) {
+            System.out.println(RED + "Uh-oh, the dough didn't split into the store ledgers" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * Runs one of the period reports on the partitioned ledgers.
+     * Only the months of the period are read, and whole months are summed from the manifest.
+     * @param store the name of the pizza store, or all for a total per store
+     * @param period month-to-date, previous-month, year-to-date or previous-year
+     */
+    private static void storeReport(String store, String period) {
+        ReportPeriod reportPeriod = ReportPeriod.parse(period);
+        if (reportPeriod == null) {
+            System.out.println(ORANGE + "Pick month-to-date, previous-month, year-to-date or previous-year" + RESET);
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate start = reportPeriod.start(today);
+        LocalDate end = reportPeriod.end(today);
+
+        long started = LedgerMetrics.STORE_REPORT.start();
+        try (PartitionedLedger partitions = PartitionedLedger.open(Path.of(LEDGERS_DIRECTORY), LOADED_PARTITIONS, FsyncPolicy.parse(FSYNC_POLICY))) {
+            if (store.equals("all")) {
+                System.out.println();
+                System.out.println("Store                       Deposits      Payments       Balance");
+                System.out.println("---------------------------------------------------------------------");
+                for (String name : partitions.stores()) {
+                    LedgerTotals.Totals totals = partitions.totals(name, start, end);
+                    System.out.printf("%-20s  %12s  %12s  %12s%n", name, Money.ofCents(totals.getDepositCents()),
+                            Money.ofCents(totals.getPaymentCents()), Money.ofCents(totals.getBalanceCents()));
+                }
+                System.out.printf(BOLD + "%-20s  %40s%n" + RESET, "All stores",
+                        Money.ofCents(partitions.totals(null, start, end).getBalanceCents()));
+                return;
+            }
+
+            if (!partitions.stores().contains(store)) {
+                System.out.println(ORANGE + "No ledgers for a store called " + store + RESET);
+                return;
+            }
+            tableHeader();
+            partitions.forEachMonth(store, start, end, partition -> {
+                LedgerPrinter monthPrinter = new LedgerPrinter(System.out, partition);
+                int lastPosition = partition.firstPositionBefore(start);
+                for (int position = partition.firstPositionOnOrBefore(end); position < lastPosition; position++) {
+                    int row = partition.rowAt(position);
+                    monthPrinter.row(row, (partition.amountCents(row) > 0) ? GREEN : RED);
+                }
+                monthPrinter.flush();
+            });
+
+            Money reportSum = Money.ofCents(partitions.totals(store, start, end).getBalanceCents());
+            System.out.println("---------------------------------------------------------------------------------------");
+            if (reportSum.isPositive()) {
+                System.out.printf(BOLD + GREEN + "Total profit for this report: %s!\n" + RESET, reportSum);
+            } else {
+                System.out.printf(BOLD + RED + "Total loss for this report: %s\n" + RESET, reportSum);
+            }
+        } catch (Exception exception) {
+            System.out.println(RED + "Uh-oh, the store ledgers couldn't be read" + RESET);
+            System.out.println(exception.getMessage());
+        } finally {
+            LedgerMetrics.STORE_REPORT.stop(started);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Archive of the closed months
+       ------------------------------------------------------------------ */
+    /**
+     * Runs compactTransactions once a day on a background thread when -Dledger.compact=true.
+     * Not while the file is followed, another program could be appending to the file that gets replaced.
+     */
+    private static void startCompactor() {
+        if (!COMPACT_ENABLED) {
+            return;
+        }
+        if (WATCH_ENABLED) {
+            System.out.println(ORANGE + "Not boxing up old months while the other registers write to the file, use --compact when they're closed" + RESET);
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compactTransactions();
+            } catch (IOException | CompletionException exception) {
+                System.out.println(ORANGE + "Couldn't box up the old months, transactions.csv is as it was" + RESET);
+                System.out.println(exception.getMessage());
+            }
+        }, COMPACT_DELAY_SECONDS, TimeUnit.HOURS.toSeconds(COMPACT_INTERVAL_HOURS), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Compacts right away for --compact and lists the months that went into the archive
+     */
+    private static void compactNow() {
+        try {
+            List<LedgerArchive.Segment> segments = compactTransactions();
+            if (segments.isEmpty()) {
+                System.out.println("No closed months to box up yet");
+            }
+            for (LedgerArchive.Segment segment : segments) {
+                System.out.printf(GREEN + "Boxed up %s: %,d transaction(s) from %s to %s, %,d KB of lines in %,d KB" + RESET + "%n",
+                        segment.getMonth(), segment.getRows(), segment.getFirstDate(), segment.getLastDate(),
+                        segment.getLineBytes() / 1024, segment.getCompressedBytes() / 1024);
+            }
+        } catch (IOException | CompletionException exception) {
+            System.out.println(RED + "Couldn't box up the old months, transactions.csv is as it was" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * Moves every month before last month out of the transactions file into a LedgerArchive segment and
+     * rewrites the file without them. The segments are written from a snapshot of the ledger
+     * while deposits and payments keep coming in, only the rewrite of the file waits for the writer thread.
+     * @return the new segments, empty if no month was ready
+     */
+    private static List<LedgerArchive.Segment> compactTransactions() throws IOException {
+        long started = LedgerMetrics.COMPACTION.start();
+        Path file = new File(FILE_NAME).toPath();
+        //This month and last month stay in the file, late receipts still come in for them
+        LedgerArchive.Compaction compaction = LedgerArchive.prepare(file, currentTransactions(), YearMonth.now().minusMonths(1));
+        if (compaction == null) {
+            return List.of();
+        }
+
+        ConcurrentLedger running = ledger;
+        if (running != null) {
+            running.betweenBatches(store -> commitCompaction(compaction, file, store)).join();
+        } else {
+            commitCompaction(compaction, file, transactions);
+        }
+
+        LedgerMetrics.COMPACTION.stop(started);
+        for (LedgerArchive.Segment segment : compaction.getSegments()) {
+            LedgerMetrics.COMPACTION.addRows(segment.getRows(), segment.getRows());
+            LedgerMetrics.COMPACTION.addBytes(segment.getCompressedBytes());
+        }
+        return compaction.getSegments();
+    }
+
+    //Runs when the store holds exactly the lines of the file and the archive, the new file gets a snapshot straight away
+    private static void commitCompaction(LedgerArchive.Compaction compaction, Path file, TransactionStore store) throws IOException {
+        compaction.commit(appendLog);
+        if (SNAPSHOT_ENABLED) {
+            LedgerSnapshot.write(LedgerSnapshot.pathFor(file), file, store);
+        }
+    }
+
     /* ------------------------------------------------------------------
        Add new transactions
        ------------------------------------------------------------------ */
+    /**
+     * Imports a back-office export of date|time|description|vendor|amount lines with BatchImport.
+     * The lines follow the rules of the deposit and payment prompts, lines already in the ledger are skipped.
+     * @param fileName the file to import
+     */
+    private static void importTransactions(String fileName) {
+        try {
+            BatchImport.Result result = BatchImport.importFile(new File(fileName).toPath(), transactions, appendLog);
+            rowsSinceSnapshot += result.getImported();
+
+            System.out.println(GREEN + "Imported " + result.getImported() + " transaction(s) from " + fileName + RESET);
+            if (result.getDuplicates() > 0) {
+                System.out.println(ORANGE + "Skipped " + result.getDuplicates() + " transaction(s) already in the ledger" + RESET);
+            }
+            displayMalformedLines(result.getRejected());
+        } catch (Exception exception) {
+            System.out.println(RED + "Uh-oh, the import didn't make it into the oven" + RESET);
+            System.out.println(exception.getMessage());
+        }
+    }
+
     /**
      * Prompt for ONE date+time string in the format
      * "yyyy-MM-dd HH:mm:ss", plus description, vendor, amount.
-     * Validate that the amount entered is positive.
-     * Store the amount as-is (positive) and append to the file.
+     * Validate that the amount entered is positive, in dollars and cents.
+     * Store the amount as-is (positive) and append to the file through the append log.
      */
     private static void addDeposit(Scanner scanner) {
         try {
-            BufferedWriter myWriter = new BufferedWriter(new FileWriter(FILE_NAME, true));
             System.out.println("Enter the date with time in this format (yyyy-MM-dd HH:mm:s): ");
             LocalDateTime userInputDepositDateTime = LocalDateTime.parse(scanner.nextLine().trim(), DATETIME_FMT);
 
@@ -139,32 +664,33 @@ public class FinancialTracker {
 
             System.out.println("Enter the total price (positive number): ");
             String stringInputDepositAmount = scanner.nextLine().trim();
-            double userDepositAmount = Double.parseDouble(stringInputDepositAmount);
+            Money userDepositAmount = Money.parse(stringInputDepositAmount);
 
-            if (userDepositAmount <= 0) {
+            if (!userDepositAmount.isPositive()) {
                 System.out.println(RED + "\nSorry, only positives are allowed in this place\n" + RESET);
                 return;
             }
+            if (!Transaction.isSavable(userDepositDescription) || !Transaction.isSavable(userDepositVendor)) {
+                System.out.println(RED + "\nSorry, no | or special characters in the order or the name, they'd burn the file\n" + RESET);
+                return;
+            }
 
             LocalDate userDepositDate = userInputDepositDateTime.toLocalDate();
             LocalTime userDepositTime = userInputDepositDateTime.toLocalTime();
 
-            myWriter.write(userDepositDate + "|" +
-                    userDepositTime + "|" +
-                    userDepositDescription + "|" +
-                    userDepositVendor + "|" +
-                    userDepositAmount + "\n");
-
-            transactions.add(new Transaction(
+            Transaction deposit = new Transaction(
                     userDepositDate,
                     userDepositTime,
                     userDepositDescription,
                     userDepositVendor,
-                    userDepositAmount));
+                    userDepositAmount);
+
+            //Waits until the sale is in the file and in the ledger, the ledger never shows a sale that isn't saved
+            ledger.submit(deposit).join();
+            countForSnapshot();
 
             System.out.println();
             System.out.println(GREEN + "Sale recorded!\n" + RESET);
-            myWriter.close();
 
         } catch (Exception exception) {
             System.out.println(RED + "Uh-oh, the oven is not baking to the file" + RESET);
@@ -176,12 +702,11 @@ public class FinancialTracker {
     /**
      * Same prompts as addDeposit.
      * Amount must be entered as a positive number,
-     * then converted to a negative amount before storing.
+     * then negated in cents before storing.
      */
     private static void addPayment(Scanner scanner) {
 
         try {
-            BufferedWriter myWriter = new BufferedWriter(new FileWriter(FILE_NAME, true));
             System.out.println("Enter the date with time in this format (yyyy-MM-dd HH:mm:s): ");
             LocalDateTime userInputPaymentDateTime = LocalDateTime.parse(scanner.nextLine().trim(), DATETIME_FMT);
 
@@ -193,32 +718,32 @@ public class FinancialTracker {
 
             System.out.println("Enter the total price (positive number): ");
             String stringInputDepositAmount = scanner.nextLine().trim();
-            double userInputPaymentAmount = Double.parseDouble(stringInputDepositAmount);
+            Money userInputPaymentAmount = Money.parse(stringInputDepositAmount);
 
-            if (userInputPaymentAmount <= 0) {
+            if (!userInputPaymentAmount.isPositive()) {
                 System.out.println(RED + "\nSorry, only positives are allowed in this place\n" + RESET);
                 return;
             }
+            if (!Transaction.isSavable(userPaymentDescription) || !Transaction.isSavable(userPaymentVendor)) {
+                System.out.println(RED + "\nSorry, no | or special characters in the payment or the name, they'd burn the file\n" + RESET);
+                return;
+            }
 
-            double userPaymentAmount = parseDouble("-" + stringInputDepositAmount);
+            Money userPaymentAmount = userInputPaymentAmount.negate();
             LocalDate userPaymentDate = userInputPaymentDateTime.toLocalDate();
             LocalTime userPaymentTime = userInputPaymentDateTime.toLocalTime();
 
-            myWriter.write(userPaymentDate + "|" +
-                    userPaymentTime + "|" +
-                    userPaymentDescription + "|" +
-                    userPaymentVendor + "|" +
-                    userPaymentAmount + "\n");
-
-            transactions.add(new Transaction(userPaymentDate,
+            Transaction payment = new Transaction(userPaymentDate,
                     userPaymentTime,
                     userPaymentDescription,
                     userPaymentVendor,
-                    userPaymentAmount));
+                    userPaymentAmount);
+
+            ledger.submit(payment).join();
+            countForSnapshot();
 
             System.out.println();
             System.out.println(RED + "Payment recorded! \n" + RESET);
-            myWriter.close();
 
         } catch (Exception exception) {
             System.out.println(RED + "Uh-oh, the oven is not baking to the file" + RESET);
@@ -244,9 +769,9 @@ public class FinancialTracker {
             String input = scanner.nextLine().trim();
 
             switch (input.toUpperCase()) {
-                case "A" -> displayLedger();
-                case "D" -> displayDeposits();
-                case "P" -> displayPayments();
+                case "A" -> displayLedger(scanner);
+                case "D" -> displayDeposits(scanner);
+                case "P" -> displayPayments(scanner);
                 case "R" -> reportsMenu(scanner);
                 case "H" -> {
                     running = false;
@@ -260,21 +785,16 @@ public class FinancialTracker {
     /* ------------------------------------------------------------------
        Display helpers: show data in neat columns
        ------------------------------------------------------------------ */
-    private static void displayLedger() {
+    private static void displayLedger(Scanner scanner) {
 
         try {
             tableHeader();
-            boolean found = false;
-
-            for (Transaction transaction : transactions) {
-                if (transaction.getAmount() > 0 ) {
-                    System.out.println(GREEN + transaction + RESET);
-                } else {
-                    System.out.println(RED + transaction + RESET);
-                }
-                found = true;
-            }
-
+            long started = LedgerMetrics.LEDGER_VIEW.start();
+            TransactionStore snapshot = currentTransactions();
+            //Only the page on screen is read from the store, the rest of the ledger isn't touched
+            PagedView view = PagedView.ofPositions(snapshot, 0, snapshot.size(), null, PAGE_SIZE);
+            LedgerMetrics.LEDGER_VIEW.stop(started, view);
+            boolean found = browse(scanner, view, true);
 
             if (!found) {
                 System.out.println(WHITE + "No transaction history found! Go make your first deposit or payment!\n" + RESET);
@@ -288,18 +808,16 @@ public class FinancialTracker {
         }
     }
 
-    private static void displayDeposits() {
+    private static void displayDeposits(Scanner scanner) {
 
         try {
             tableHeader();
-            boolean found = false;
-
-            for (Transaction transaction : transactions) {
-                if (transaction.getAmount() > 0) {
-                    System.out.println(GREEN + transaction);
-                    found =true;
-                }
-            }
+            long started = LedgerMetrics.LEDGER_VIEW.start();
+            TransactionStore snapshot = currentTransactions();
+            PagedView view = PagedView.ofPositions(snapshot, 0, snapshot.size(),
+                    row -> snapshot.amountCents(row) > 0, PAGE_SIZE);
+            LedgerMetrics.LEDGER_VIEW.stop(started, view);
+            boolean found = browse(scanner, view, true);
 
             System.out.println();
 
@@ -314,18 +832,16 @@ public class FinancialTracker {
 
     }
 
-    private static void displayPayments() {
+    private static void displayPayments(Scanner scanner) {
 
         try {
             tableHeader();
-            boolean found = false;
-
-            for (Transaction transaction : transactions) {
-                if (transaction.getAmount() < 0) {
-                    System.out.println(RED + transaction + RESET);
-                    found = true;
-                }
-            }
+            long started = LedgerMetrics.LEDGER_VIEW.start();
+            TransactionStore snapshot = currentTransactions();
+            PagedView view = PagedView.ofPositions(snapshot, 0, snapshot.size(),
+                    row -> snapshot.amountCents(row) < 0, PAGE_SIZE);
+            LedgerMetrics.LEDGER_VIEW.stop(started, view);
+            boolean found = browse(scanner, view, true);
 
             System.out.println();
 
@@ -352,19 +868,23 @@ public class FinancialTracker {
             System.out.println(RED + "3) Year To Date");
             System.out.println(ORANGE + "4) Previous Year");
             System.out.println(RED + "5) Search by Vendor");
-            System.out.println(CYAN + "6) Custom Search" + RESET);
+            System.out.println(CYAN + "6) Custom Search");
+            System.out.println(BLUE + "7) Smart Search (partial names and typos)");
+            System.out.println(PURPLE + "8) Analytics (totals per vendor, description or period)" + RESET);
             System.out.println("0) Back");
             System.out.println(BOLD_YELLOW + "===============================================" + RESET);
             System.out.println("Which pizza report would you like to bake today?");
             String input = scanner.nextLine().trim();
 
             switch (input) {
-                case "1" -> monthToDateReport();
-                case "2" -> previousMonthReport();
-                case "3" -> yearToDateReport();
-                case "4" -> previousYearReport();
+                case "1" -> monthToDateReport(scanner);
+                case "2" -> previousMonthReport(scanner);
+                case "3" -> yearToDateReport(scanner);
+                case "4" -> previousYearReport(scanner);
                 case "5" -> vendorSearch(scanner);
                 case "6" -> customSearch(scanner);
+                case "7" -> smartSearch(scanner);
+                case "8" -> analyticsReport(scanner);
                 case "0" -> {
                     running = false;
                     System.out.println();
@@ -383,7 +903,118 @@ public class FinancialTracker {
         System.out.println("Enter the vendor's name: ");
         String inputVendor = scanner.nextLine().trim();
 
-        filterTransactionsByVendor(inputVendor);
+        filterTransactionsByVendor(scanner, inputVendor);
+    }
+
+    /**
+     * Prompts the user for part of a vendor or description, even with a typo or two,
+     * lists the closest vendors and descriptions and shows the transactions of the one picked
+     * @param scanner captures the user input from the user
+     */
+    private static void smartSearch(Scanner scanner) {
+        System.out.println("Enter part of a vendor or description: ");
+        String query = scanner.nextLine().trim();
+        TransactionStore snapshot = currentTransactions();
+
+        List<SearchSuggestion> suggestions = snapshot.suggest(query, SUGGESTIONS_SHOWN);
+        if (suggestions.isEmpty()) {
+            System.out.printf(WHITE + "Nothing close to %s on the menu!\n" + RESET, query);
+            return;
+        }
+
+        System.out.println();
+        for (int i = 0; i < suggestions.size(); i++) {
+            SearchSuggestion suggestion = suggestions.get(i);
+            System.out.printf("%2d) %-30s %-12s %d transaction(s)\n", i + 1,
+                    suggestion.getValue(), suggestion.getField(), suggestion.getRowCount());
+        }
+        System.out.println("Pick a number to see its transactions (blank=back): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return;
+        }
+
+        try {
+            SearchSuggestion picked = suggestions.get(Integer.parseInt(input) - 1);
+            tableHeader();
+            browse(scanner, TransactionSearch.ofRows(snapshot, snapshot.rowsOf(picked), PAGE_SIZE), false);
+        } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+            System.out.println(ORANGE + "That slice isn't on the list, try again\n" + RESET);
+        }
+    }
+
+    /**
+     * Prompts the user for what to group by, optionally a second key to split every group by,
+     * deposits or payments and the dates, then prints the count, total and average of every group.
+     * With a period among the keys each line also shows the change from the period before,
+     * vendor then month gives the spend of every vendor month over month.
+     * @param scanner captures the user input from the user
+     */
+    private static void analyticsReport(Scanner scanner) {
+        try {
+            System.out.println();
+            System.out.println("Group by (vendor, description, day, week or month): ");
+            GroupKey groupBy = GroupKey.parse(scanner.nextLine().trim());
+            if (groupBy == null) {
+                System.out.println(ORANGE + "We can only slice by vendor, description, day, week or month\n" + RESET);
+                return;
+            }
+
+            System.out.println("Then by (vendor, description, day, week or month) blank=none: ");
+            String thenInput = scanner.nextLine().trim();
+            GroupKey thenBy = thenInput.isEmpty() ? null : GroupKey.parse(thenInput);
+            if (!thenInput.isEmpty() && (thenBy == null || thenBy == groupBy)) {
+                System.out.println(ORANGE + "Pick a different vendor, description, day, week or month\n" + RESET);
+                return;
+            }
+
+            System.out.println("D) Deposits only  P) Payments only  blank=all: ");
+            LedgerAnalytics.Include include = switch (scanner.nextLine().trim().toUpperCase()) {
+                case "D" -> LedgerAnalytics.Include.DEPOSITS;
+                case "P" -> LedgerAnalytics.Include.PAYMENTS;
+                default -> LedgerAnalytics.Include.ALL;
+            };
+
+            System.out.println("Enter start date (yyyy-MM-dd) blank=none: ");
+            LocalDate startDate = parseDate(scanner.nextLine().trim());
+            System.out.println("Enter end date (yyyy-MM-dd) blank=none: ");
+            LocalDate endDate = parseDate(scanner.nextLine().trim());
+
+            LedgerAnalytics analytics = new LedgerAnalytics();
+            analytics.setGroupBy(groupBy);
+            analytics.setThenBy(thenBy);
+            analytics.setInclude(include);
+            analytics.setStart(startDate);
+            analytics.setEnd(endDate);
+
+            //Comes from the ReportCache when the same report ran before and nothing was added in its dates since
+            long started = LedgerMetrics.ANALYTICS.start();
+            ConcurrentLedger running = ledger;
+            List<LedgerAnalytics.Group> groups = (running != null) ? analytics.run(running) : analytics.run(transactions);
+            LedgerMetrics.ANALYTICS.stop(started);
+            LedgerMetrics.ANALYTICS.addRows(analytics.getRowsRead(), groups.size());
+            if (groups.isEmpty()) {
+                System.out.println(WHITE + "\nNo transactions to add up for those dates" + RESET);
+                return;
+            }
+
+            System.out.println();
+            System.out.printf("%-30s %-20s %10s %14s %12s %9s%n", capitalize(groupBy.getName()),
+                    (thenBy != null) ? capitalize(thenBy.getName()) : "", "Count", "Total", "Average", "Change");
+            System.out.println("-".repeat(100));
+            for (LedgerAnalytics.Group group : groups) {
+                Double change = group.getChangePercent();
+                System.out.printf("%-30s %-20s %10d %14s %12s %9s%n", group.getKey(),
+                        (group.getThenKey() != null) ? group.getThenKey() : "", group.getCount(),
+                        group.getTotal(), group.getAverage(), (change != null) ? String.format("%+.1f%%", change) : "");
+            }
+        } catch (IllegalArgumentException exception) {
+            System.out.println(RED + "That report is too big to bake, try fewer days" + RESET);
+            System.out.println(exception.getMessage());
+        } catch (Exception exception) {
+            System.out.println(RED + "Error occurred when checking your dates, are you sure the dates are in human language?" + RESET);
+            System.out.println(exception.getMessage());
+        }
     }
 
     /**
@@ -391,11 +1022,11 @@ public class FinancialTracker {
      * Determines the first day and last day of the previous year
      * Each date is then passed into the helper method for date filtering
      */
-    private static void previousYearReport() {
+    private static void previousYearReport(Scanner scanner) {
         LocalDate firstDayOfLastYear = LocalDate.now().minusYears(1).withDayOfYear(1);
         LocalDate lastDayOfLastYear = LocalDate.now().withDayOfYear(1).minusDays(1);
 
-        filterTransactionsByDate(firstDayOfLastYear, lastDayOfLastYear);
+        filterTransactionsByDate(scanner, firstDayOfLastYear, lastDayOfLastYear, LedgerMetrics.report(ReportPeriod.PREVIOUS_YEAR));
     }
 
     /**
@@ -403,11 +1034,11 @@ public class FinancialTracker {
      * Determines the first day of the current year and current date
      * Each date is then passed into the helper method for date filtering
      */
-    private static void yearToDateReport() {
+    private static void yearToDateReport(Scanner scanner) {
         LocalDate firstDayOfThisYear = LocalDate.now().withDayOfYear(1);
         LocalDate today = LocalDate.now();
 
-        filterTransactionsByDate(firstDayOfThisYear, today);
+        filterTransactionsByDate(scanner, firstDayOfThisYear, today, LedgerMetrics.report(ReportPeriod.YEAR_TO_DATE));
     }
 
     /**
@@ -415,11 +1046,11 @@ public class FinancialTracker {
      * Determines the first day and last day of the previous month.
      * Each date is then passed into the helper method for date filtering
      */
-    private static void previousMonthReport() {
+    private static void previousMonthReport(Scanner scanner) {
         LocalDate firstDayOfLastMonth = LocalDate.now().minusMonths(1).withDayOfMonth(1);
         LocalDate lastDayOfLastMonth = LocalDate.now().withDayOfMonth(1).minusDays(1);
 
-        filterTransactionsByDate(firstDayOfLastMonth, lastDayOfLastMonth);
+        filterTransactionsByDate(scanner, firstDayOfLastMonth, lastDayOfLastMonth, LedgerMetrics.report(ReportPeriod.PREVIOUS_MONTH));
     }
 
     /**
@@ -427,11 +1058,11 @@ public class FinancialTracker {
      * Determines the first day of the current month and current date
      * Each date is then passed into the helper method for date filtering
      */
-    private static void monthToDateReport() {
+    private static void monthToDateReport(Scanner scanner) {
         LocalDate firstDayOfMonth = LocalDate.now().withDayOfMonth(1);
         LocalDate today = LocalDate.now();
 
-        filterTransactionsByDate(firstDayOfMonth, today);
+        filterTransactionsByDate(scanner, firstDayOfMonth, today, LedgerMetrics.report(ReportPeriod.MONTH_TO_DATE));
     }
 
     /* ------------------------------------------------------------------
@@ -440,38 +1071,36 @@ public class FinancialTracker {
 
     /**
      * Filters and displays transactions within a specific date range.
-     * Compares each transaction date to the provided parameter dates
+     * Looks up the first and last position of the range in the sorted store
      * @param start receives a LocalDate variable in the date format yyyy-MM-dd
      *              to start the range from
      * @param end receives a LocalDate variable in the date format yyyy-MM-dd
      *            to the end the range
+     * @param operation the metrics of the report, timed until its first page is ready
      */
-    private static void filterTransactionsByDate(LocalDate start, LocalDate end) {
+    private static void filterTransactionsByDate(Scanner scanner, LocalDate start, LocalDate end, LedgerMetrics.Operation operation) {
 
         tableHeader();
-        boolean found = false;
-        double reportSum = 0;
-
-        for (Transaction transaction : transactions) {
-            if (!transaction.getDate().isAfter(end) && !transaction.getDate().isBefore(start)) {
-                if (transaction.getAmount() > 0) {
-                    System.out.println(GREEN + transaction + RESET);
-                    reportSum += transaction.getAmount();
-                } else {
-                    System.out.println(RED + transaction + RESET);
-                    reportSum += transaction.getAmount();
-                }
-                found = true;
-            }
-        }
+        long started = operation.start();
+        TransactionStore snapshot = currentTransactions();
 
+        //The store is kept sorted by date, so the range is found by binary search and no other row is read
+        int firstPosition = snapshot.firstPositionOnOrBefore(end);
+        int lastPosition = snapshot.firstPositionBefore(start);
+        PagedView view = PagedView.ofPositions(snapshot, firstPosition, lastPosition, null, PAGE_SIZE);
+
+        //Summed in cents from the day/month/year totals instead of adding up the printed rows
+        Money reportSum = Money.ofCents(snapshot.totals().between(start, end).getBalanceCents());
+        operation.stop(started, view);
+
+        boolean found = browse(scanner, view, true);
         if (found) {
-            if (reportSum > 0) {
+            if (reportSum.isPositive()) {
                 System.out.println("---------------------------------------------------------------------------------------");
-                System.out.printf(BOLD + GREEN + "Total profit for this report: %.2f!\n" + RESET, reportSum);
+                System.out.printf(BOLD + GREEN + "Total profit for this report: %s!\n" + RESET, reportSum);
             } else {
                 System.out.println("---------------------------------------------------------------------------------------");
-                System.out.printf(BOLD+ RED + "Total loss for this report: %.2f\n" + RESET, reportSum);
+                System.out.printf(BOLD+ RED + "Total loss for this report: %s\n" + RESET, reportSum);
             }
         } else {
             System.out.printf(WHITE + "No transaction found from %s to %s!\n" + RESET, start, end);
@@ -482,17 +1111,16 @@ public class FinancialTracker {
      * Filters and displays transaction based on the parameter passed into the method
      * @param vendor receives as a String to pass into the condition to filter
      */
-    private static void filterTransactionsByVendor(String vendor) {
+    private static void filterTransactionsByVendor(Scanner scanner, String vendor) {
 
         tableHeader();
-        boolean found = false;
+        long started = LedgerMetrics.VENDOR_SEARCH.start();
+        TransactionStore snapshot = currentTransactions();
 
-        for (Transaction transaction : transactions) {
-            if (transaction.getVendor().equalsIgnoreCase(vendor)) {
-                System.out.println(transaction);
-                found = true;
-            }
-        }
+        //The vendor index already knows the rows, ignoring case like equalsIgnoreCase did
+        PagedView view = TransactionSearch.ofRows(snapshot, snapshot.rowsWithVendor(vendor), PAGE_SIZE);
+        LedgerMetrics.VENDOR_SEARCH.stop(started, view);
+        boolean found = browse(scanner, view, false);
 
         if (!found) {
             System.out.printf(WHITE + "No vendor found matching your search: %s!\n" + RESET, vendor);
@@ -501,8 +1129,9 @@ public class FinancialTracker {
 
     /**
      * Prompts the user for input on dates in the format yyyy-MM-dd, description,
-     * vendor, and the amount of the transaction
-     * Performs a search in transactions ArrayList based on user inputs.
+     * vendor, the amount of the transaction, a range of amounts and how many of the
+     * largest or smallest amounts to show
+     * Performs a search in the transactions store based on user inputs.
      * For each transaction, it is defaulted to print out unless any conditions
      * matches, and it will filter out the transaction.
      */
@@ -527,47 +1156,51 @@ public class FinancialTracker {
 
             System.out.println("Enter the amount of the transaction blank=none: ");
             String amountInput = scanner.nextLine().trim();
-            Double searchAmount = parseDouble(amountInput);
+            Money searchAmount = parseMoney(amountInput);
+
+            System.out.println("Enter the minimum amount (-50 leaves out payments over $50) blank=none: ");
+            Money searchMinAmount = parseMoney(scanner.nextLine().trim());
+
+            System.out.println("Enter the maximum amount blank=none: ");
+            Money searchMaxAmount = parseMoney(scanner.nextLine().trim());
+
+            System.out.println("Show only the largest amounts (10) or the smallest, the biggest payments (-10) blank=all: ");
+            String rankInput = scanner.nextLine().trim();
+            int rankCount = rankInput.isEmpty() ? 0 : Integer.parseInt(rankInput);
 
             boolean found = false;
             boolean hasCriteria = (searchStartDate != null ||
                     searchEndDate != null ||
                     !searchDescription.isEmpty() ||
                     !searchVendor.isEmpty() ||
-                    searchAmount != null);
+                    searchAmount != null ||
+                    searchMinAmount != null ||
+                    searchMaxAmount != null ||
+                    rankCount != 0);
+
+            TransactionSearch search = new TransactionSearch();
+            search.setStart(searchStartDate);
+            search.setEnd(searchEndDate);
+            search.setDescription(searchDescription);
+            search.setVendor(searchVendor);
+            search.setAmount(searchAmount);
+            search.setMinAmount(searchMinAmount);
+            search.setMaxAmount(searchMaxAmount);
 
             tableHeader();
-
-            for (Transaction transaction : transactions) {
-                boolean isMatch = true;
-
-                if (searchStartDate != null && transaction.getDate().isBefore(searchStartDate)) {
-                    isMatch = false;
-                }
-
-                if (searchEndDate != null && transaction.getDate().isAfter(searchEndDate)) {
-                    isMatch = false;
-                }
-
-                if (!searchDescription.isEmpty() &&
-                        !transaction.getDescription().equalsIgnoreCase(searchDescription)) {
-                    isMatch = false;
-                }
-
-                if (!searchVendor.isEmpty()
-                        && !transaction.getVendor().equalsIgnoreCase(searchVendor)) {
-                    isMatch = false;
-                }
-
-                if (searchAmount != null && transaction.getAmount() != searchAmount) {
-                    isMatch = false;
-                }
-
-                if (isMatch) {
-                    System.out.println(transaction);
-                    found = true;
-                }
+            long started = LedgerMetrics.CUSTOM_SEARCH.start();
+            TransactionStore snapshot = currentTransactions();
+
+            PagedView view;
+            if (rankCount > 0) {
+                view = search.largest(snapshot, rankCount, PAGE_SIZE);
+            } else if (rankCount < 0) {
+                view = search.smallest(snapshot, -rankCount, PAGE_SIZE);
+            } else {
+                view = search.find(snapshot, PAGE_SIZE);
             }
+            LedgerMetrics.CUSTOM_SEARCH.stop(started, view);
+            found = browse(scanner, view, false);
 
             if (!hasCriteria) {
                 System.out.println(WHITE + "\nNo search criteria entered. Returning all transactions" + RESET);
@@ -591,11 +1224,8 @@ public class FinancialTracker {
      * Displays welcome message, today's date, and account balance
      */
     private static void displayWelcomeMessage() {
-        double totalBalance = 0;
-
-        for (Transaction transaction : transactions) {
-            totalBalance += transaction.getAmount();
-        }
+        //The balance is kept up to date by the store as transactions are added, no rows are needed for it
+        Money totalBalance = Money.ofCents(currentTotals().overall().getBalanceCents());
 
         System.out.println();
         System.out.println(RED + BOLD + "        \uD83C\uDF55  Welcome to PizzaLedger  \uD83C\uDF55");
@@ -603,12 +1233,23 @@ public class FinancialTracker {
         System.out.println(ORANGE + "Manage your pizza shop sales and purchases");
         System.out.println("with reports where every slice counts!\n" + RESET);
         System.out.println("Today's Date: " + LocalDate.now());
-        if (totalBalance > 0) {
-            System.out.printf(GREEN + "Current Balance: $%.2f\n\n" + RESET, totalBalance);
-        } else if (totalBalance == 0) {
-            System.out.printf("Current Balance: $%.2f\n\n", totalBalance);
+        if (totalBalance.isPositive()) {
+            System.out.printf(GREEN + "Current Balance: $%s\n\n" + RESET, totalBalance);
+        } else if (totalBalance.isNegative()) {
+            System.out.printf(RED + "Current Balance: $%s\n\n" + RESET, totalBalance);
         } else {
-            System.out.printf(RED + "Current Balance: $%.2f\n\n" + RESET, totalBalance);
+            System.out.printf("Current Balance: $%s\n\n", totalBalance);
+        }
+
+        LedgerTail following = tail;
+        if (following != null && following.getRowsAdded() > 0) {
+            System.out.println(CYAN + following.getRowsAdded() + " slice(s) came in from the other registers" + RESET);
+        }
+        if (following != null && following.getLinesSkipped() > 0) {
+            System.out.println(ORANGE + following.getLinesSkipped() + " line(s) from the other registers were burnt" + RESET);
+        }
+        if (following != null && following.getLastProblem() != null) {
+            System.out.println(ORANGE + "Last trouble with the other registers: " + following.getLastProblem() + RESET);
         }
     }
 
@@ -641,6 +1282,87 @@ public class FinancialTracker {
         System.out.println(pizzaStore);
     }
 
+    /**
+     * Prints a view one page at a time. When there is more than one page the user can go to the
+     * next or previous page or jump to a date, a view that fits on one page is printed as it is.
+     * @param scanner captures the user input from the user
+     * @param view the rows to show
+     * @param colored print deposits green and payments red
+     * @return true if the view has any rows
+     */
+    private static boolean browse(Scanner scanner, PagedView view, boolean colored) {
+        if (view.isEmpty()) {
+            return false;
+        }
+
+        printPage(view, colored);
+        while (view.hasNext() || view.hasPrevious()) {
+            if (view.size() >= 0) {
+                System.out.printf(GRAY + "Showing %d-%d of %d%n" + RESET, view.pageStart() + 1,
+                        view.pageStart() + view.page().length, view.size());
+            }
+            //A ranked view is in amount order, there is no date to jump to
+            System.out.println(view.isDateOrdered()
+                    ? "N) Next page  P) Previous page  J) Jump to date  Q) Done"
+                    : "N) Next page  P) Previous page  Q) Done");
+            String input = scanner.nextLine().trim().toUpperCase();
+
+            boolean moved = false;
+            switch (input) {
+                case "N", "" -> {
+                    moved = view.next();
+                    if (!moved) {
+                        System.out.println(ORANGE + "That's the last slice, no more pages\n" + RESET);
+                    }
+                }
+                case "P" -> {
+                    moved = view.previous();
+                    if (!moved) {
+                        System.out.println(ORANGE + "Already on the first page\n" + RESET);
+                    }
+                }
+                case "J" -> {
+                    if (!view.isDateOrdered()) {
+                        System.out.println(ORANGE + "These slices are sorted by amount, not by date\n" + RESET);
+                        continue;
+                    }
+                    System.out.println("Enter the date to jump to (yyyy-MM-dd): ");
+                    try {
+                        view.jumpTo(LocalDate.parse(scanner.nextLine().trim(), DATE_FMT));
+                        moved = true;
+                    } catch (DateTimeParseException exception) {
+                        System.out.println(RED + "That date isn't on the calendar, try yyyy-MM-dd\n" + RESET);
+                    }
+                }
+                case "Q" -> {
+                    return true;
+                }
+                default -> System.out.println(ORANGE + "That's not a page option, try again\n" + RESET);
+            }
+
+            if (moved) {
+                tableHeader();
+                printPage(view, colored);
+            }
+        }
+        return true;
+    }
+
+    private static void printPage(PagedView view, boolean colored) {
+        TransactionStore store = view.store();
+        //A printer caches the cells of its store, it is only replaced when a newer snapshot is shown
+        if (printer == null || printer.store() != store) {
+            printer = new LedgerPrinter(System.out, store);
+        }
+        for (int row : view.page()) {
+            printer.row(row, colored ? ((store.amountCents(row) > 0) ? GREEN : RED) : null);
+        }
+        if (view.page().length == 0) {
+            printer.line(WHITE + "No transactions on or before that date" + RESET);
+        }
+        printer.flush();
+    }
+
     /**
      * Displays the table header for transactions/reports
      */
@@ -653,6 +1375,13 @@ public class FinancialTracker {
        Utility parsers (you can reuse in many places)
        ------------------------------------------------------------------ */
 
+    /**
+     * @return the string with its first letter in upper case, vendor as Vendor
+     */
+    private static String capitalize(String s) {
+        return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
     /**
      * Parses a string in the yyyy-MM-dd date format to return null or
      * as a LocalDate object
@@ -669,16 +1398,16 @@ public class FinancialTracker {
     }
 
     /**
-     * Parses a string into a Double value
-     * @param s the string to parse
-     * @return the string as a Double value or null if the string is empty
+     * Parses a string into an amount of Money
+     * @param s the string to parse, dollars with at most two decimals
+     * @return the amount or null if the string is empty
      */
-    private static Double parseDouble(String s) {
+    private static Money parseMoney(String s) {
 
         if (s == null || s.isEmpty()) {
             return null;
         } else {
-            return Double.parseDouble(s);
+            return Money.parse(s);
         }
     }
 }
@@ -0,0 +1,78 @@
+package com.pluralsight;
+
+/**
+ * When the AppendLog forces its writes to disk.
+ * Written as "record", "records:N" or "interval:MILLIS", for example -Dledger.fsync=interval:50
+ */
+public final class FsyncPolicy {
+    enum Mode { EVERY_RECORD, EVERY_N_RECORDS, INTERVAL }
+
+    private final Mode mode;
+    private final long value;
+
+    private FsyncPolicy(Mode mode, long value) {
+        this.mode = mode;
+        this.value = value;
+    }
+
+    /**
+     * Every append waits until its line is on disk, appends made at the same time share one fsync
+     */
+    public static FsyncPolicy everyRecord() {
+        return new FsyncPolicy(Mode.EVERY_RECORD, 1);
+    }
+
+    /**
+     * The log is forced to disk once the given number of lines are waiting
+     * @param records the number of appended lines per fsync
+     */
+    public static FsyncPolicy everyRecords(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("The number of records per fsync must be at least 1");
+        }
+        return new FsyncPolicy(Mode.EVERY_N_RECORDS, records);
+    }
+
+    /**
+     * A background thread forces the log to disk on a fixed interval
+     * @param millis the time between two fsyncs
+     */
+    public static FsyncPolicy everyMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The fsync interval must be at least 1 ms");
+        }
+        return new FsyncPolicy(Mode.INTERVAL, millis);
+    }
+
+    /**
+     * Reads a policy written as "record", "records:N" or "interval:MILLIS"
+     * @param text the policy to read
+     * @return the policy
+     */
+    public static FsyncPolicy parse(String text) {
+        String[] parts = text.trim().toLowerCase().split(":");
+        return switch (parts[0]) {
+            case "record" -> everyRecord();
+            case "records" -> everyRecords(Integer.parseInt(parts[1]));
+            case "interval" -> everyMillis(Long.parseLong(parts[1]));
+            default -> throw new IllegalArgumentException("Unknown fsync policy: " + text);
+        };
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return switch (mode) {
+            case EVERY_RECORD -> "record";
+            case EVERY_N_RECORDS -> "records:" + value;
+            case INTERVAL -> "interval:" + value;
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.pluralsight;
+
+/**
+ * What an analytics report groups transactions by, with the names used in the menu and the server's URLs
+ */
+public enum GroupKey {
+    VENDOR("vendor"),
+    DESCRIPTION("description"),
+    DAY("day"),
+    WEEK("week"),
+    MONTH("month");
+
+    private final String name;
+
+    GroupKey(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name vendor, description, day, week or month, case doesn't matter
+     * @return the key with that name, null if there is none
+     */
+    public static GroupKey parse(String name) {
+        for (GroupKey key : values()) {
+            if (key.name.equalsIgnoreCase(name)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true for day, week and month, whose groups follow each other in time
+     */
+    public boolean isPeriod() {
+        return this == DAY || this == WEEK || this == MONTH;
+    }
+}
@@ -0,0 +1,85 @@
+package com.pluralsight;
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, used for lists of row ids so they don't have to be boxed.
+ * <p>
+ * A list that snapshots of the store read while it grows is published after each batch. Other threads
+ * only read what was published: later adds go past that or into a new array, so it never changes.
+ */
+class IntList {
+    private static final int[] NONE = new int[0];
+
+    private int[] values = new int[4];
+    private int size;
+    //Written array first and read size first, so the array read always holds the size read
+    private volatile int[] publishedValues = NONE;
+    private volatile int publishedSize;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    //Only for a list that isn't published, the next adds overwrite the old values
+    void clear() {
+        size = 0;
+    }
+
+    //Hands what was added so far to other threads
+    void publish() {
+        publishedValues = values;
+        publishedSize = size;
+    }
+
+    //False once something was added since the last publish, only for the thread that adds
+    boolean isPublished() {
+        return publishedSize == size;
+    }
+
+    /**
+     * @param limit the first value to leave out, the list must be sorted
+     * @return the published values below the limit
+     */
+    int[] publishedBelow(int limit) {
+        int count = publishedSize;
+        int[] published = publishedValues;
+        return Arrays.copyOf(published, lowerBound(published, count, limit));
+    }
+
+    /**
+     * @param limit the first value to leave out, the list must be sorted
+     * @return the number of published values below the limit
+     */
+    int countPublishedBelow(int limit) {
+        int count = publishedSize;
+        return lowerBound(publishedValues, count, limit);
+    }
+
+    private static int lowerBound(int[] values, int count, int limit) {
+        if (count == 0 || values[count - 1] < limit) {
+            return count;
+        }
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < limit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
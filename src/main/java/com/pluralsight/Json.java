@@ -0,0 +1,161 @@
+package com.pluralsight;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the LedgerServer: writing strings and reading one flat object,
+ * so the tracker keeps running without any libraries.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Appends the text as a quoted JSON string
+     */
+    static StringBuilder string(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Appends cents as a JSON number with two decimals, 3299 as 32.99
+     */
+    static StringBuilder cents(StringBuilder json, long cents) {
+        return Money.appendTo(json, cents);
+    }
+
+    /**
+     * Reads an object whose values are strings, numbers, true, false or null
+     * @param text the JSON text
+     * @return the values by name, numbers and booleans as they were written, null values left out
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, String> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, String> values = new LinkedHashMap<>();
+        parser.expect('{');
+        if (!parser.skip('}')) {
+            do {
+                String name = parser.string();
+                parser.expect(':');
+                String value = parser.value();
+                if (value != null) {
+                    values.put(name, value);
+                }
+            } while (parser.skip(','));
+            parser.expect('}');
+        }
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("Unexpected text after the object");
+        }
+        return values;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean atEnd() {
+            skipSpaces();
+            return position == text.length();
+        }
+
+        private boolean skip(char c) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!skip(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at character " + position);
+            }
+        }
+
+        private String value() {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw new IllegalArgumentException("Unexpected value at character " + start);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Cut off \\u escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+    }
+}
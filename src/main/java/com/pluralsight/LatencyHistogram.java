@@ -0,0 +1,117 @@
+package com.pluralsight;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in nanoseconds the way HdrHistogram does: values below 32 get a bucket each and every
+ * power of two above that is split into 32 equal buckets, so a percentile is off by at most 1/32 (about 3%)
+ * whether it is a microsecond or a minute, and the histogram never grows past its 1888 buckets.
+ * <p>
+ * Recording increments one bucket, it never locks or allocates and can be called from any number of threads.
+ * Percentiles are read from a copy of the buckets, so reading them doesn't stop the recording either.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Values below 2^63 have at most 58 shifts of 32 buckets, on top of the first 32 exact ones
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one latency
+     * @param nanos the latency in nanoseconds, a negative one from a clock step counts as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of every recorded latency in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return the longest recorded latency in nanoseconds, exact
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Reads several percentiles from one copy of the buckets
+     * @param percents the percentiles to read, such as 50, 99 or 99.9
+     * @return the latency in nanoseconds each percent of the recorded latencies is at or below, 0 if none are recorded
+     */
+    public long[] percentiles(double... percents) {
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+
+        long[] values = new long[percents.length];
+        if (recorded == 0) {
+            return values;
+        }
+        long highest = max.get();
+        for (int p = 0; p < percents.length; p++) {
+            //Nearest rank, the value of the bucket holding the n-th smallest latency
+            long rank = Math.max(1, (long) Math.ceil(percents[p] / 100 * recorded));
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && (seen += counts[bucket]) < rank) {
+                bucket++;
+            }
+            values[p] = Math.min(highestValueIn(bucket), highest);
+        }
+        return values;
+    }
+
+    /**
+     * Forgets every recorded latency. Latencies recorded at the same time may be kept in part.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    //The 32 values of the top 5 bits under the highest bit pick the bucket, the bits below them are dropped
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket - (long) shift * SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
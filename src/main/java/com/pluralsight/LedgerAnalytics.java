@@ -0,0 +1,401 @@
+package com.pluralsight;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Group-by reports: the count, total and average of the transactions per vendor, description, day,
+ * week or month, or per pair of them, such as vendor and then month for the spend of every vendor
+ * month over month.
+ * <p>
+ * A group is an int, so its figures are a slot in two primitive arrays instead of a map entry.
+ * A vendor or description is its dictionary id, with ids that differ only in case sharing a group like
+ * they do in the text indexes. A day, week or month is counted from the oldest day in the report.
+ * A pair of groups is one slot in a grid of both.
+ * <p>
+ * The rows are cut into ranges and each range is added up into arrays of its own on the fork-join pool,
+ * the way LedgerLoader parses a file. Counts and sums can be added up in any order, so the partial arrays
+ * are then simply added together.
+ */
+public final class LedgerAnalytics {
+    //Ranges smaller than this aren't worth a task of their own
+    private static final int MIN_TASK_ROWS = 64 * 1024;
+    private static final int TASKS_PER_WORKER = 4;
+    //Row ids looked up at a time for a range of positions, see TransactionStore.rowsAt
+    private static final int ROW_BLOCK = 4096;
+    //Days by vendor over decades would need more slots than that, the report asks for a shorter range then
+    private static final int MAX_GROUPS = 1 << 22;
+
+    /**
+     * Which transactions a report adds up
+     */
+    public enum Include {
+        ALL, DEPOSITS, PAYMENTS
+    }
+
+    private GroupKey groupBy = GroupKey.VENDOR;
+    private GroupKey thenBy;
+    private LocalDate start;
+    private LocalDate end;
+    private Include include = Include.ALL;
+    private long rowsRead;
+
+    public void setGroupBy(GroupKey groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * @param thenBy the key that splits every group again, null for none
+     */
+    public void setThenBy(GroupKey thenBy) {
+        this.thenBy = thenBy;
+    }
+
+    /**
+     * @param start the first day, null for no limit
+     */
+    public void setStart(LocalDate start) {
+        this.start = start;
+    }
+
+    /**
+     * @param end the last day, null for no limit
+     */
+    public void setEnd(LocalDate end) {
+        this.end = end;
+    }
+
+    public void setInclude(Include include) {
+        this.include = include;
+    }
+
+    /**
+     * @return the rows the last run read, every row of its dates
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Adds up the transactions of the running ledger, or hands back the groups of the same report if it
+     * ran before and nothing dated between its start and end was added since, see ReportCache
+     * @param ledger the running ledger
+     * @return the groups, like run on a snapshot, which must not be changed
+     * @throws IllegalArgumentException if the two keys make more groups than a report can hold
+     */
+    public List<Group> run(ConcurrentLedger ledger) {
+        rowsRead = 0;
+        String report = "analytics " + groupBy + " " + thenBy + " " + include;
+        return ledger.reports().get(report, start, end,
+                () -> Collections.unmodifiableList(run(ledger.snapshot())), List::size);
+    }
+
+    /**
+     * Adds up the transactions of the store in their groups
+     * @param store the ledger to report on, a snapshot or a store that no other thread changes meanwhile
+     * @return every group that has transactions. Periods go oldest first, vendors and descriptions
+     *         go largest total first (payments count by their size). The second key splits each group
+     *         in the same order right after it.
+     * @throws IllegalArgumentException if the two keys make more groups than a report can hold
+     */
+    public List<Group> run(TransactionStore store) {
+        int firstPosition = (end != null) ? store.firstPositionOnOrBefore(end) : 0;
+        int lastPosition = (start != null) ? store.firstPositionBefore(start) : store.size();
+        rowsRead = Math.max(0, lastPosition - firstPosition);
+        if (firstPosition >= lastPosition) {
+            return new ArrayList<>();
+        }
+
+        //Periods are counted from the oldest day in the report to the newest, not from the days asked for
+        int firstDay = store.epochDay(store.rowAt(lastPosition - 1));
+        int lastDay = store.epochDay(store.rowAt(firstPosition));
+        Dimension outer = dimension(store, groupBy, firstDay, lastDay);
+        Dimension inner = dimension(store, thenBy, firstDay, lastDay);
+        long groups = (long) outer.size() * inner.size();
+        if (groups > MAX_GROUPS) {
+            throw new IllegalArgumentException("Too many groups (" + groups + "), try fewer days");
+        }
+
+        long low = (include == Include.DEPOSITS) ? 1 : Long.MIN_VALUE;
+        long high = (include == Include.PAYMENTS) ? -1 : Long.MAX_VALUE;
+        //The whole ledger is read by row id, in the order the columns are laid out, instead of by position
+        boolean byRow = firstPosition == 0 && lastPosition == store.size();
+        int rows = lastPosition - firstPosition;
+        //Every task has arrays for every group, with many groups fewer tasks are cheaper to add up
+        long tasks = Math.min((long) ForkJoinPool.getCommonPoolParallelism() * TASKS_PER_WORKER, rows / MIN_TASK_ROWS);
+        tasks = Math.max(1, Math.min(tasks, rows / groups));
+
+        Totals totals;
+        if (tasks == 1) {
+            totals = addUp(store, outer, inner, firstPosition, lastPosition, byRow, low, high);
+        } else {
+            List<ForkJoinTask<Totals>> parts = new ArrayList<>();
+            for (int task = 0; task < tasks; task++) {
+                int from = firstPosition + (int) (rows * task / tasks);
+                int to = firstPosition + (int) (rows * (task + 1) / tasks);
+                parts.add(ForkJoinTask.adapt(() -> addUp(store, outer, inner, from, to, byRow, low, high)));
+            }
+            ForkJoinTask.invokeAll(parts);
+            totals = parts.get(0).join();
+            for (int part = 1; part < parts.size(); part++) {
+                totals.add(parts.get(part).join());
+            }
+        }
+        return groups(totals, outer, inner);
+    }
+
+    //The counts and sums of the rows (or positions) [from, to)
+    private static Totals addUp(TransactionStore store, Dimension outer, Dimension inner, int from, int to,
+                                boolean byRow, long low, long high) {
+        Totals totals = new Totals(outer.size() * inner.size());
+        int innerSize = inner.size();
+        //Positions are turned into row ids a block at a time instead of one binary search each
+        int[] block = byRow ? null : new int[Math.min(ROW_BLOCK, to - from)];
+        for (int blockStart = from; blockStart < to; blockStart += ROW_BLOCK) {
+            int count = Math.min(ROW_BLOCK, to - blockStart);
+            if (!byRow) {
+                store.rowsAt(blockStart, count, block);
+            }
+            for (int i = 0; i < count; i++) {
+                int row = byRow ? blockStart + i : block[i];
+                long cents = store.amountCents(row);
+                if (cents < low || cents > high) {
+                    continue;
+                }
+                int group = outer.groupOf(store, row) * innerSize + inner.groupOf(store, row);
+                totals.counts[group]++;
+                totals.cents[group] += cents;
+            }
+        }
+        return totals;
+    }
+
+    private static List<Group> groups(Totals totals, Dimension outer, Dimension inner) {
+        int innerSize = inner.size();
+        long[] outerCents = new long[outer.size()];
+        for (int group = 0; group < totals.counts.length; group++) {
+            outerCents[group / innerSize] += totals.cents[group];
+        }
+
+        List<Group> groups = new ArrayList<>();
+        for (int o : outer.order(outerCents)) {
+            long[] innerCents = new long[innerSize];
+            System.arraycopy(totals.cents, o * innerSize, innerCents, 0, innerSize);
+            for (int i : inner.order(innerCents)) {
+                int group = o * innerSize + i;
+                if (totals.counts[group] == 0) {
+                    continue;
+                }
+                //Change against the period before, of the same vendor or description when there is one
+                int previous = -1;
+                if (inner.isPeriod()) {
+                    previous = (i > 0) ? group - 1 : -1;
+                } else if (outer.isPeriod()) {
+                    previous = (o > 0) ? group - innerSize : -1;
+                }
+                groups.add(new Group(outer.label(o), inner.label(i), totals.counts[group], totals.cents[group],
+                        previous >= 0, (previous >= 0) ? totals.cents[previous] : 0));
+            }
+        }
+        return groups;
+    }
+
+    private static Dimension dimension(TransactionStore store, GroupKey key, int firstDay, int lastDay) {
+        if (key == null) {
+            return new Dimension(null, new int[0], 0, List.of(""));
+        }
+        return switch (key) {
+            case VENDOR -> textDimension(key, store.vendorDictionary());
+            case DESCRIPTION -> textDimension(key, store.descriptionDictionary());
+            case DAY, WEEK, MONTH -> periodDimension(key, firstDay, lastDay);
+        };
+    }
+
+    //The case-folded strings of the dictionary, labelled with the way each was first written
+    private static Dimension textDimension(GroupKey key, StringDictionary dictionary) {
+        int[] groups = new int[dictionary.size()];
+        HashMap<String, Integer> groupByText = new HashMap<>();
+        List<String> labels = new ArrayList<>();
+        for (int id = 0; id < dictionary.size(); id++) {
+            String value = dictionary.decode(id);
+            Integer group = groupByText.get(TextIndex.key(value));
+            if (group == null) {
+                group = labels.size();
+                groupByText.put(TextIndex.key(value), group);
+                labels.add(value);
+            }
+            groups[id] = group;
+        }
+        return new Dimension(key, groups, 0, labels);
+    }
+
+    //Weeks start on Monday and are labelled with it
+    private static Dimension periodDimension(GroupKey key, int firstDay, int lastDay) {
+        int[] groups = new int[lastDay - firstDay + 1];
+        List<String> labels = new ArrayList<>();
+        LocalDate periodStart = null;
+        for (int day = firstDay; day <= lastDay; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            LocalDate dayStart = switch (key) {
+                case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> date.withDayOfMonth(1);
+                default -> date;
+            };
+            if (!dayStart.equals(periodStart)) {
+                periodStart = dayStart;
+                labels.add(switch (key) {
+                    case WEEK -> "week of " + dayStart;
+                    case MONTH -> YearMonth.from(dayStart).toString();
+                    default -> dayStart.toString();
+                });
+            }
+            groups[day - firstDay] = labels.size() - 1;
+        }
+        return new Dimension(key, groups, firstDay, labels);
+    }
+
+    /**
+     * One of the two keys of a report: how many groups it has, which group a row is in and what they're called
+     */
+    private static final class Dimension {
+        private final GroupKey key;
+        //The group of every dictionary id, or of every day counted from firstDay
+        private final int[] groups;
+        private final int firstDay;
+        private final List<String> labels;
+
+        Dimension(GroupKey key, int[] groups, int firstDay, List<String> labels) {
+            this.key = key;
+            this.groups = groups;
+            this.firstDay = firstDay;
+            this.labels = labels;
+        }
+
+        int size() {
+            return labels.size();
+        }
+
+        boolean isPeriod() {
+            return key != null && key.isPeriod();
+        }
+
+        String label(int group) {
+            return (key == null) ? null : labels.get(group);
+        }
+
+        int groupOf(TransactionStore store, int row) {
+            if (key == null) {
+                return 0;
+            }
+            return switch (key) {
+                case VENDOR -> groups[store.vendorId(row)];
+                case DESCRIPTION -> groups[store.descriptionId(row)];
+                case DAY, WEEK, MONTH -> groups[store.epochDay(row) - firstDay];
+            };
+        }
+
+        //Periods in time order, other groups by the size of their total, largest first
+        List<Integer> order(long[] cents) {
+            List<Integer> order = new ArrayList<>(size());
+            for (int group = 0; group < size(); group++) {
+                order.add(group);
+            }
+            if (!isPeriod()) {
+                order.sort(Comparator.<Integer>comparingLong(group -> -Math.abs(cents[group]))
+                        .thenComparing(labels::get));
+            }
+            return order;
+        }
+    }
+
+    /**
+     * The counts and sums of every group of some rows, group is outer group * inner groups + inner group
+     */
+    private static final class Totals {
+        private final long[] counts;
+        private final long[] cents;
+
+        Totals(int groups) {
+            counts = new long[groups];
+            cents = new long[groups];
+        }
+
+        void add(Totals other) {
+            for (int group = 0; group < counts.length; group++) {
+                counts[group] += other.counts[group];
+                cents[group] += other.cents[group];
+            }
+        }
+    }
+
+    /**
+     * One line of a report
+     */
+    public static final class Group {
+        private final String key;
+        private final String thenKey;
+        private final long count;
+        private final long totalCents;
+        private final boolean hasPrevious;
+        private final long previousCents;
+
+        Group(String key, String thenKey, long count, long totalCents, boolean hasPrevious, long previousCents) {
+            this.key = key;
+            this.thenKey = thenKey;
+            this.count = count;
+            this.totalCents = totalCents;
+            this.hasPrevious = hasPrevious;
+            this.previousCents = previousCents;
+        }
+
+        /**
+         * @return the vendor, description or period, such as Pepsi, 2025-10-14, week of 2025-10-13 or 2025-10
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the group of the second key, null when the report has only one
+         */
+        public String getThenKey() {
+            return thenKey;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Money getTotal() {
+            return Money.ofCents(totalCents);
+        }
+
+        /**
+         * @return the total divided by the count, to the nearest cent, halves rounded up
+         */
+        public Money getAverage() {
+            return Money.ofCents(Math.floorDiv(totalCents + count / 2, count));
+        }
+
+        /**
+         * @return how much the total grew from the period before, in percent of that period's total, so
+         *         more spent on a vendor is a positive change as well. null for the first period of the
+         *         report, when the report has no periods, or when the total went from a profit to a loss
+         *         or the other way round
+         */
+        public Double getChangePercent() {
+            if (!hasPrevious || previousCents == 0 || (previousCents < 0) != (totalCents < 0)) {
+                return null;
+            }
+            return (totalCents - previousCents) * 100.0 / previousCents;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.pluralsight;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Closed months of the transactions file, moved out of it into compressed read-only segments.
+ * <p>
+ * transactions.csv only ever grows. Compaction takes the months that are over, writes each of them to
+ * transactions.csv.archive/2025-09.csv.gz in date order, and rewrites transactions.csv without their lines.
+ * A segment is the gzip of its lines followed by a small footer with the first and last date, the number of rows,
+ * the deposit and payment totals and the sizes, so the segments can be listed and checked without unpacking them. The lines compress to about a fifth of their size.
+ * <p>
+ * A segment is written once and never changed, a late transaction of an archived month stays in
+ * transactions.csv. On startup the LedgerSnapshot holds the archived rows too, the segments are only
+ * read when the ledger has to be loaded in full.
+ * <p>
+ * Compaction happens in two steps. prepare writes the new segments under temporary names from a snapshot
+ * of the store, which takes the time, and commit copies transactions.csv as it is then without those rows.
+ * The rewritten file is first saved as transactions.csv.compacted, once that file is there the compaction
+ * is decided: the segments get their real names and the file is moved over transactions.csv. recover finishes
+ * a compaction that a crash stopped after that point and throws away one that it stopped before.
+ */
+public final class LedgerArchive {
+    private static final int MAGIC = 0x52414C50;
+    private static final int VERSION = 1;
+    //int magic, int version, int first epoch day, int last epoch day, int rows,
+    //long compressed bytes, long line bytes, long deposit cents, long payment cents
+    private static final int FOOTER_SIZE = 52;
+    private static final String EXTENSION = ".csv.gz";
+    private static final String PARTIAL = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LedgerArchive() {
+    }
+
+    /**
+     * @param file the transactions file
+     * @return the folder of its archive segments, transactions.csv.archive for transactions.csv
+     */
+    public static Path pathFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".archive");
+    }
+
+    //The rewritten transactions file, its existence marks a compaction as decided
+    private static Path compactedPathFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".compacted");
+    }
+
+    /**
+     * Finishes or throws away a compaction a crash stopped in the middle. Called on startup before the file is loaded.
+     * @param file the transactions file
+     * @return true if a compaction was finished
+     */
+    public static boolean recover(Path file) throws IOException {
+        Path folder = pathFor(file);
+        Path compacted = compactedPathFor(file);
+        boolean decided = Files.exists(compacted);
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> partials = Files.newDirectoryStream(folder, "*" + EXTENSION + PARTIAL)) {
+                for (Path partial : partials) {
+                    if (decided) {
+                        String name = partial.getFileName().toString();
+                        Files.move(partial, partial.resolveSibling(name.substring(0, name.length() - PARTIAL.length())),
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.delete(partial);
+                    }
+                }
+            }
+        }
+        Files.deleteIfExists(compacted.resolveSibling(compacted.getFileName() + PARTIAL));
+        if (decided) {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return decided;
+    }
+
+    /**
+     * Reads the footers of the segments without unpacking them
+     * @param file the transactions file
+     * @return the segments, oldest month first, none if nothing was archived yet
+     * @throws IOException if a segment can't be read or is damaged
+     */
+    public static List<Segment> segments(Path file) throws IOException {
+        Path folder = pathFor(file);
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path path : paths) {
+                segments.add(readFooter(path));
+            }
+        }
+        segments.sort((a, b) -> a.month.compareTo(b.month));
+        return segments;
+    }
+
+    /**
+     * Appends the rows of every segment to the list, oldest month first.
+     * The segments are unpacked and parsed on every core, one fork-join task each.
+     * @param file the transactions file
+     * @param into the list receiving the transactions
+     * @throws IOException if a segment can't be read or is damaged
+     */
+    public static void load(Path file, List<Transaction> into) throws IOException {
+        List<Segment> segments = segments(file);
+        List<List<Transaction>> rows = new ArrayList<>();
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+        for (Segment segment : segments) {
+            List<Transaction> segmentRows = new ArrayList<>(segment.rows);
+            rows.add(segmentRows);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    segment.read(segmentRows);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }, null));
+        }
+        try {
+            ForkJoinTask.invokeAll(tasks);
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        for (List<Transaction> segmentRows : rows) {
+            into.addAll(segmentRows);
+        }
+    }
+
+    /**
+     * First step of a compaction: writes a segment under a temporary name for every month before closedBefore
+     * that has rows and no segment yet. Reads only the store, so it can run next to writers on a snapshot.
+     * @param file the transactions file
+     * @param store a snapshot of the ledger holding exactly the transactions of the file and the archive
+     * @param closedBefore the first month that stays in the transactions file
+     * @return the compaction to commit, null if there is no month to archive
+     */
+    public static Compaction prepare(Path file, TransactionStore store, YearMonth closedBefore) throws IOException {
+        List<Segment> existing = segments(file);
+        if (store.isEmpty()) {
+            return null;
+        }
+
+        Compaction compaction = new Compaction(file);
+        Path folder = pathFor(file);
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(store.epochDay(store.rowAt(store.size() - 1))));
+        try {
+            for (; month.isBefore(closedBefore); month = month.plusMonths(1)) {
+                if (isArchived(existing, month)) {
+                    continue;
+                }
+                //Newest first, so the oldest row of the month is at the last position
+                int first = store.firstPositionOnOrBefore(month.atEndOfMonth());
+                int last = store.firstPositionBefore(month.atDay(1));
+                if (first == last) {
+                    continue;
+                }
+                Files.createDirectories(folder);
+                Path partial = folder.resolve(month + EXTENSION + PARTIAL);
+                compaction.add(writeSegment(partial, month, store, first, last), partial);
+            }
+        } catch (IOException | RuntimeException exception) {
+            compaction.abandon();
+            throw exception;
+        }
+        return compaction.segments.isEmpty() ? null : compaction;
+    }
+
+    private static boolean isArchived(List<Segment> segments, YearMonth month) {
+        for (Segment segment : segments) {
+            if (segment.month.equals(month)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Writes the rows at positions [first, last) oldest first, then the footer
+    private static Segment writeSegment(Path path, YearMonth month, TransactionStore store, int first, int last) throws IOException {
+        long depositCents = 0;
+        long paymentCents = 0;
+        long lineBytes = 0;
+        long compressedBytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            //Not closed, closing the gzip stream would close the channel before the footer is written
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            LineWriter lines = new LineWriter(gzip);
+            for (int position = last - 1; position >= first; position--) {
+                int row = store.rowAt(position);
+                lineBytes += lines.write(store, row);
+                long cents = store.amountCents(row);
+                if (cents > 0) {
+                    depositCents += cents;
+                } else {
+                    paymentCents += cents;
+                }
+            }
+            lines.flush();
+            gzip.finish();
+            compressedBytes = channel.position();
+
+            Segment segment = new Segment(path, month, store.epochDay(store.rowAt(last - 1)), store.epochDay(store.rowAt(first)),
+                    last - first, compressedBytes, lineBytes, depositCents, paymentCents);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            footer.putInt(MAGIC).putInt(VERSION).putInt(segment.firstDay).putInt(segment.lastDay).putInt(segment.rows)
+                    .putLong(compressedBytes).putLong(lineBytes).putLong(depositCents).putLong(paymentCents).flip();
+            while (footer.hasRemaining()) {
+                channel.write(footer);
+            }
+            channel.force(true);
+            return segment;
+        }
+    }
+
+    private static Segment readFooter(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        YearMonth month;
+        try {
+            month = YearMonth.parse(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (DateTimeParseException exception) {
+            throw new IOException("Archive segment " + name + " isn't named after a month");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (size >= FOOTER_SIZE) {
+                while (footer.hasRemaining() && channel.read(footer, size - FOOTER_SIZE + footer.position()) >= 0) {
+                    //keep reading until the footer is in
+                }
+            }
+            footer.flip();
+            if (footer.remaining() < FOOTER_SIZE || footer.getInt() != MAGIC || footer.getInt() != VERSION) {
+                throw new IOException("Archive segment " + name + " is damaged");
+            }
+            Segment segment = new Segment(path, month, footer.getInt(), footer.getInt(), footer.getInt(),
+                    footer.getLong(), footer.getLong(), footer.getLong(), footer.getLong());
+            if (segment.rows < 0 || segment.compressedBytes + FOOTER_SIZE != size
+                    || segment.lineBytes < 0 || segment.lineBytes > Integer.MAX_VALUE) {
+                throw new IOException("Archive segment " + name + " is damaged");
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * A month of the archive, as described by its footer
+     */
+    public static final class Segment {
+        private final Path path;
+        private final YearMonth month;
+        private final int firstDay;
+        private final int lastDay;
+        private final int rows;
+        private final long compressedBytes;
+        private final long lineBytes;
+        private final long depositCents;
+        private final long paymentCents;
+
+        private Segment(Path path, YearMonth month, int firstDay, int lastDay, int rows, long compressedBytes,
+                        long lineBytes, long depositCents, long paymentCents) {
+            this.path = path;
+            this.month = month;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.rows = rows;
+            this.compressedBytes = compressedBytes;
+            this.lineBytes = lineBytes;
+            this.depositCents = depositCents;
+            this.paymentCents = paymentCents;
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        public LocalDate getFirstDate() {
+            return LocalDate.ofEpochDay(firstDay);
+        }
+
+        public LocalDate getLastDate() {
+            return LocalDate.ofEpochDay(lastDay);
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the size of the segment on disk
+         */
+        public long getCompressedBytes() {
+            return compressedBytes + FOOTER_SIZE;
+        }
+
+        /**
+         * @return the size its lines had in the transactions file
+         */
+        public long getLineBytes() {
+            return lineBytes;
+        }
+
+        public LedgerTotals.Totals getTotals() {
+            return new LedgerTotals.Totals(depositCents, paymentCents, rows);
+        }
+
+        //Unpacks and parses every line, a segment is only ever written whole so any problem means it is damaged
+        private void read(List<Transaction> into) throws IOException {
+            byte[] compressed;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) compressedBytes);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    //keep reading until the gzip stream is in
+                }
+                compressed = buffer.array();
+            }
+            byte[] lines;
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed), BUFFER_SIZE)) {
+                lines = gzip.readNBytes((int) lineBytes);
+            }
+
+            LedgerLoader.LineParser parser = new LedgerLoader.LineParser();
+            ByteBuffer buffer = ByteBuffer.wrap(lines);
+            int lineStart = 0;
+            int before = into.size();
+            try {
+                for (int i = 0; i < lines.length; i++) {
+                    if (lines[i] == '\n') {
+                        into.add(parser.parse(buffer, lineStart, i));
+                        lineStart = i + 1;
+                    }
+                }
+            } catch (RuntimeException exception) {
+                throw new IOException("Archive segment " + month + " is damaged: " + exception.getMessage());
+            }
+            if (lines.length != lineBytes || lineStart != lines.length || into.size() - before != rows) {
+                throw new IOException("Archive segment " + month + " is damaged");
+            }
+        }
+    }
+
+    /**
+     * A compaction whose segments are written but not in place yet
+     */
+    public static final class Compaction {
+        private final Path file;
+        private final List<Segment> segments = new ArrayList<>();
+        private final List<Path> partials = new ArrayList<>();
+
+        private Compaction(Path file) {
+            this.file = file;
+        }
+
+        private void add(Segment segment, Path partial) {
+            segments.add(segment);
+            partials.add(partial);
+        }
+
+        public List<Segment> getSegments() {
+            return segments;
+        }
+
+        /**
+         * Second step: copies the transactions file line for line without the lines that went into the new
+         * segments, and puts the segments and the new file in place. The rows of a month that are in a segment
+         * are the first lines of that month in the file, since the rows of the snapshot were appended before
+         * anything added after it, so every later line of the month stays, and so do the late lines of months
+         * archived before and the lines that couldn't be read. Lines still pending in the AppendLog are synced
+         * first, and nothing may be appended until this returns. The LedgerSnapshot of the file is deleted,
+         * it no longer matches the new file.
+         * @param log the append log of the file, it goes on appending to the new file
+         * @throws IOException if the file doesn't hold every row of the new segments. Nothing is changed then.
+         */
+        public void commit(AppendLog log) throws IOException {
+            try {
+                log.sync();
+                Path compacted = compactedPathFor(file);
+                Path partial = compacted.resolveSibling(compacted.getFileName() + PARTIAL);
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                             StandardOpenOption.TRUNCATE_EXISTING)) {
+                    LineFilter lines = new LineFilter(segments, Channels.newOutputStream(out));
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    while (in.read(buffer.clear()) > 0) {
+                        lines.copy(buffer.array(), buffer.position());
+                    }
+                    lines.finish();
+                    for (int i = 0; i < segments.size(); i++) {
+                        if (lines.missing[i] > 0) {
+                            throw new IOException(file.getFileName() + " is missing " + lines.missing[i] + " of the "
+                                    + segments.get(i).rows + " transactions of " + segments.get(i).month
+                                    + ", it changed since the archive was written");
+                        }
+                    }
+                    out.force(true);
+                }
+
+                Files.deleteIfExists(LedgerSnapshot.pathFor(file));
+                Files.move(partial, compacted, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException exception) {
+                abandon();
+                throw exception;
+            }
+
+            //Decided, from here on recover finishes the job after a crash
+            for (Path partial : partials) {
+                String name = partial.getFileName().toString();
+                Files.move(partial, partial.resolveSibling(name.substring(0, name.length() - PARTIAL.length())),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            log.replaceFile(compactedPathFor(file));
+        }
+
+        /**
+         * Deletes the segments written by prepare, for a compaction that won't be committed
+         */
+        public void abandon() {
+            for (Path partial : partials) {
+                try {
+                    Files.deleteIfExists(partial);
+                } catch (IOException exception) {
+                    //Left for recover on the next start
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the lines of the transactions file, leaving out as many lines of each new segment's month as it
+     * holds rows. Lines end the way LedgerLoader ends them, at \n, \r or \r\n, and are copied with their line break.
+     */
+    private static final class LineFilter {
+        private final List<Segment> segments;
+        private final OutputStream out;
+        private final LedgerLoader.LineParser parser = new LedgerLoader.LineParser();
+        //Rows of each segment not found in the file yet
+        private final int[] missing;
+        private byte[] line = new byte[256];
+        private int length;
+        //Where the text of the line ends, -1 until its line break is seen
+        private int textEnd = -1;
+
+        private LineFilter(List<Segment> segments, OutputStream out) {
+            this.segments = segments;
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            missing = new int[segments.size()];
+            for (int i = 0; i < missing.length; i++) {
+                missing[i] = segments.get(i).rows;
+            }
+        }
+
+        private void copy(byte[] bytes, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                //A \r ends the line, a \n right after it still belongs to it
+                if (textEnd >= 0 && b != '\n') {
+                    endLine();
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+                if (b == '\r' && textEnd < 0) {
+                    textEnd = length - 1;
+                } else if (b == '\n') {
+                    if (textEnd < 0) {
+                        textEnd = length - 1;
+                    }
+                    endLine();
+                }
+            }
+        }
+
+        private void finish() throws IOException {
+            if (length > 0) {
+                if (textEnd < 0) {
+                    textEnd = length;
+                }
+                endLine();
+            }
+            out.flush();
+        }
+
+        private void endLine() throws IOException {
+            if (!isArchived()) {
+                out.write(line, 0, length);
+            }
+            length = 0;
+            textEnd = -1;
+        }
+
+        private boolean isArchived() {
+            YearMonth month;
+            try {
+                month = YearMonth.from(parser.parse(ByteBuffer.wrap(line), 0, textEnd).getDate());
+            } catch (RuntimeException exception) {
+                //Never loaded, so in no segment
+                return false;
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).month.equals(month) && missing[i] > 0) {
+                    missing[i]--;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes rows of a store as date|time|description|vendor|amount lines, the same lines the AppendLog writes
+     */
+    private static final class LineWriter {
+        private final OutputStream out;
+        private final StringBuilder line = new StringBuilder(128);
+        private int lastDay = Integer.MIN_VALUE;
+        private String lastDate;
+
+        private LineWriter(OutputStream out) {
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+
+        //Returns the number of bytes written
+        private int write(TransactionStore store, int row) throws IOException {
+            int day = store.epochDay(row);
+            if (day != lastDay) {
+                lastDay = day;
+                lastDate = LocalDate.ofEpochDay(day).toString();
+            }
+            int seconds = store.secondOfDay(row);
+            line.setLength(0);
+            line.append(lastDate).append('|');
+            twoDigits(seconds / 3600).append(':');
+            twoDigits(seconds / 60 % 60).append(':');
+            twoDigits(seconds % 60).append('|')
+                    .append(store.description(row)).append('|')
+                    .append(store.vendor(row)).append('|');
+            Money.appendTo(line, store.amountCents(row)).append('\n');
+
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            return bytes.length;
+        }
+
+        private StringBuilder twoDigits(int value) {
+            return line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
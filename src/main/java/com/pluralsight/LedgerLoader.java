@@ -0,0 +1,519 @@
+package com.pluralsight;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Reads the transactions file straight from a memory-mapped buffer instead of going through
+//BufferedReader, String.split and DateTimeFormatter for every line
+public final class LedgerLoader {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_WORKER = 4;
+    //Up to 16 digits of cents can't overflow a long
+    private static final int MAX_FAST_DIGITS = 16;
+    //Other amounts can be at most this many digits in front of the point, a line of 1e999999 is not a number of cents
+    private static final int MAX_WHOLE_DIGITS = 17;
+
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private LedgerLoader() {
+    }
+
+    /**
+     * Appends every transaction of the file to the given list in file order.
+     * A malformed line doesn't stop the load, it is skipped and reported back with its line number.
+     * @param file the transactions file to read, each line is date|time|description|vendor|amount
+     * @param into the list receiving the transactions
+     * @return the lines that couldn't be parsed, in file order
+     * @throws IOException if the file can't be read
+     */
+    public static List<MalformedLine> load(Path file, List<Transaction> into) throws IOException {
+        return load(file, 0, into);
+    }
+
+    /**
+     * Same as load, starting at a byte offset instead of the start of the file.
+     * Used to replay only the lines appended after a LedgerSnapshot was taken.
+     * @param file the transactions file to read
+     * @param fromByte the offset of the first line to read, right after a line break
+     * @param into the list receiving the transactions
+     * @return the lines that couldn't be parsed, numbered from the first line read
+     * @throws IOException if the file can't be read
+     */
+    public static List<MalformedLine> load(Path file, long fromByte, List<Transaction> into) throws IOException {
+        return load(file, fromByte, Long.MAX_VALUE, into);
+    }
+
+    /**
+     * Same as load, reading only up to a byte offset.
+     * Used when another program may be appending to the file while it loads, the lines after toByte are left to a LedgerTail.
+     * @param file the transactions file to read
+     * @param fromByte the offset of the first line to read, right after a line break
+     * @param toByte the offset to stop at, right after a line break, or past the end to read the whole file
+     * @param into the list receiving the transactions
+     * @return the lines that couldn't be parsed, numbered from the first line read
+     * @throws IOException if the file can't be read
+     */
+    public static List<MalformedLine> load(Path file, long fromByte, long toByte, List<Transaction> into) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = Math.min(toByte, channel.size());
+            Chunk chunk = new Chunk(channel, Math.min(fromByte, end), end, true);
+            chunk.parse();
+            into.addAll(chunk.rows);
+            return chunk.problems;
+        }
+    }
+
+    /**
+     * Reads the complete lines a file that is still being written has between two offsets.
+     * A last line without its line break is not read, it is picked up by the next call once the rest of it is there.
+     * @param file the transactions file to read
+     * @param fromByte the offset of the first line to read, right after a line break
+     * @param toByte the offset to stop at
+     * @param into the list receiving the transactions
+     * @param problems the list receiving the lines that couldn't be parsed, numbered from the first line read
+     * @return the offset right after the last line read, fromByte if there was no complete line
+     * @throws IOException if the file can't be read
+     */
+    public static long loadAppended(Path file, long fromByte, long toByte, List<Transaction> into,
+                                    List<MalformedLine> problems) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = Math.min(toByte, channel.size());
+            if (fromByte >= end) {
+                return fromByte;
+            }
+            Chunk chunk = new Chunk(channel, fromByte, end, false);
+            chunk.parse();
+            into.addAll(chunk.rows);
+            problems.addAll(chunk.problems);
+            return chunk.parsedTo;
+        }
+    }
+
+    /**
+     * Same result as load, but the file is cut into byte ranges that end on a line break
+     * and every range is parsed on its own fork-join worker.
+     * The ranges are merged back in file order, so the list is the same as the sequential one.
+     * @param file the transactions file to read
+     * @param into the list receiving the transactions
+     * @return the lines that couldn't be parsed, in file order
+     * @throws IOException if the file can't be read
+     */
+    public static List<MalformedLine> loadParallel(Path file, List<Transaction> into) throws IOException {
+        return loadParallel(file, Long.MAX_VALUE, into);
+    }
+
+    /**
+     * Same as loadParallel, reading only up to a byte offset, see load
+     * @param file the transactions file to read
+     * @param toByte the offset to stop at, right after a line break, or past the end to read the whole file
+     * @param into the list receiving the transactions
+     * @return the lines that couldn't be parsed, in file order
+     * @throws IOException if the file can't be read
+     */
+    public static List<MalformedLine> loadParallel(Path file, long toByte, List<Transaction> into) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel, Math.min(toByte, channel.size()),
+                    ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_WORKER);
+
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                tasks.add(ForkJoinTask.adapt(chunk::parse, null));
+            }
+            try {
+                ForkJoinTask.invokeAll(tasks);
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+
+            int rowCount = 0;
+            for (Chunk chunk : chunks) {
+                rowCount += chunk.rows.size();
+            }
+            if (into instanceof ArrayList<Transaction> list) {
+                list.ensureCapacity(list.size() + rowCount);
+            }
+
+            //Line numbers inside a chunk start at 1, shift them by the lines of the chunks before it
+            List<MalformedLine> problems = new ArrayList<>();
+            long linesBefore = 0;
+            for (Chunk chunk : chunks) {
+                into.addAll(chunk.rows);
+                for (MalformedLine problem : chunk.problems) {
+                    problems.add(new MalformedLine(problem.getLineNumber() + linesBefore, problem.getLine(), problem.getReason()));
+                }
+                linesBefore += chunk.lines;
+            }
+            return problems;
+        }
+    }
+
+    /**
+     * Parses a single line without its line break.
+     * The description and vendor are new strings, a parser with a cache of them is only worth it for many lines.
+     * @param line the bytes of the line, date|time|description|vendor|amount
+     * @return the transaction of the line
+     * @throws RuntimeException if the line is malformed
+     */
+    public static Transaction parseLine(byte[] line) {
+        return new LineParser(false).parse(ByteBuffer.wrap(line), 0, line.length);
+    }
+
+    /**
+     * Cuts the file into about the requested number of ranges, each one ending right after a \n
+     */
+    private static List<Chunk> split(FileChannel channel, long fileSize, int wantedChunks) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(WINDOW_SIZE, fileSize / Math.max(1, wantedChunks) + 1));
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+
+        long start = 0;
+        while (start < fileSize) {
+            long end = Math.min(fileSize, start + chunkSize);
+            while (end < fileSize) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += Math.max(read, 0);
+            }
+            end = Math.min(end, fileSize);
+            chunks.add(new Chunk(channel, start, end, end == fileSize));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * A byte range of the file together with the transactions parsed out of it.
+     * The range is mapped in windows of WINDOW_SIZE bytes, a line that crosses the end
+     * of a window is picked up again at the start of the next one.
+     */
+    private static final class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean endOfFile;
+        private final ArrayList<Transaction> rows = new ArrayList<>();
+        private final List<MalformedLine> problems = new ArrayList<>();
+        private final LineParser parser = new LineParser();
+        private long lines;
+        //Where the lines read so far end, only short of end for a file that is still being written
+        private long parsedTo;
+
+        private Chunk(FileChannel channel, long start, long end, boolean endOfFile) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.endOfFile = endOfFile;
+        }
+
+        private void parse() {
+            try {
+                long windowStart = start;
+                while (windowStart < end) {
+                    long windowLength = Math.min(WINDOW_SIZE, end - windowStart);
+                    boolean lastWindow = windowStart + windowLength == end && endOfFile;
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+                    int consumed = parseLines(window, (int) windowLength, lastWindow);
+                    if (consumed == 0) {
+                        //Half a line at the end of a file that is still being written
+                        if (!endOfFile && windowStart + windowLength == end && windowLength < WINDOW_SIZE) {
+                            break;
+                        }
+                        throw new IOException("Line starting at byte " + windowStart + " is longer than " + WINDOW_SIZE + " bytes");
+                    }
+                    windowStart += consumed;
+                }
+                parsedTo = windowStart;
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        /**
+         * Parses every complete line of the window
+         * @return the number of bytes consumed, a trailing partial line is left for the next window
+         */
+        private int parseLines(MappedByteBuffer window, int length, boolean lastWindow) {
+            int lineStart = 0;
+            int position = 0;
+
+            while (position < length) {
+                byte b = window.get(position);
+                if (b == '\n' || b == '\r') {
+                    //The \n of a \r\n pair may sit in the next window, read the line again there
+                    if (b == '\r' && position + 1 == length && !lastWindow) {
+                        return lineStart;
+                    }
+                    parseLine(window, lineStart, position);
+                    //Same line endings as BufferedReader.readLine: \n, \r or \r\n
+                    if (b == '\r' && position + 1 < length && window.get(position + 1) == '\n') {
+                        position++;
+                    }
+                    lineStart = ++position;
+                } else {
+                    position++;
+                }
+            }
+
+            if (lineStart < length && lastWindow) {
+                parseLine(window, lineStart, length);
+                return length;
+            }
+            return lineStart;
+        }
+
+        private void parseLine(MappedByteBuffer window, int lineStart, int lineEnd) {
+            lines++;
+            try {
+                rows.add(parser.parse(window, lineStart, lineEnd));
+            } catch (RuntimeException exception) {
+                problems.add(new MalformedLine(lines, parser.text(window, lineStart, lineEnd), exception.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * A line of the file that couldn't be turned into a Transaction
+     */
+    public static final class MalformedLine {
+        private final long lineNumber;
+        private final String line;
+        private final String reason;
+
+        public MalformedLine(long lineNumber, String line, String reason) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + reason + " [" + line + "]";
+        }
+    }
+
+    /**
+     * Turns one line of bytes into a Transaction.
+     * Dates, times and amounts in their usual shape are decoded straight from the bytes.
+     * Other dates and times go through the same parsers the old loader used so both
+     * produce exactly the same Transaction or the same kind of error, amounts are read as exact decimals.
+     * <p>
+     * Descriptions and vendors repeat on most lines, a ledger has a few hundred of them. The parser keeps the
+     * strings it made recently, and a line with the same bytes gets the same String instance back instead of a
+     * copy of its own, so a load doesn't make two new strings per line that the store only throws away again.
+     */
+    static final class LineParser {
+        //Direct-mapped, a slot holds the last string whose bytes hashed there
+        private static final int TEXT_SLOTS = 4096;
+        private static final int MAX_CACHED_LENGTH = 64;
+
+        private final int[] pipes = new int[4];
+        private byte[] scratch = new byte[256];
+        //Null in a parser without the cache
+        private final String[] cachedText;
+        private final byte[][] cachedBytes;
+
+        LineParser() {
+            this(true);
+        }
+
+        /**
+         * @param shareText whether to keep the strings made recently, see above
+         */
+        LineParser(boolean shareText) {
+            cachedText = shareText ? new String[TEXT_SLOTS] : null;
+            cachedBytes = shareText ? new byte[TEXT_SLOTS][] : null;
+        }
+
+        Transaction parse(ByteBuffer buffer, int start, int end) {
+            int found = 0;
+            for (int i = start; i < end && found < 4; i++) {
+                if (buffer.get(i) == '|') {
+                    pipes[found++] = i;
+                }
+            }
+            if (found < 4) {
+                throw new IllegalArgumentException("Expected 5 fields separated by '|'");
+            }
+
+            //Extra fields after the amount are ignored, like section[5] and up were before
+            int amountEnd = end;
+            for (int i = pipes[3] + 1; i < end; i++) {
+                if (buffer.get(i) == '|') {
+                    amountEnd = i;
+                    break;
+                }
+            }
+
+            LocalDate date = parseDate(buffer, start, pipes[0]);
+            LocalTime time = parseTime(buffer, pipes[0] + 1, pipes[1]);
+            String description = sharedText(buffer, pipes[1] + 1, pipes[2]);
+            String vendor = sharedText(buffer, pipes[2] + 1, pipes[3]);
+            Money amount = Money.ofCents(parseCents(buffer, pipes[3] + 1, amountEnd));
+
+            return new Transaction(date, time, description, vendor, amount);
+        }
+
+        private LocalDate parseDate(ByteBuffer buffer, int start, int end) {
+            if (end - start == 10 && buffer.get(start + 4) == '-' && buffer.get(start + 7) == '-') {
+                int year = digits(buffer, start, start + 4);
+                int month = digits(buffer, start + 5, start + 7);
+                int day = digits(buffer, start + 8, start + 10);
+                //Days past the end of a month are clamped by the formatter, leave those to it
+                if (year > 0 && month >= 1 && month <= 12 && day >= 1
+                        && day <= Month.of(month).length(Year.isLeap(year))) {
+                    return LocalDate.of(year, month, day);
+                }
+            }
+            return LocalDate.parse(text(buffer, start, end), DATE_FMT);
+        }
+
+        private LocalTime parseTime(ByteBuffer buffer, int start, int end) {
+            if (end - start == 8 && buffer.get(start + 2) == ':' && buffer.get(start + 5) == ':') {
+                int hour = digits(buffer, start, start + 2);
+                int minute = digits(buffer, start + 3, start + 5);
+                int second = digits(buffer, start + 6, start + 8);
+                if (hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+                    return LocalTime.of(hour, minute, second);
+                }
+            }
+            return LocalTime.parse(text(buffer, start, end), TIME_FMT);
+        }
+
+        /**
+         * Decodes amounts such as -119.50 or 12.5 straight into cents.
+         * Anything else that Double.parseDouble used to take, like 1.5e2 or a third decimal, is read as
+         * an exact decimal and rounded half up to the cent.
+         */
+        private long parseCents(ByteBuffer buffer, int start, int end) {
+            int i = start;
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+
+            long cents = 0;
+            int digitCount = 0;
+            int fractionDigits = -1;
+
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    cents = cents * 10 + (b - '0');
+                    digitCount++;
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    digitCount = -1;
+                    break;
+                }
+            }
+
+            if (digitCount <= 0 || digitCount > MAX_FAST_DIGITS || fractionDigits > 2) {
+                return roundedCents(text(buffer, start, end));
+            }
+            for (int missing = Math.max(fractionDigits, 0); missing < 2; missing++) {
+                cents *= 10;
+            }
+            return negative ? -cents : cents;
+        }
+
+        private static long roundedCents(String text) {
+            BigDecimal amount = new BigDecimal(text.trim());
+            if (amount.precision() - amount.scale() > MAX_WHOLE_DIGITS) {
+                throw new NumberFormatException("Amount too large: " + text);
+            }
+            return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        }
+
+        //Returns -1 if any byte isn't a digit
+        private static int digits(ByteBuffer buffer, int start, int end) {
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        String text(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        //Same as text, the string of the last line with the same bytes if it is still cached
+        private String sharedText(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (length > MAX_CACHED_LENGTH || cachedText == null) {
+                return text(buffer, start, end);
+            }
+            buffer.get(start, scratch, 0, length);
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + scratch[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (TEXT_SLOTS - 1);
+
+            byte[] cached = cachedBytes[slot];
+            if (cached != null && Arrays.equals(cached, 0, cached.length, scratch, 0, length)) {
+                return cachedText[slot];
+            }
+            String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            cachedBytes[slot] = Arrays.copyOf(scratch, length);
+            cachedText[slot] = text;
+            return text;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.pluralsight;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters for the operations where the tracker spends its time: loading the file,
+ * putting new rows in date order, the reports and searches, and every append to the file.
+ * <p>
+ * An operation is timed with start and stop around it:
+ * <pre>
+ *     long started = LedgerMetrics.CUSTOM_SEARCH.start();
+ *     ...
+ *     LedgerMetrics.CUSTOM_SEARCH.stop(started);
+ * </pre>
+ * That costs two reads of the clock and a few uncontended increments, cheap enough to always leave on.
+ * -Dledger.metrics=false turns it off, start and stop then do nothing.
+ * <p>
+ * publish shows every operation over JMX and writes all of them to a text file every so often,
+ * so the figures of a tracker running in a shop can be read without attaching anything to it.
+ */
+public final class LedgerMetrics {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ledger.metrics", "true"));
+
+    private static final double[] PERCENTS = {50, 90, 99, 99.9};
+    private static final DateTimeFormatter DUMP_TIME_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final List<Operation> OPERATIONS = new ArrayList<>();
+
+    public static final Operation LOAD = new Operation("load");
+    public static final Operation STORE_INSERT = new Operation("store-insert");
+    public static final Operation STORE_SNAPSHOT = new Operation("store-snapshot");
+    public static final Operation LEDGER_VIEW = new Operation("ledger-view");
+    public static final Operation VENDOR_SEARCH = new Operation("vendor-search");
+    public static final Operation CUSTOM_SEARCH = new Operation("custom-search");
+    public static final Operation STORE_REPORT = new Operation("store-report");
+    public static final Operation ANALYTICS = new Operation("analytics");
+    public static final Operation APPEND = new Operation("append");
+    public static final Operation FSYNC = new Operation("fsync");
+    public static final Operation SNAPSHOT_SAVE = new Operation("snapshot-save");
+    public static final Operation TAIL = new Operation("tail");
+    public static final Operation COMPACTION = new Operation("compaction");
+    public static final Operation HTTP_REQUEST = new Operation("http-request");
+    private static final Map<ReportPeriod, Operation> REPORTS = new EnumMap<>(ReportPeriod.class);
+
+    static {
+        for (ReportPeriod period : ReportPeriod.values()) {
+            REPORTS.put(period, new Operation("report-" + period.getName()));
+        }
+    }
+
+    private static final LocalDateTime STARTED = LocalDateTime.now();
+    private static ScheduledExecutorService dumper;
+    private static Path dumpFile;
+
+    private LedgerMetrics() {
+    }
+
+    /**
+     * @return the operation of one of the period reports
+     */
+    public static Operation report(ReportPeriod period) {
+        return REPORTS.get(period);
+    }
+
+    /**
+     * Registers every operation with the platform MBean server and starts writing them to a file
+     * @param file the text file to write, replaced every time
+     * @param intervalSeconds how often the file is written
+     */
+    public static synchronized void publish(Path file, long intervalSeconds) {
+        if (!ENABLED || dumper != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : OPERATIONS) {
+            try {
+                ObjectName name = new ObjectName("com.pluralsight:type=LedgerMetrics,name=" + operation.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(operation, name);
+                }
+            } catch (JMException exception) {
+                //Metrics are never a reason to stop the tracker, the file still has them
+            }
+        }
+
+        dumpFile = file;
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleWithFixedDelay(LedgerMetrics::dumpQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic writes and writes the file one last time, so it has everything up to the exit
+     */
+    public static synchronized void close() {
+        if (dumper == null) {
+            return;
+        }
+        dumper.shutdownNow();
+        dumper = null;
+        dumpQuietly();
+    }
+
+    /**
+     * Writes the figures of every operation to the file, through a temporary file so a reader never sees half of it
+     */
+    public static void dump(Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(partial, format(), StandardCharsets.UTF_8);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return a table with a line for every operation that ran, times in milliseconds
+     */
+    public static String format() {
+        StringBuilder table = new StringBuilder(4096);
+        table.append(String.format("Pizza ledger metrics, %s (since %s)%n",
+                DUMP_TIME_FMT.format(LocalDateTime.now()), DUMP_TIME_FMT.format(STARTED)));
+        table.append(String.format("%-28s %10s %10s %10s %10s %10s %10s %10s %14s %14s %14s%n",
+                "operation", "count", "mean", "p50", "p90", "p99", "p99.9", "max",
+                "rows scanned", "rows returned", "bytes written"));
+        for (Operation operation : OPERATIONS) {
+            long count = operation.latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            long[] percentiles = operation.latency.percentiles(PERCENTS);
+            table.append(String.format("%-28s %10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %14d %14d %14d%n",
+                    operation.getName(), count, operation.getMeanMillis(),
+                    millis(percentiles[0]), millis(percentiles[1]), millis(percentiles[2]), millis(percentiles[3]),
+                    operation.getMaxMillis(), operation.rowsScanned.sum(), operation.rowsReturned.sum(),
+                    operation.bytesWritten.sum()));
+        }
+        return table.toString();
+    }
+
+    private static void dumpQuietly() {
+        Path file;
+        synchronized (LedgerMetrics.class) {
+            file = dumpFile;
+        }
+        try {
+            dump(file);
+        } catch (IOException exception) {
+            //Tried again on the next interval
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * One instrumented operation, safe to use from any number of threads
+     */
+    public static final class Operation implements LedgerOperationMXBean {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+
+        private Operation(String name) {
+            this.name = name;
+            OPERATIONS.add(this);
+        }
+
+        /**
+         * @return the time the operation started, to be handed to stop
+         */
+        public long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Records one run of the operation
+         * @param started what start returned
+         */
+        public void stop(long started) {
+            if (ENABLED) {
+                latency.record(System.nanoTime() - started);
+            }
+        }
+
+        /**
+         * Records one run of a search or report, with the rows its view read for the page it shows
+         * @param started what start returned
+         * @param view the view the operation made
+         */
+        public void stop(long started, PagedView view) {
+            if (ENABLED) {
+                latency.record(System.nanoTime() - started);
+                rowsScanned.add(view.rowsScanned());
+                rowsReturned.add(view.rowsReturned());
+            }
+        }
+
+        public void addRows(long scanned, long returned) {
+            if (ENABLED) {
+                rowsScanned.add(scanned);
+                rowsReturned.add(returned);
+            }
+        }
+
+        public void addBytes(long written) {
+            if (ENABLED) {
+                bytesWritten.add(written);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long count = latency.getCount();
+            return (count == 0) ? 0 : millis(latency.getTotal() / count);
+        }
+
+        @Override
+        public double getP50Millis() {
+            return millis(latency.percentiles(50)[0]);
+        }
+
+        @Override
+        public double getP90Millis() {
+            return millis(latency.percentiles(90)[0]);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return millis(latency.percentiles(99)[0]);
+        }
+
+        @Override
+        public double getP999Millis() {
+            return millis(latency.percentiles(99.9)[0]);
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return millis(latency.getMax());
+        }
+
+        @Override
+        public long getRowsScanned() {
+            return rowsScanned.sum();
+        }
+
+        @Override
+        public long getRowsReturned() {
+            return rowsReturned.sum();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        @Override
+        public void reset() {
+            latency.reset();
+            rowsScanned.reset();
+            rowsReturned.reset();
+            bytesWritten.reset();
+        }
+    }
+}
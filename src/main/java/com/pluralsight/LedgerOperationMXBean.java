@@ -0,0 +1,47 @@
+package com.pluralsight;
+
+/**
+ * What JMX tools such as JConsole or VisualVM show for each instrumented operation of the ledger,
+ * under com.pluralsight:type=LedgerMetrics. Every figure counts from the start of the process or the last reset.
+ */
+public interface LedgerOperationMXBean {
+
+    String getName();
+
+    /**
+     * @return how many times the operation ran
+     */
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    /**
+     * @return the rows the operation looked at, for searches and reports
+     */
+    long getRowsScanned();
+
+    /**
+     * @return the rows the operation handed back, together with getRowsScanned it shows how selective it is
+     */
+    long getRowsReturned();
+
+    /**
+     * @return the bytes the operation wrote to disk
+     */
+    long getBytesWritten();
+
+    /**
+     * Starts counting again from zero
+     */
+    void reset();
+}
@@ -0,0 +1,244 @@
+package com.pluralsight;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Prints ledger rows straight from the columns of a TransactionStore, in the same columns as
+ * Transaction.toString but without building a Transaction or going through String.format.
+ * <p>
+ * Rows are written as bytes into one large buffer that goes out to the stream only when it is full
+ * and on flush, instead of one println and one flush per row. The padded description and vendor
+ * cells are encoded once per dictionary id and reused for every row that has them.
+ * Rows are asked for one at a time, so a caller can print a page of a view and stop there.
+ * Call flush before printing anything else to the same stream.
+ */
+public class LedgerPrinter {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int DESCRIPTION_WIDTH = 30;
+    private static final int VENDOR_WIDTH = 20;
+    private static final int AMOUNT_WIDTH = 10;
+    private static final int TIME_WIDTH = 9;
+    private static final String RESET = "\u001B[0m";
+
+    private final OutputStream out;
+    private final TransactionStore store;
+    private final Charset charset;
+    private final byte[] newLine;
+    private final byte[] reset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length;
+
+    private byte[][] descriptionCells = new byte[16][];
+    private byte[][] vendorCells = new byte[16][];
+    private int lastEpochDay;
+    private byte[] lastDate;
+    private String lastColor;
+    private byte[] lastColorBytes;
+
+    /**
+     * @param out where the rows are written, usually System.out
+     * @param store the store the printed rows come from
+     */
+    public LedgerPrinter(OutputStream out, TransactionStore store) {
+        this.out = out;
+        this.store = store;
+        this.charset = Charset.defaultCharset();
+        this.newLine = System.lineSeparator().getBytes(charset);
+        this.reset = RESET.getBytes(charset);
+    }
+
+    /**
+     * @return the store the printed rows come from
+     */
+    public TransactionStore store() {
+        return store;
+    }
+
+    /**
+     * Prints one row as date, time, description, vendor and amount
+     * @param row the row id in the store
+     * @param color the color code to print the row in, or null to print it without one
+     */
+    public void row(int row, String color) {
+        if (color != null) {
+            append(colorBytes(color));
+        }
+
+        int epochDay = store.epochDay(row);
+        int secondOfDay = store.secondOfDay(row);
+        long cents = store.amountCents(row);
+
+        //%-10s: dates are 10 characters long for the years 0 to 9999
+        append(date(epochDay));
+        ensureRoom(16);
+        appendSpaces(2);
+        appendTime(secondOfDay);
+        appendSpaces(2);
+        append(cell(descriptionCells, store.descriptionId(row), true));
+        ensureRoom(2);
+        appendSpaces(2);
+        append(cell(vendorCells, store.vendorId(row), false));
+        ensureRoom(32);
+        appendSpaces(2);
+        appendAmount(cents);
+
+        if (color != null) {
+            append(reset);
+        }
+        append(newLine);
+    }
+
+    /**
+     * Prints a line of text after the rows printed so far
+     * @param line the text, without the line break
+     */
+    public void line(String line) {
+        text(line);
+        append(newLine);
+    }
+
+    /**
+     * Writes out everything printed so far
+     */
+    public void flush() {
+        try {
+            out.write(buffer, 0, length);
+            out.flush();
+            length = 0;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void text(String text) {
+        append(text.getBytes(charset));
+    }
+
+    //Same as String.format("%-30s") of the description or "%-20s" of the vendor, encoded once per string
+    private byte[] cell(byte[][] cells, int id, boolean description) {
+        if (id >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(id + 1, cells.length * 2));
+            if (description) {
+                descriptionCells = cells;
+            } else {
+                vendorCells = cells;
+            }
+        }
+        if (cells[id] == null) {
+            String value = description ? store.descriptionDictionary().decode(id) : store.vendorDictionary().decode(id);
+            int width = description ? DESCRIPTION_WIDTH : VENDOR_WIDTH;
+            StringBuilder padded = new StringBuilder(Math.max(width, value.length())).append(value);
+            while (padded.length() < width) {
+                padded.append(' ');
+            }
+            cells[id] = padded.toString().getBytes(charset);
+        }
+        return cells[id];
+    }
+
+    //A view prints its rows in one or two colors, the bytes of the last one are kept
+    private byte[] colorBytes(String color) {
+        if (!color.equals(lastColor)) {
+            lastColor = color;
+            lastColorBytes = color.getBytes(charset);
+        }
+        return lastColorBytes;
+    }
+
+    //Rows of a view come sorted by date, so the date bytes of the previous row can nearly always be reused
+    private byte[] date(int epochDay) {
+        if (lastDate == null || epochDay != lastEpochDay) {
+            lastEpochDay = epochDay;
+            lastDate = LocalDate.ofEpochDay(epochDay).toString().getBytes(charset);
+        }
+        return lastDate;
+    }
+
+    //HH:mm, or HH:mm:ss when the seconds aren't 0, like LocalTime.toString, padded to 9 like "%-9s"
+    private void appendTime(int secondOfDay) {
+        int seconds = secondOfDay % 60;
+        appendDigits(secondOfDay / 3600, 2);
+        buffer[length++] = ':';
+        appendDigits(secondOfDay / 60 % 60, 2);
+        if (seconds != 0) {
+            buffer[length++] = ':';
+            appendDigits(seconds, 2);
+            appendSpaces(TIME_WIDTH - 8);
+        } else {
+            appendSpaces(TIME_WIDTH - 5);
+        }
+    }
+
+    //Same as "%10.2f" of cents / 100.0
+    private void appendAmount(long cents) {
+        boolean negative = cents < 0;
+        long whole = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+
+        int digits = 1;
+        for (long rest = whole / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        appendSpaces(AMOUNT_WIDTH - (digits + 3 + (negative ? 1 : 0)));
+        if (negative) {
+            buffer[length++] = '-';
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + whole % 10);
+            whole /= 10;
+        }
+        length += digits;
+        buffer[length++] = '.';
+        appendDigits(fraction, 2);
+    }
+
+    private void appendDigits(int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += width;
+    }
+
+    private void appendSpaces(int count) {
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = ' ';
+        }
+    }
+
+    private void append(byte[] bytes) {
+        if (bytes.length > BUFFER_SIZE - length) {
+            flushBuffer();
+            if (bytes.length > BUFFER_SIZE) {
+                write(bytes, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensureRoom(int bytes) {
+        if (BUFFER_SIZE - length < bytes) {
+            flushBuffer();
+        }
+    }
+
+    //Hands the buffer to the stream without flushing the stream itself
+    private void flushBuffer() {
+        write(buffer, length);
+        length = 0;
+    }
+
+    private void write(byte[] bytes, int count) {
+        try {
+            out.write(bytes, 0, count);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.pluralsight;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
+
+/**
+ * Headless mode of the tracker: the menu's actions as HTTP/JSON endpoints on the JDK's built-in server.
+ * <p>
+ * POST /deposits and POST /payments take {"date":"2025-10-14","time":"15:47:23","description":"...",
+ * "vendor":"...","amount":32.99} and answer once the transaction is saved. The lists are read a page at
+ * a time with ?page=1&amp;limit=50:
+ * <ul>
+ *     <li>GET /ledger, /ledger?type=deposits or /ledger?type=payments</li>
+ *     <li>GET /vendors/{vendor}</li>
+ *     <li>GET /search?start=&amp;end=&amp;description=&amp;vendor=&amp;amount=&amp;min=&amp;max=, every criterion
+ *     optional, with top=10 or bottom=10 for the 10 matches with the largest or smallest amounts</li>
+ *     <li>GET /reports/month-to-date, previous-month, year-to-date or previous-year, with the totals</li>
+ * </ul>
+ * GET /analytics?by=vendor&amp;then=month&amp;type=payments&amp;start=&amp;end= answers with the count, total and
+ * average of every group in one list, see LedgerAnalytics. Only by is required.
+ * Inserts go through the ConcurrentLedger and every query reads a snapshot of it, so queries never wait for
+ * each other and never see half an insert. On Java 21 and later every request runs on its own virtual thread,
+ * on older JVMs a pool of platform threads handles them. The server only listens on the loopback address.
+ */
+public class LedgerServer {
+    private static final int BACKLOG = 1024;
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_RANKED = 10_000;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final ConcurrentLedger ledger;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private LedgerServer(ConcurrentLedger ledger, HttpServer server, ExecutorService executor) {
+        this.ledger = ledger;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts serving the ledger
+     * @param ledger the running ledger to read and add to
+     * @param port the port to listen on, 0 for any free port
+     * @return the running server, stop it before closing the ledger
+     */
+    public static LedgerServer start(ConcurrentLedger ledger, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        ExecutorService executor = requestExecutor();
+        LedgerServer ledgerServer = new LedgerServer(ledger, server, executor);
+
+        server.createContext("/deposits", exchange -> ledgerServer.handle(exchange, "POST", ledgerServer::addDeposit));
+        server.createContext("/payments", exchange -> ledgerServer.handle(exchange, "POST", ledgerServer::addPayment));
+        server.createContext("/ledger", exchange -> ledgerServer.handle(exchange, "GET", ledgerServer::ledger));
+        server.createContext("/vendors/", exchange -> ledgerServer.handle(exchange, "GET", ledgerServer::vendor));
+        server.createContext("/search", exchange -> ledgerServer.handle(exchange, "GET", ledgerServer::search));
+        server.createContext("/reports/", exchange -> ledgerServer.handle(exchange, "GET", ledgerServer::report));
+        server.createContext("/analytics", exchange -> ledgerServer.handle(exchange, "GET", ledgerServer::analytics));
+        server.createContext("/", exchange -> ledgerServer.handle(exchange, null, request -> {
+            throw new HttpError(404, "No such endpoint");
+        }));
+        server.setExecutor(executor);
+        server.start();
+        return ledgerServer;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops taking requests, the ones already running get a second to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    //Java 21 runs every request on its own virtual thread, older JVMs share a pool of platform threads
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            int threads = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "ledger-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Endpoints
+       ------------------------------------------------------------------ */
+    private Response addDeposit(HttpExchange exchange) throws IOException {
+        return add(exchange, false);
+    }
+
+    private Response addPayment(HttpExchange exchange) throws IOException {
+        return add(exchange, true);
+    }
+
+    //Same rules as the prompts: a positive amount, turned negative for a payment
+    private Response add(HttpExchange exchange, boolean payment) throws IOException {
+        Map<String, String> body;
+        try {
+            body = Json.parseObject(readBody(exchange));
+        } catch (IllegalArgumentException exception) {
+            throw new HttpError(400, "The body is not a JSON object: " + exception.getMessage());
+        }
+
+        LocalDate date = LocalDate.parse(required(body, "date"));
+        LocalTime time = LocalTime.parse(required(body, "time"));
+        String description = required(body, "description").trim();
+        String vendor = required(body, "vendor").trim();
+        Money amount = Money.parse(required(body, "amount"));
+        if (description.isEmpty() || vendor.isEmpty()) {
+            throw new HttpError(400, "description and vendor can't be empty");
+        }
+        if (!Transaction.isSavable(description) || !Transaction.isSavable(vendor)) {
+            throw new HttpError(400, "description and vendor can't contain | or control characters such as line breaks");
+        }
+        if (!amount.isPositive()) {
+            throw new HttpError(400, "amount must be a positive number");
+        }
+
+        Transaction transaction = new Transaction(date, time, description, vendor, payment ? amount.negate() : amount);
+        try {
+            ledger.submit(transaction).join();
+        } catch (CompletionException exception) {
+            throw new IOException("The transaction couldn't be saved", exception.getCause());
+        }
+
+        StringBuilder json = new StringBuilder(256).append("{\"recorded\":");
+        Json.string(json, payment ? "payment" : "deposit").append(",\"transaction\":");
+        appendTransaction(json, transaction);
+        return new Response(201, json.append('}'));
+    }
+
+    private Response ledger(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        long started = LedgerMetrics.LEDGER_VIEW.start();
+        TransactionStore snapshot = ledger.snapshot();
+        String type = query.getOrDefault("type", "all");
+        IntPredicate filter = switch (type) {
+            case "all" -> null;
+            case "deposits" -> row -> snapshot.amountCents(row) > 0;
+            case "payments" -> row -> snapshot.amountCents(row) < 0;
+            default -> throw new HttpError(400, "type must be all, deposits or payments");
+        };
+        int limit = limit(query);
+        PagedView view = PagedView.ofPositions(snapshot, 0, snapshot.size(), filter, limit);
+        Response response = page(view, query, limit, null);
+        LedgerMetrics.LEDGER_VIEW.stop(started, view);
+        return response;
+    }
+
+    private Response vendor(HttpExchange exchange) {
+        String vendor = exchange.getRequestURI().getPath().substring("/vendors/".length());
+        if (vendor.isEmpty()) {
+            throw new HttpError(404, "Add the vendor to the path, /vendors/{vendor}");
+        }
+        Map<String, String> query = query(exchange);
+        int limit = limit(query);
+        long started = LedgerMetrics.VENDOR_SEARCH.start();
+        TransactionStore snapshot = ledger.snapshot();
+        PagedView view = TransactionSearch.ofRows(snapshot, snapshot.rowsWithVendor(vendor), limit);
+        Response response = page(view, query, limit, null);
+        LedgerMetrics.VENDOR_SEARCH.stop(started, view);
+        return response;
+    }
+
+    private Response search(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        TransactionSearch search = new TransactionSearch();
+        search.setStart(query.containsKey("start") ? LocalDate.parse(query.get("start")) : null);
+        search.setEnd(query.containsKey("end") ? LocalDate.parse(query.get("end")) : null);
+        search.setDescription(query.get("description"));
+        search.setVendor(query.get("vendor"));
+        search.setAmount(query.containsKey("amount") ? Money.parse(query.get("amount")) : null);
+        search.setMinAmount(query.containsKey("min") ? Money.parse(query.get("min")) : null);
+        search.setMaxAmount(query.containsKey("max") ? Money.parse(query.get("max")) : null);
+        if (query.containsKey("top") && query.containsKey("bottom")) {
+            throw new HttpError(400, "Ask for top or bottom, not both");
+        }
+        int top = ranked(query, "top");
+        int bottom = ranked(query, "bottom");
+        int limit = limit(query);
+
+        long started = LedgerMetrics.CUSTOM_SEARCH.start();
+        TransactionStore snapshot = ledger.snapshot();
+        PagedView view;
+        if (top > 0) {
+            view = search.largest(snapshot, top, limit);
+        } else if (bottom > 0) {
+            view = search.smallest(snapshot, bottom, limit);
+        } else {
+            view = search.find(snapshot, limit);
+        }
+        Response response = page(view, query, limit, null);
+        LedgerMetrics.CUSTOM_SEARCH.stop(started, view);
+        return response;
+    }
+
+    private Response report(HttpExchange exchange) {
+        ReportPeriod period = ReportPeriod.parse(exchange.getRequestURI().getPath().substring("/reports/".length()));
+        if (period == null) {
+            throw new HttpError(404, "Reports are month-to-date, previous-month, year-to-date and previous-year");
+        }
+        Map<String, String> query = query(exchange);
+        LedgerMetrics.Operation operation = LedgerMetrics.report(period);
+        long started = operation.start();
+        TransactionStore snapshot = ledger.snapshot();
+        LocalDate today = LocalDate.now();
+        LocalDate start = period.start(today);
+        LocalDate end = period.end(today);
+        int limit = limit(query);
+        PagedView view = PagedView.ofPositions(snapshot, snapshot.firstPositionOnOrBefore(end),
+                snapshot.firstPositionBefore(start), null, limit);
+
+        LedgerTotals.Totals totals = snapshot.totals().between(start, end);
+        StringBuilder json = new StringBuilder(128).append("\"report\":");
+        Json.string(json, period.getName()).append(",\"start\":\"").append(start).append("\",\"end\":\"").append(end)
+                .append("\",\"totals\":{\"deposits\":");
+        Json.cents(json, totals.getDepositCents()).append(",\"payments\":");
+        Json.cents(json, totals.getPaymentCents()).append(",\"balance\":");
+        Json.cents(json, totals.getBalanceCents()).append(",\"count\":").append(totals.getCount()).append("},");
+        Response response = page(view, query, limit, json);
+        operation.stop(started, view);
+        return response;
+    }
+
+    private Response analytics(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        GroupKey groupBy = GroupKey.parse(query.getOrDefault("by", ""));
+        GroupKey thenBy = query.containsKey("then") ? GroupKey.parse(query.get("then")) : null;
+        if (groupBy == null || (query.containsKey("then") && (thenBy == null || thenBy == groupBy))) {
+            throw new HttpError(400, "by and then must be two of vendor, description, day, week and month");
+        }
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(groupBy);
+        analytics.setThenBy(thenBy);
+        analytics.setInclude(switch (query.getOrDefault("type", "all")) {
+            case "all" -> LedgerAnalytics.Include.ALL;
+            case "deposits" -> LedgerAnalytics.Include.DEPOSITS;
+            case "payments" -> LedgerAnalytics.Include.PAYMENTS;
+            default -> throw new HttpError(400, "type must be all, deposits or payments");
+        });
+        analytics.setStart(query.containsKey("start") ? LocalDate.parse(query.get("start")) : null);
+        analytics.setEnd(query.containsKey("end") ? LocalDate.parse(query.get("end")) : null);
+
+        long started = LedgerMetrics.ANALYTICS.start();
+        List<LedgerAnalytics.Group> groups = analytics.run(ledger);
+        StringBuilder json = new StringBuilder(64 + groups.size() * 96).append("{\"by\":");
+        Json.string(json, groupBy.getName());
+        if (thenBy != null) {
+            Json.string(json.append(",\"then\":"), thenBy.getName());
+        }
+        json.append(",\"groups\":[");
+        for (int i = 0; i < groups.size(); i++) {
+            LedgerAnalytics.Group group = groups.get(i);
+            json.append((i > 0) ? ",{\"key\":" : "{\"key\":");
+            Json.string(json, group.getKey());
+            if (group.getThenKey() != null) {
+                Json.string(json.append(",\"then\":"), group.getThenKey());
+            }
+            json.append(",\"count\":").append(group.getCount()).append(",\"total\":");
+            Json.cents(json, group.getTotal().getCents()).append(",\"average\":");
+            Json.cents(json, group.getAverage().getCents());
+            Double change = group.getChangePercent();
+            if (change != null) {
+                json.append(",\"change\":").append(String.format(Locale.ROOT, "%.2f", change));
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        LedgerMetrics.ANALYTICS.stop(started);
+        LedgerMetrics.ANALYTICS.addRows(analytics.getRowsRead(), groups.size());
+        return new Response(200, json);
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+    @FunctionalInterface
+    private interface Endpoint {
+        Response handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        long started = LedgerMetrics.HTTP_REQUEST.start();
+        Response response;
+        try {
+            if (method != null && !method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                throw new HttpError(405, "Use " + method);
+            }
+            response = endpoint.handle(exchange);
+        } catch (HttpError error) {
+            response = error(error.status, error.getMessage());
+        } catch (DateTimeParseException exception) {
+            response = error(400, "Dates are yyyy-MM-dd and times HH:mm:ss, got " + exception.getParsedString());
+        } catch (IllegalArgumentException exception) {
+            //NumberFormatException of an amount, page or limit
+            response = error(400, exception.getMessage());
+        } catch (IOException | RuntimeException exception) {
+            response = error(500, exception.getMessage());
+        }
+
+        byte[] bytes = response.body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        LedgerMetrics.HTTP_REQUEST.stop(started);
+    }
+
+    //Moves to the asked page and lists its transactions, with the extra fields in front
+    private static Response page(PagedView view, Map<String, String> query, int limit, StringBuilder fields) {
+        int page = Integer.parseInt(query.getOrDefault("page", "1"));
+        if (page < 1) {
+            throw new HttpError(400, "page starts at 1");
+        }
+        boolean found = true;
+        for (int i = 1; i < page && found; i++) {
+            found = view.next();
+        }
+
+        TransactionStore store = view.store();
+        StringBuilder json = new StringBuilder(128 + limit * 128).append('{');
+        if (fields != null) {
+            json.append(fields);
+        }
+        json.append("\"page\":").append(page).append(",\"limit\":").append(limit);
+        if (view.size() >= 0) {
+            json.append(",\"total\":").append(view.size());
+        }
+        json.append(",\"hasNext\":").append(found && view.hasNext()).append(",\"transactions\":[");
+        if (found) {
+            int[] rows = view.page();
+            for (int i = 0; i < rows.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendRow(json, store, rows[i]);
+            }
+        }
+        return new Response(200, json.append("]}"));
+    }
+
+    private static void appendRow(StringBuilder json, TransactionStore store, int row) {
+        json.append("{\"date\":\"").append(LocalDate.ofEpochDay(store.epochDay(row)))
+                .append("\",\"time\":\"");
+        appendTime(json, store.secondOfDay(row)).append("\",\"description\":");
+        Json.string(json, store.description(row)).append(",\"vendor\":");
+        Json.string(json, store.vendor(row)).append(",\"amount\":");
+        Json.cents(json, store.amountCents(row)).append('}');
+    }
+
+    private static void appendTransaction(StringBuilder json, Transaction transaction) {
+        json.append("{\"date\":\"").append(transaction.getDate()).append("\",\"time\":\"");
+        appendTime(json, transaction.getTime().toSecondOfDay()).append("\",\"description\":");
+        Json.string(json, transaction.getDescription()).append(",\"vendor\":");
+        Json.string(json, transaction.getVendor()).append(",\"amount\":");
+        Json.cents(json, transaction.getAmount().getCents()).append('}');
+    }
+
+    //HH:mm:ss, the same as in the transactions file
+    private static StringBuilder appendTime(StringBuilder json, int secondOfDay) {
+        int[] parts = {secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60};
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                json.append(':');
+            }
+            if (parts[i] < 10) {
+                json.append('0');
+            }
+            json.append(parts[i]);
+        }
+        return json;
+    }
+
+    private static int limit(Map<String, String> query) {
+        int limit = Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new HttpError(400, "limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    //0 when the parameter isn't given
+    private static int ranked(Map<String, String> query, String name) {
+        if (!query.containsKey(name)) {
+            return 0;
+        }
+        int count = Integer.parseInt(query.get(name));
+        if (count < 1 || count > MAX_RANKED) {
+            throw new HttpError(400, name + " must be between 1 and " + MAX_RANKED);
+        }
+        return count;
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null) {
+            throw new HttpError(400, name + " is missing");
+        }
+        return value;
+    }
+
+    //Blank parameters count as not given, like blank answers at the search prompts
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode((equals < 0) ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = (equals < 0) ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8).trim();
+            if (!value.isEmpty()) {
+                query.put(name, value);
+            }
+        }
+        return query;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new HttpError(413, "The body is larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Response error(int status, String message) {
+        StringBuilder json = new StringBuilder(64).append("{\"error\":");
+        Json.string(json, (message != null) ? message : "Something went wrong");
+        return new Response(status, json.append('}'));
+    }
+
+    private static final class Response {
+        private final int status;
+        private final StringBuilder body;
+
+        private Response(int status, StringBuilder body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    //Ends a request with a status and a message
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.pluralsight;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of a TransactionStore kept next to the transactions file, so a restart doesn't have
+ * to parse every line again.
+ * <p>
+ * The file is a header, the description and vendor dictionaries, and then the columns of the store
+ * one after the other: epoch days, seconds of the day, cents, description ids, vendor ids, the
+ * display order and the amount order. Every column is a block of fixed-width little-endian values that is copied out of a
+ * memory-mapped buffer in bulk. The header remembers how many bytes of the transactions file the
+ * snapshot covers and the CRC32 of all of them. Only the lines after it are parsed on startup. If any
+ * byte of the covered part was changed since, such as an amount fixed by hand, the checksum no longer
+ * matches and the file is loaded in full, unless the edit happens to give the same CRC32, about a chance
+ * in four billion. Reading the covered part for the checksum is a small part of the load, the snapshot
+ * still saves parsing it. The transactions file stays the real record, the snapshot can be deleted at any time.
+ * <p>
+ * Version 2 added the amount order, version 3 the checksum of the whole covered part instead of its first
+ * and last 64 KB. A snapshot of another version is ignored and replaced on the next save.
+ */
+public final class LedgerSnapshot {
+    private static final int MAGIC = 0x504E534C;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 44;
+    //int epoch day, int second of day, long cents, int description id, int vendor id, int order, int amount order
+    private static final int ROW_BYTES = 32;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private LedgerSnapshot() {
+    }
+
+    /**
+     * @param file the transactions file
+     * @return where the snapshot of that file is kept, transactions.csv.snapshot for transactions.csv
+     */
+    public static Path pathFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Writes a snapshot of the store. The store has to hold exactly the transactions of the file,
+     * so lines still pending in an AppendLog must be synced first.
+     * The snapshot is written to a temporary file and then moved over the old one,
+     * a crash in the middle leaves the old snapshot as it was.
+     * @param snapshot where to write the snapshot
+     * @param file the transactions file the store was loaded from
+     * @param store the store to save
+     */
+    public static void write(Path snapshot, Path file, TransactionStore store) throws IOException {
+        write(snapshot, file, store, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same as write, for a store that holds the file only up to an offset, because another program
+     * is appending lines to it that a LedgerTail hasn't read yet
+     * @param snapshot where to write the snapshot
+     * @param file the transactions file the store was loaded from
+     * @param store the store to save
+     * @param fileBytes the number of bytes at the start of the file the store holds
+     */
+    public static void write(Path snapshot, Path file, TransactionStore store, long fileBytes) throws IOException {
+        Path partial = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        int rows = store.size();
+        List<byte[]> descriptions = encode(store.descriptionDictionary());
+        List<byte[]> vendors = encode(store.vendorDictionary());
+        long columnsStart = HEADER_SIZE + stringBytes(descriptions) + stringBytes(vendors);
+
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long fileLength = Math.min(fileBytes, source.size());
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putLong(fileLength)
+                    .putLong(checksum(source, fileLength))
+                    .putInt(rows).putInt(descriptions.size()).putInt(vendors.size())
+                    .putLong(columnsStart);
+
+            for (List<byte[]> strings : List.of(descriptions, vendors)) {
+                for (byte[] string : strings) {
+                    ensureRoom(channel, buffer, Integer.BYTES);
+                    buffer.putInt(string.length);
+                    for (int offset = 0; offset < string.length; ) {
+                        ensureRoom(channel, buffer, 1);
+                        int length = Math.min(buffer.remaining(), string.length - offset);
+                        buffer.put(string, offset, length);
+                        offset += length;
+                    }
+                }
+            }
+
+            for (int row = 0; row < rows; row++) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.epochDay(row));
+            }
+            for (int row = 0; row < rows; row++) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.secondOfDay(row));
+            }
+            for (int row = 0; row < rows; row++) {
+                ensureRoom(channel, buffer, Long.BYTES);
+                buffer.putLong(store.amountCents(row));
+            }
+            for (int row = 0; row < rows; row++) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.descriptionId(row));
+            }
+            for (int row = 0; row < rows; row++) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.vendorId(row));
+            }
+            //Oldest first, the same way round as the store keeps it
+            for (int position = rows - 1; position >= 0; position--) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.rowAt(position));
+            }
+            for (int rank = 0; rank < rows; rank++) {
+                ensureRoom(channel, buffer, Integer.BYTES);
+                buffer.putInt(store.rowByAmount(rank));
+            }
+
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(partial, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the snapshot into an empty store
+     * @param snapshot the snapshot to read
+     * @param file the transactions file the snapshot was taken of
+     * @param into the empty store to fill
+     * @return the number of bytes at the start of the file that the snapshot covers, the lines after
+     *         that still have to be loaded. -1 if there is no snapshot or it doesn't match the file,
+     *         the store is left empty then
+     */
+    public static long load(Path snapshot, Path file, TransactionStore into) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ);
+             FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long snapshotSize = channel.size();
+            if (snapshotSize < HEADER_SIZE) {
+                return -1;
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return -1;
+            }
+            long fileLength = header.getLong();
+            long fileChecksum = header.getLong();
+            int rows = header.getInt();
+            int descriptionCount = header.getInt();
+            int vendorCount = header.getInt();
+            long columnsStart = header.getLong();
+
+            if (rows < 0 || descriptionCount < 0 || vendorCount < 0
+                    || columnsStart < HEADER_SIZE || columnsStart - HEADER_SIZE > Integer.MAX_VALUE
+                    || snapshotSize != columnsStart + (long) rows * ROW_BYTES) {
+                return -1;
+            }
+            //Lines appended since the snapshot are fine, anything else means the file was changed
+            if (source.size() < fileLength || checksum(source, fileLength) != fileChecksum) {
+                return -1;
+            }
+
+            try {
+                ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, columnsStart - HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                List<String> descriptions = decode(strings, descriptionCount);
+                List<String> vendors = decode(strings, vendorCount);
+
+                long position = columnsStart;
+                int[] epochDays = readInts(channel, position, rows);
+                position += (long) rows * Integer.BYTES;
+                int[] secondsOfDay = readInts(channel, position, rows);
+                position += (long) rows * Integer.BYTES;
+                long[] amountCents = readLongs(channel, position, rows);
+                position += (long) rows * Long.BYTES;
+                int[] descriptionIds = readInts(channel, position, rows);
+                position += (long) rows * Integer.BYTES;
+                int[] vendorIds = readInts(channel, position, rows);
+                position += (long) rows * Integer.BYTES;
+                int[] order = readInts(channel, position, rows);
+                position += (long) rows * Integer.BYTES;
+                int[] amountOrder = readInts(channel, position, rows);
+
+                into.restore(descriptions, vendors, epochDays, secondsOfDay, amountCents, descriptionIds, vendorIds,
+                        order, amountOrder);
+            } catch (RuntimeException exception) {
+                //A damaged snapshot, the file gets loaded in full instead
+                return -1;
+            }
+            return fileLength;
+        }
+    }
+
+    private static List<byte[]> encode(StringDictionary dictionary) {
+        List<byte[]> strings = new ArrayList<>(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            strings.add(dictionary.decode(id).getBytes(StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static long stringBytes(List<byte[]> strings) {
+        long bytes = 0;
+        for (byte[] string : strings) {
+            bytes += Integer.BYTES + string.length;
+        }
+        return bytes;
+    }
+
+    private static List<String> decode(ByteBuffer buffer, int count) {
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] string = new byte[buffer.getInt()];
+            buffer.get(string);
+            strings.add(new String(string, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    //Bulk copies of a column, mapped a window at a time so no single mapping gets too big
+    private static int[] readInts(FileChannel channel, long position, int count) throws IOException {
+        int[] values = new int[count];
+        int done = 0;
+        while (done < count) {
+            int length = Math.min(count - done, WINDOW_SIZE / Integer.BYTES);
+            channel.map(FileChannel.MapMode.READ_ONLY, position + (long) done * Integer.BYTES, (long) length * Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, done, length);
+            done += length;
+        }
+        return values;
+    }
+
+    private static long[] readLongs(FileChannel channel, long position, int count) throws IOException {
+        long[] values = new long[count];
+        int done = 0;
+        while (done < count) {
+            int length = Math.min(count - done, WINDOW_SIZE / Long.BYTES);
+            channel.map(FileChannel.MapMode.READ_ONLY, position + (long) done * Long.BYTES, (long) length * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(values, done, length);
+            done += length;
+        }
+        return values;
+    }
+
+    //CRC32 of the first bytes of the file, mapped a window at a time
+    private static long checksum(FileChannel channel, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long start = 0; start < length; start += WINDOW_SIZE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, length - start)));
+        }
+        return crc.getValue();
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
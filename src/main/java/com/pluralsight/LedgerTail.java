@@ -0,0 +1,233 @@
+package com.pluralsight;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Follows the transactions file while another program, such as the register bridge, appends lines to it,
+ * so the running ledger picks them up without a restart.
+ * <p>
+ * A WatchService on the folder of the file wakes the tail up whenever the file changes. The tail remembers
+ * the offset it has read the file up to and only parses the bytes after it, skipping the batches this
+ * process wrote itself through its AppendLog, which are in the ledger already. A line that is still half
+ * written is left for the next change. The new transactions are added on the writer thread of the
+ * ConcurrentLedger between two batches, so they are merged into the sorted store like any other batch
+ * and the next snapshot shows them.
+ * <p>
+ * The offset is only changed on the writer thread too, so a LedgerSnapshot saved there can use it as the
+ * number of bytes of the file the store holds. On Linux and Windows changes are reported within milliseconds,
+ * other systems may poll the folder every few seconds.
+ */
+public final class LedgerTail implements Closeable {
+    private final Path file;
+    private final ConcurrentLedger ledger;
+    private final AppendLog log;
+    private final WatchService watcher;
+    private final Thread thread;
+    //Set while a catch-up is queued on the writer thread, changes that come in meanwhile don't queue another
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    //Only read and changed on the writer thread
+    private long offset;
+    private volatile long rowsAdded;
+    private volatile long linesSkipped;
+    private volatile String lastProblem;
+    private volatile boolean closed;
+
+    private LedgerTail(Path file, long offset, ConcurrentLedger ledger, AppendLog log, WatchService watcher) {
+        this.file = file;
+        this.offset = offset;
+        this.ledger = ledger;
+        this.log = log;
+        this.watcher = watcher;
+        this.thread = new Thread(this::watch, "ledger-tail");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts following the file and reads whatever was appended to it since it was loaded
+     * @param file the transactions file
+     * @param fromByte the number of bytes of the file that are in the ledger already
+     * @param ledger the running ledger
+     * @param log the append log of the same file, started before anything is written through it
+     * @return the running tail, close it before the ledger
+     */
+    public static LedgerTail start(Path file, long fromByte, ConcurrentLedger ledger, AppendLog log) throws IOException {
+        log.trackWrites();
+        Path absolute = file.toAbsolutePath();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        try {
+            absolute.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException exception) {
+            watcher.close();
+            throw exception;
+        }
+
+        LedgerTail tail = new LedgerTail(absolute, fromByte, ledger, log, watcher);
+        tail.thread.start();
+        tail.requestCatchUp();
+        return tail;
+    }
+
+    /**
+     * Reads the lines appended to the file since the last call and adds them to the ledger.
+     * Runs on the writer thread of the ledger, from a betweenBatches task.
+     * @return the number of bytes of the file that are in the ledger now
+     */
+    public long catchUp() throws IOException {
+        queued.set(false);
+        long started = LedgerMetrics.TAIL.start();
+        long size = log.fileSize();
+        if (size < offset) {
+            //Cut or replaced by another program, the ledger no longer matches the file
+            lastProblem = "The file got shorter, " + (offset - size) + " bytes already in the ledger are gone";
+            offset = size;
+            return offset;
+        }
+
+        List<Transaction> appended = new ArrayList<>();
+        List<LedgerLoader.MalformedLine> problems = new ArrayList<>();
+        long position = offset;
+        while (position < size) {
+            long[] ownWrite = log.ownWriteAt(position);
+            if (ownWrite != null && ownWrite[0] <= position) {
+                position = ownWrite[1];
+                continue;
+            }
+
+            long end = (ownWrite != null) ? Math.min(ownWrite[0], size) : size;
+            long readTo = LedgerLoader.loadAppended(file, position, end, appended, problems);
+            if (readTo < end && ownWrite == null) {
+                //Half a line, the rest of it is still on its way
+                position = readTo;
+                break;
+            }
+            if (readTo < end) {
+                //A line cut in two by one of our own batches, it will never be whole
+                problems.add(new LedgerLoader.MalformedLine(0, "", "Cut off by a transaction saved by this app"));
+            }
+            position = end;
+        }
+
+        ledger.addWritten(appended);
+        LedgerMetrics.TAIL.stop(started);
+        LedgerMetrics.TAIL.addRows(appended.size() + problems.size(), appended.size());
+        rowsAdded += appended.size();
+        if (!problems.isEmpty()) {
+            linesSkipped += problems.size();
+            LedgerLoader.MalformedLine problem = problems.get(problems.size() - 1);
+            lastProblem = problem.getReason() + (problem.getLine().isEmpty() ? "" : ": " + problem.getLine());
+        }
+        offset = position;
+        return offset;
+    }
+
+    /**
+     * How much of the file a LedgerSnapshot of the store may say it holds. Runs on the writer thread of the
+     * ledger, or before there is one.
+     * @param following the tail following the file, null if it isn't followed or the tail couldn't be started
+     * @param watching whether other programs may be appending to the file
+     * @param loadedBytes the number of bytes of the file that were loaded
+     * @param bytesWritten the number of bytes the AppendLog wrote since
+     * @return the number of bytes at the start of the file the store holds, -1 if that can't be told and the
+     *         last snapshot has to be kept. Long.MAX_VALUE when this app is the only one writing to the file.
+     */
+    public static long coveredBytes(LedgerTail following, boolean watching, long loadedBytes, long bytesWritten) throws IOException {
+        if (following != null) {
+            return following.catchUp();
+        }
+        if (!watching) {
+            return Long.MAX_VALUE;
+        }
+        //Without a tail the lines of the log can't be told apart from another program's, nor read after loadedBytes
+        return (bytesWritten == 0) ? loadedBytes : -1;
+    }
+
+    /**
+     * @return the number of transactions other programs appended that were added to the ledger
+     */
+    public long getRowsAdded() {
+        return rowsAdded;
+    }
+
+    /**
+     * @return the number of appended lines that couldn't be read
+     */
+    public long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    /**
+     * @return what went wrong with the last line that couldn't be read, null if nothing did
+     */
+    public String getLastProblem() {
+        return lastProblem;
+    }
+
+    /**
+     * Stops following the file. Lines appended after this are read on the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException exception) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                //Too many changes at once are reported as an overflow without the file name
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                requestCatchUp();
+            }
+            if (!key.reset()) {
+                lastProblem = "The folder of the file is gone, new lines are no longer picked up";
+                return;
+            }
+        }
+    }
+
+    //A failed catch-up is left for the next change, the offset only moves once the lines are in the ledger
+    private void requestCatchUp() {
+        if (!closed && queued.compareAndSet(false, true)) {
+            ledger.betweenBatches(store -> catchUp()).whenComplete((done, failure) -> {
+                if (failure != null) {
+                    queued.set(false);
+                    lastProblem = failure.getMessage();
+                }
+            });
+        }
+    }
+}
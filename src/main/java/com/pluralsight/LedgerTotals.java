@@ -0,0 +1,281 @@
+package com.pluralsight;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Running totals of the ledger, kept in exact cents and updated as every row is added.
+ * Deposits and payments are also added up per day, per month and per year so the
+ * balance and the total of a report never have to go back over the rows.
+ * <p>
+ * The days, months and years are kept in chunks of consecutive periods that a snapshot shares
+ * the way a RowList shares its chunks. Making the snapshot copies none of them, the totals copy
+ * a shared chunk the next time they change it, which is mostly the chunk of today.
+ */
+public class LedgerTotals {
+    private final Totals overall;
+    private final Periods days;
+    private final Periods months;
+    private final Periods years;
+
+    private int lastEpochDay;
+    private int lastMonth;
+    private int lastYear;
+    private boolean hasLast;
+
+    public LedgerTotals() {
+        overall = new Totals();
+        days = new Periods();
+        months = new Periods();
+        years = new Periods();
+    }
+
+    private LedgerTotals(LedgerTotals other) {
+        overall = new Totals(other.overall.depositCents, other.overall.paymentCents, other.overall.count);
+        days = other.days.share();
+        months = other.months.share();
+        years = other.years.share();
+    }
+
+    /**
+     * Makes a read-only copy of the totals as they are now, see Periods.share
+     * @return totals that stay as they are now
+     */
+    LedgerTotals snapshot() {
+        return new LedgerTotals(this);
+    }
+
+    /**
+     * Counts one more transaction
+     * @param date the date of the transaction
+     * @param cents the amount in cents, negative for payments
+     */
+    public void add(LocalDate date, long cents) {
+        add((int) date.toEpochDay(), cents);
+    }
+
+    /**
+     * Same as add(LocalDate, long) for a date given as an epoch day, the LocalDate is only
+     * built when the day differs from the previous one
+     */
+    void add(int epochDay, long cents) {
+        //Files are mostly grouped by day, so the month and year of the previous row are usually the right ones
+        if (!hasLast || epochDay != lastEpochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            lastEpochDay = epochDay;
+            lastMonth = monthKey(date);
+            lastYear = date.getYear();
+            hasLast = true;
+        }
+
+        days.add(epochDay, cents);
+        months.add(lastMonth, cents);
+        years.add(lastYear, cents);
+        overall.add(cents);
+    }
+
+    /**
+     * @return the totals of every transaction
+     */
+    public Totals overall() {
+        return overall;
+    }
+
+    /**
+     * @return the totals of one day, all zero if nothing happened that day
+     */
+    public Totals day(LocalDate date) {
+        return days.get((int) date.toEpochDay());
+    }
+
+    /**
+     * @return the totals of the month of the date
+     */
+    public Totals month(LocalDate date) {
+        return months.get(monthKey(date));
+    }
+
+    /**
+     * @return the totals of the year of the date
+     */
+    public Totals year(LocalDate date) {
+        return years.get(date.getYear());
+    }
+
+    /**
+     * Adds up the totals of [start, end].
+     * Whole years and whole months inside the range are taken from their own totals,
+     * so at most about 60 days plus a few months and years are looked up whatever the ledger size.
+     * @param start the first day of the range
+     * @param end the last day of the range
+     * @return the totals of the range
+     */
+    public Totals between(LocalDate start, LocalDate end) {
+        Totals range = new Totals();
+        LocalDate day = start;
+
+        while (!day.isAfter(end)) {
+            if (day.getDayOfYear() == 1 && !day.plusYears(1).minusDays(1).isAfter(end)) {
+                range.add(year(day));
+                day = day.plusYears(1);
+            } else if (day.getDayOfMonth() == 1 && !day.plusMonths(1).minusDays(1).isAfter(end)) {
+                range.add(month(day));
+                day = day.plusMonths(1);
+            } else {
+                range.add(day(day));
+                day = day.plusDays(1);
+            }
+        }
+        return range;
+    }
+
+    private static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * The deposits, payments and counts of consecutive days, months or years by their number, in chunks of
+     * 2^CHUNK_BITS periods. share makes a read-only copy that uses the same chunks, after which a chunk is
+     * copied before it is changed and the list of chunks is copied once before the first change.
+     */
+    private static final class Periods {
+        private static final int CHUNK_BITS = 6;
+
+        private final boolean readOnly;
+        //Deposits, payments and count of each period of a chunk one after the other, null for a chunk with nothing in it
+        private long[][] chunks = new long[0][];
+        //The generation each chunk was copied in, chunks of an older generation may be shared with a snapshot
+        private int[] generations = new int[0];
+        //The chunk number of chunks[0], the period number shifted right by CHUNK_BITS
+        private int firstChunk;
+        private int generation;
+        private boolean directoryShared;
+        //The chunk written last, until the next share, rows mostly come a day at a time
+        private long[] lastChunk;
+        private int lastNumber;
+
+        private Periods() {
+            readOnly = false;
+        }
+
+        private Periods(Periods source) {
+            readOnly = true;
+            chunks = source.chunks;
+            generations = source.generations;
+            firstChunk = source.firstChunk;
+        }
+
+        private Periods share() {
+            generation++;
+            lastChunk = null;
+            directoryShared = true;
+            return new Periods(this);
+        }
+
+        private Totals get(int period) {
+            int index = (period >> CHUNK_BITS) - firstChunk;
+            if (index < 0 || index >= chunks.length || chunks[index] == null) {
+                return Totals.EMPTY;
+            }
+            long[] chunk = chunks[index];
+            int slot = 3 * (period & ((1 << CHUNK_BITS) - 1));
+            return (chunk[slot + 2] == 0) ? Totals.EMPTY : new Totals(chunk[slot], chunk[slot + 1], chunk[slot + 2]);
+        }
+
+        private void add(int period, long cents) {
+            int number = period >> CHUNK_BITS;
+            long[] chunk = (lastChunk != null && number == lastNumber) ? lastChunk : writableChunk(number);
+            int slot = 3 * (period & ((1 << CHUNK_BITS) - 1));
+            if (cents > 0) {
+                chunk[slot] += cents;
+            } else {
+                chunk[slot + 1] += cents;
+            }
+            chunk[slot + 2]++;
+        }
+
+        private long[] writableChunk(int number) {
+            if (readOnly) {
+                throw new UnsupportedOperationException("A snapshot of the ledger can't be changed");
+            }
+            if (chunks.length == 0) {
+                firstChunk = number;
+            }
+            int first = Math.min(firstChunk, number);
+            int end = Math.max(firstChunk + chunks.length, number + 1);
+            if (directoryShared || first != firstChunk || end != firstChunk + chunks.length) {
+                //The list of chunks is copied over the range it needs now, the snapshot keeps the old one
+                long[][] newChunks = new long[end - first][];
+                int[] newGenerations = new int[end - first];
+                System.arraycopy(chunks, 0, newChunks, firstChunk - first, chunks.length);
+                System.arraycopy(generations, 0, newGenerations, firstChunk - first, chunks.length);
+                chunks = newChunks;
+                generations = newGenerations;
+                firstChunk = first;
+                directoryShared = false;
+            }
+
+            int index = number - firstChunk;
+            long[] chunk = chunks[index];
+            if (chunk == null || generations[index] != generation) {
+                chunk = (chunk == null) ? new long[3 << CHUNK_BITS] : Arrays.copyOf(chunk, chunk.length);
+                chunks[index] = chunk;
+                generations[index] = generation;
+            }
+            lastChunk = chunk;
+            lastNumber = number;
+            return chunk;
+        }
+    }
+
+    /**
+     * Deposits, payments and number of transactions of a period, all amounts in cents
+     */
+    public static class Totals {
+        private static final Totals EMPTY = new Totals();
+
+        private long depositCents;
+        private long paymentCents;
+        private long count;
+
+        public Totals() {
+        }
+
+        Totals(long depositCents, long paymentCents, long count) {
+            this.depositCents = depositCents;
+            this.paymentCents = paymentCents;
+            this.count = count;
+        }
+
+        private void add(long cents) {
+            if (cents > 0) {
+                depositCents += cents;
+            } else {
+                paymentCents += cents;
+            }
+            count++;
+        }
+
+        void add(Totals other) {
+            depositCents += other.depositCents;
+            paymentCents += other.paymentCents;
+            count += other.count;
+        }
+
+        public long getDepositCents() {
+            return depositCents;
+        }
+
+        //Payments are negative, like the amounts in the file
+        public long getPaymentCents() {
+            return paymentCents;
+        }
+
+        public long getBalanceCents() {
+            return depositCents + paymentCents;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
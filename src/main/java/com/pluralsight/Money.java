@@ -0,0 +1,138 @@
+package com.pluralsight;
+
+/**
+ * An amount of money as a whole number of cents, so adding up amounts and comparing them is exact.
+ * 0.10 + 0.20 is 0.30 here, and an amount typed at the search prompt matches the stored one
+ * however it was rounded on its way into the file.
+ * <p>
+ * Amounts are read from text digit by digit and never go through a double.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return (cents == 0) ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Reads an amount such as 32.99, -5, +.5 or 12.50
+     * @param text the amount in dollars, at most two decimals that aren't 0
+     * @return the amount
+     * @throws NumberFormatException if the text is not such an amount or doesn't fit in a long of cents
+     */
+    public static Money parse(String text) {
+        int i = 0;
+        int end = text.length();
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long cents = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+            digits++;
+            if (decimals >= 0 && ++decimals > 2) {
+                //12.500 is still 12.50, 12.505 isn't a number of cents
+                if (c != '0') {
+                    throw new NumberFormatException("Amounts have at most two decimals: " + text);
+                }
+                continue;
+            }
+            try {
+                cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+            } catch (ArithmeticException exception) {
+                throw new NumberFormatException("Amount too large: " + text);
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+
+        //The missing decimals of 12 or 12.5
+        for (int missing = Math.max(decimals, 0); missing < 2; missing++) {
+            try {
+                cents = Math.multiplyExact(cents, 10);
+            } catch (ArithmeticException exception) {
+                throw new NumberFormatException("Amount too large: " + text);
+            }
+        }
+        return ofCents(negative ? -cents : cents);
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    /**
+     * Appends cents with two decimals, 3299 as 32.99 and -5 as -0.05
+     */
+    public static StringBuilder appendTo(StringBuilder builder, long cents) {
+        if (cents < 0) {
+            builder.append('-');
+        }
+        //Math.abs of Long.MIN_VALUE stays negative, the remainder and quotient don't need it
+        long whole = Math.abs(cents / 100);
+        long fraction = Math.abs(cents % 100);
+        builder.append(whole).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money money && money.cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return the amount with two decimals, such as 32.99 or -5.00
+     */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+}
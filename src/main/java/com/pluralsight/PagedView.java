@@ -0,0 +1,222 @@
+package com.pluralsight;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A lazy, page-at-a-time cursor over rows of a TransactionStore in display order (newest first).
+ * <p>
+ * A view is either a range of display positions, such as the whole ledger or the days of a report,
+ * or a list of row ids that came out of an index. An optional filter drops rows while a page is read.
+ * The rows of a ranked view, such as the largest payments, keep their own order instead.
+ * Only the rows of the current page are ever looked at, so opening a view over millions of rows
+ * costs the same as opening a small one, and paging back reads the rows before the page again
+ * instead of remembering earlier pages.
+ */
+public class PagedView {
+    private final TransactionStore store;
+    private final int firstPosition;
+    private final int[] rows;
+    private final int size;
+    private final IntPredicate filter;
+    private final int pageSize;
+    private final boolean dated;
+
+    private int pageStart;
+    private int pageEnd;
+    private int[] page = new int[0];
+    private long rowsScanned;
+    private long rowsReturned;
+
+    private PagedView(TransactionStore store, int firstPosition, int[] rows, int size, IntPredicate filter, int pageSize,
+                      boolean dated) {
+        this.store = store;
+        this.firstPosition = firstPosition;
+        this.rows = rows;
+        this.size = size;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        this.dated = dated;
+        readForward(0);
+    }
+
+    /**
+     * A view of the display positions [from, to) of the store
+     * @param filter keeps only the row ids it accepts, null keeps every row
+     * @param pageSize the most rows on a page
+     */
+    public static PagedView ofPositions(TransactionStore store, int from, int to, IntPredicate filter, int pageSize) {
+        return new PagedView(store, from, null, Math.max(0, to - from), filter, pageSize, true);
+    }
+
+    /**
+     * A view of some row ids
+     * @param rows row ids in display order, see TransactionStore.inDisplayOrder
+     * @param filter keeps only the row ids it accepts, null keeps every row
+     * @param pageSize the most rows on a page
+     */
+    public static PagedView ofRows(TransactionStore store, int[] rows, IntPredicate filter, int pageSize) {
+        return new PagedView(store, 0, rows, rows.length, filter, pageSize, true);
+    }
+
+    /**
+     * A view of some row ids in an order of their own, see TransactionSearch.largest
+     * @param rows row ids in the order they are shown
+     * @param pageSize the most rows on a page
+     */
+    public static PagedView ofRanked(TransactionStore store, int[] rows, int pageSize) {
+        return new PagedView(store, 0, rows, rows.length, null, pageSize, false);
+    }
+
+    /**
+     * @return the store the row ids belong to
+     */
+    public TransactionStore store() {
+        return store;
+    }
+
+    /**
+     * @return the row ids of the current page, newest first
+     */
+    public int[] page() {
+        return page;
+    }
+
+    public boolean isEmpty() {
+        return page.length == 0 && !hasNext() && !hasPrevious();
+    }
+
+    /**
+     * @return the number of rows in the view, or -1 with a filter since that would mean reading all of them
+     */
+    public int size() {
+        return (filter == null) ? size : -1;
+    }
+
+    /**
+     * @return the index in the view of the first row of the page, counted from 0, or -1 with a filter
+     */
+    public int pageStart() {
+        return (filter == null) ? pageStart : -1;
+    }
+
+    /**
+     * @return the rows read so far to fill the pages, including the ones the filter dropped
+     */
+    public long rowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * @return the rows put on the pages read so far
+     */
+    public long rowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * @return false for a ranked view, its rows aren't in date order so it can't jump to a date
+     */
+    public boolean isDateOrdered() {
+        return dated;
+    }
+
+    public boolean hasPrevious() {
+        return pageStart > 0;
+    }
+
+    public boolean hasNext() {
+        return pageEnd < size;
+    }
+
+    /**
+     * Moves to the page after the current one
+     * @return false if there are no more rows, the current page stays then
+     */
+    public boolean next() {
+        if (!hasNext()) {
+            return false;
+        }
+        int previousStart = pageStart;
+        readForward(pageEnd);
+        if (page.length == 0) {
+            //Only filtered-out rows were left, stay on the last page with rows
+            readForward(previousStart);
+            pageEnd = size;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the page before the current one
+     * @return false if the current page is the first one
+     */
+    public boolean previous() {
+        if (!hasPrevious()) {
+            return false;
+        }
+
+        //Reads back from the start of the page until a page is full, then reads that page forward
+        int found = 0;
+        int index = pageStart - 1;
+        int start = pageStart;
+        for (; index >= 0 && found < pageSize; index--) {
+            if (accepts(rowAt(index))) {
+                found++;
+                start = index;
+            }
+        }
+        rowsScanned += pageStart - 1 - index;
+        readForward((found < pageSize) ? 0 : start);
+        return true;
+    }
+
+    /**
+     * Moves to the page starting with the newest row dated on or before the day
+     * @param date the day to jump to
+     * @throws UnsupportedOperationException for a ranked view
+     */
+    public void jumpTo(LocalDate date) {
+        if (!dated) {
+            throw new UnsupportedOperationException("A ranked view isn't in date order");
+        }
+        long day = date.toEpochDay();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (store.epochDay(rowAt(middle)) > day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        readForward(low);
+    }
+
+    private void readForward(int start) {
+        int[] found = new int[Math.min(pageSize, Math.max(0, size - start))];
+        int count = 0;
+        int index = start;
+        for (; index < size && count < pageSize; index++) {
+            int row = rowAt(index);
+            if (accepts(row)) {
+                found[count++] = row;
+            }
+        }
+        pageStart = start;
+        pageEnd = index;
+        rowsScanned += index - start;
+        rowsReturned += count;
+        page = (count == found.length) ? found : Arrays.copyOf(found, count);
+    }
+
+    private int rowAt(int index) {
+        return (rows != null) ? rows[index] : store.rowAt(firstPosition + index);
+    }
+
+    private boolean accepts(int row) {
+        return filter == null || filter.test(row);
+    }
+}
@@ -0,0 +1,390 @@
+package com.pluralsight;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Ledgers of many pizza stores, each one cut into one transactions file per month.
+ * <p>
+ * The files live in one folder per store, ledgers/downtown/2025-10.csv, in the same
+ * date|time|description|vendor|amount lines as transactions.csv. A manifest lists every
+ * partition with its size and its deposit and payment totals, so a report over whole months
+ * is answered from the manifest without opening any file, and only months cut by the start or
+ * the end of the report are read. A partition is loaded into its own TransactionStore the first
+ * time it is needed, and the least recently used ones are dropped from memory once more than
+ * maxLoaded are loaded. The current month is never dropped.
+ * <p>
+ * The manifest is only a summary: a partition whose file size doesn't match it, or that isn't
+ * in it, is counted again from its file when the ledger is opened.
+ */
+public class PartitionedLedger implements Closeable {
+    private static final String MANIFEST = "manifest.csv";
+    private static final String EXTENSION = ".csv";
+
+    private final Path directory;
+    private final int maxLoaded;
+    private final FsyncPolicy policy;
+    //Store name, then month, oldest first
+    private final TreeMap<String, TreeMap<YearMonth, Partition>> partitions = new TreeMap<>();
+    //Least recently used first
+    private final LinkedHashMap<Partition, TransactionStore> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Partition, AppendLog> logs = new HashMap<>();
+    private boolean manifestChanged;
+
+    private PartitionedLedger(Path directory, int maxLoaded, FsyncPolicy policy) {
+        this.directory = directory;
+        this.maxLoaded = maxLoaded;
+        this.policy = policy;
+    }
+
+    /**
+     * Opens the ledgers folder, creating it if needed
+     * @param directory the folder holding one folder per store and the manifest
+     * @param maxLoaded the most partitions kept in memory, not counting the current month
+     * @param policy when appended lines are forced to disk
+     */
+    public static PartitionedLedger open(Path directory, int maxLoaded, FsyncPolicy policy) throws IOException {
+        Files.createDirectories(directory);
+        PartitionedLedger ledger = new PartitionedLedger(directory, Math.max(1, maxLoaded), policy);
+        ledger.readManifest();
+        ledger.scanFiles();
+        return ledger;
+    }
+
+    /**
+     * @return the names of the stores, in alphabetical order
+     */
+    public List<String> stores() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    /**
+     * Adds one transaction to the partition of its store and month
+     * @param store the name of the pizza store
+     * @param transaction the transaction to add
+     */
+    public void add(String store, Transaction transaction) throws IOException {
+        addAll(store, List.of(transaction));
+    }
+
+    /**
+     * Adds transactions of one store, every month they touch gets one batch written through its AppendLog
+     * @param store the name of the pizza store
+     * @param transactions the transactions to add, in file order
+     */
+    public void addAll(String store, Collection<Transaction> transactions) throws IOException {
+        checkStoreName(store);
+        TreeMap<YearMonth, List<Transaction>> byMonth = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            byMonth.computeIfAbsent(YearMonth.from(transaction.getDate()), month -> new ArrayList<>()).add(transaction);
+        }
+
+        for (Map.Entry<YearMonth, List<Transaction>> entry : byMonth.entrySet()) {
+            Partition partition = partitions.computeIfAbsent(store, name -> new TreeMap<>())
+                    .computeIfAbsent(entry.getKey(), month -> new Partition(store, month));
+            List<Transaction> batch = entry.getValue();
+
+            AppendLog log = logs.get(partition);
+            if (log == null) {
+                Files.createDirectories(file(partition).getParent());
+                log = AppendLog.open(file(partition), policy);
+            }
+            try {
+                log.appendAll(batch);
+                //The size of the file goes in the manifest and load reads the file, neither can wait for the fsync
+                log.write();
+            } finally {
+                //Backdated months are rarely written twice in a row, only the current month keeps its file open
+                if (isHot(partition)) {
+                    logs.put(partition, log);
+                } else {
+                    logs.remove(partition);
+                    log.close();
+                }
+            }
+
+            TransactionStore rows = loaded.get(partition);
+            if (rows != null) {
+                rows.addAll(batch);
+            }
+            for (Transaction transaction : batch) {
+                partition.add(transaction.getAmount().getCents());
+            }
+            partition.bytes = Files.size(file(partition));
+            manifestChanged = true;
+        }
+    }
+
+    /**
+     * Totals of a store, or of every store, over [start, end].
+     * Months entirely inside the range come from the manifest, only the months at the edges are loaded.
+     * @param store the name of the pizza store, null for all of them
+     */
+    public LedgerTotals.Totals totals(String store, LocalDate start, LocalDate end) throws IOException {
+        LedgerTotals.Totals totals = new LedgerTotals.Totals();
+        for (Partition partition : partitionsBetween(store, start, end)) {
+            LocalDate first = partition.month.atDay(1);
+            LocalDate last = partition.month.atEndOfMonth();
+            if (!first.isBefore(start) && !last.isAfter(end)) {
+                totals.add(partition.totals());
+            } else {
+                totals.add(load(partition).totals().between(max(first, start), min(last, end)));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Visits the months of a store that overlap [start, end], newest first, loading each one on the way.
+     * A month can be dropped from memory again once the next one is loaded, so don't keep them.
+     * @param store the name of the pizza store
+     * @param visitor gets the rows of every month
+     */
+    public void forEachMonth(String store, LocalDate start, LocalDate end, Consumer<TransactionStore> visitor) throws IOException {
+        List<Partition> months = partitionsBetween(store, start, end);
+        for (int i = months.size() - 1; i >= 0; i--) {
+            visitor.accept(load(months.get(i)));
+        }
+    }
+
+    /**
+     * @return the number of partitions held in memory right now
+     */
+    public int loadedPartitions() {
+        return loaded.size();
+    }
+
+    /**
+     * Writes the manifest if anything was added since it was last written
+     */
+    public void writeManifest() throws IOException {
+        if (!manifestChanged) {
+            return;
+        }
+        Path partial = directory.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            for (TreeMap<YearMonth, Partition> months : partitions.values()) {
+                for (Partition partition : months.values()) {
+                    writer.write(partition.store + "|" + partition.month + "|" + partition.bytes + "|" + partition.count
+                            + "|" + partition.depositCents + "|" + partition.paymentCents);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(partial, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifestChanged = false;
+    }
+
+    /**
+     * Closes the open month files and writes the manifest
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (AppendLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException exception) {
+                failure = exception;
+            }
+        }
+        logs.clear();
+        writeManifest();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private List<Partition> partitionsBetween(String store, LocalDate start, LocalDate end) {
+        List<Partition> found = new ArrayList<>();
+        if (start.isAfter(end)) {
+            return found;
+        }
+        for (Map.Entry<String, TreeMap<YearMonth, Partition>> entry : partitions.entrySet()) {
+            if (store == null || entry.getKey().equals(store)) {
+                found.addAll(entry.getValue().subMap(YearMonth.from(start), true, YearMonth.from(end), true).values());
+            }
+        }
+        return found;
+    }
+
+    //The rows of a partition, read from its file the first time and then kept until it is the least recently used
+    private TransactionStore load(Partition partition) throws IOException {
+        TransactionStore rows = loaded.get(partition);
+        if (rows != null) {
+            return rows;
+        }
+
+        rows = new TransactionStore();
+        ArrayList<Transaction> transactions = new ArrayList<>();
+        if (Files.exists(file(partition))) {
+            AppendLog.recover(file(partition));
+            LedgerLoader.load(file(partition), transactions);
+        }
+        rows.addAll(transactions);
+        loaded.put(partition, rows);
+        evict();
+        return rows;
+    }
+
+    private void evict() {
+        int cold = 0;
+        for (Partition partition : loaded.keySet()) {
+            if (!isHot(partition)) {
+                cold++;
+            }
+        }
+        Iterator<Partition> eldest = loaded.keySet().iterator();
+        while (cold > maxLoaded && eldest.hasNext()) {
+            if (!isHot(eldest.next())) {
+                eldest.remove();
+                cold--;
+            }
+        }
+    }
+
+    private static boolean isHot(Partition partition) {
+        return partition.month.equals(YearMonth.now());
+    }
+
+    private Path file(Partition partition) {
+        return directory.resolve(partition.store).resolve(partition.month + EXTENSION);
+    }
+
+    private void readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] section = line.split("\\|");
+            if (section.length != 6) {
+                continue;
+            }
+            try {
+                Partition partition = new Partition(section[0], YearMonth.parse(section[1]));
+                partition.bytes = Long.parseLong(section[2]);
+                partition.count = Long.parseLong(section[3]);
+                partition.depositCents = Long.parseLong(section[4]);
+                partition.paymentCents = Long.parseLong(section[5]);
+                partitions.computeIfAbsent(partition.store, name -> new TreeMap<>()).put(partition.month, partition);
+            } catch (NumberFormatException | DateTimeParseException exception) {
+                //A broken manifest line, the file is counted again by scanFiles
+            }
+        }
+    }
+
+    //Adds the month files missing from the manifest and recounts the ones that changed size
+    private void scanFiles() throws IOException {
+        try (DirectoryStream<Path> storeFolders = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path storeFolder : storeFolders) {
+                String store = storeFolder.getFileName().toString();
+                try (DirectoryStream<Path> monthFiles = Files.newDirectoryStream(storeFolder, "*" + EXTENSION)) {
+                    for (Path monthFile : monthFiles) {
+                        String name = monthFile.getFileName().toString();
+                        YearMonth month;
+                        try {
+                            month = YearMonth.parse(name.substring(0, name.length() - EXTENSION.length()));
+                        } catch (DateTimeParseException exception) {
+                            continue;
+                        }
+
+                        Partition partition = partitions.computeIfAbsent(store, key -> new TreeMap<>())
+                                .computeIfAbsent(month, key -> new Partition(store, month));
+                        if (partition.bytes != Files.size(monthFile) || partition.count == 0) {
+                            recount(partition);
+                        }
+                    }
+                }
+            }
+        }
+
+        //Partitions whose file is gone
+        for (TreeMap<YearMonth, Partition> months : partitions.values()) {
+            if (months.values().removeIf(partition -> !Files.exists(file(partition)))) {
+                manifestChanged = true;
+            }
+        }
+        partitions.values().removeIf(TreeMap::isEmpty);
+    }
+
+    private void recount(Partition partition) throws IOException {
+        loaded.remove(partition);
+        LedgerTotals.Totals totals = load(partition).totals().overall();
+        partition.count = totals.getCount();
+        partition.depositCents = totals.getDepositCents();
+        partition.paymentCents = totals.getPaymentCents();
+        partition.bytes = Files.size(file(partition));
+        manifestChanged = true;
+    }
+
+    private static void checkStoreName(String store) {
+        if (store == null || !store.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Store names can only use letters, digits, - and _: " + store);
+        }
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    //One month of one store, with the totals kept in the manifest
+    private static final class Partition {
+        private final String store;
+        private final YearMonth month;
+        private long bytes;
+        private long count;
+        private long depositCents;
+        private long paymentCents;
+
+        private Partition(String store, YearMonth month) {
+            this.store = store;
+            this.month = month;
+        }
+
+        private void add(long cents) {
+            if (cents > 0) {
+                depositCents += cents;
+            } else {
+                paymentCents += cents;
+            }
+            count++;
+        }
+
+        private LedgerTotals.Totals totals() {
+            return new LedgerTotals.Totals(depositCents, paymentCents, count);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Partition partition && store.equals(partition.store) && month.equals(partition.month);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(store, month);
+        }
+    }
+}
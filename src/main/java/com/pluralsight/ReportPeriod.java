@@ -0,0 +1,60 @@
+package com.pluralsight;
+import java.time.LocalDate;
+
+/**
+ * The four period reports, with the names used on the command line and in the server's URLs
+ */
+public enum ReportPeriod {
+    MONTH_TO_DATE("month-to-date"),
+    PREVIOUS_MONTH("previous-month"),
+    YEAR_TO_DATE("year-to-date"),
+    PREVIOUS_YEAR("previous-year");
+
+    private final String name;
+
+    ReportPeriod(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name month-to-date, previous-month, year-to-date or previous-year
+     * @return the period with that name, null if there is none
+     */
+    public static ReportPeriod parse(String name) {
+        for (ReportPeriod period : values()) {
+            if (period.name.equals(name)) {
+                return period;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param today the day the report is run
+     * @return the first day of the report
+     */
+    public LocalDate start(LocalDate today) {
+        return switch (this) {
+            case MONTH_TO_DATE -> today.withDayOfMonth(1);
+            case PREVIOUS_MONTH -> today.minusMonths(1).withDayOfMonth(1);
+            case YEAR_TO_DATE -> today.withDayOfYear(1);
+            case PREVIOUS_YEAR -> today.minusYears(1).withDayOfYear(1);
+        };
+    }
+
+    /**
+     * @param today the day the report is run
+     * @return the last day of the report
+     */
+    public LocalDate end(LocalDate today) {
+        return switch (this) {
+            case MONTH_TO_DATE, YEAR_TO_DATE -> today;
+            case PREVIOUS_MONTH -> today.withDayOfMonth(1).minusDays(1);
+            case PREVIOUS_YEAR -> today.withDayOfYear(1).minusDays(1);
+        };
+    }
+}
@@ -0,0 +1,333 @@
+package com.pluralsight;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+
+/**
+ * Row ids kept in a sorted order, such as the display order of a TransactionStore or its AmountIndex,
+ * in chunks of a few thousand ids instead of one big array.
+ * <p>
+ * A new row only moves the ids after it in its own chunk, and a chunk that gets too full is split in two.
+ * share makes a read-only copy for a snapshot of the store that uses the same chunks, so it only copies
+ * the list of chunks. A chunk is never changed once it is shared: the next insert into it copies that
+ * chunk first, and the list of chunks is copied once before the first change after a share. So a snapshot
+ * costs nothing as long as the store doesn't change, and a batch then copies the chunks it puts rows in.
+ * Adding to the end of a chunk writes past what any snapshot reads, so that is done in place, which is
+ * where most new transactions go in the display order.
+ */
+final class RowList {
+    //Chunks are built this full and split at twice that
+    private static final int CHUNK_SIZE = 4096;
+    //Batches of at least 1/32 of the list are merged into new chunks instead of inserted one by one
+    private static final int MERGE_FRACTION = 32;
+
+    private final boolean readOnly;
+    private int[][] chunks;
+    //The number of ids in each chunk, and in it and every chunk before it
+    private int[] sizes;
+    private int[] ends;
+    //The generation each chunk was copied in, chunks of an older generation may be shared with a snapshot
+    private int[] generations;
+    private int chunkCount;
+    private int size;
+    private int generation;
+    private boolean directoryShared;
+    //The first chunk whose end is out of date, chunkCount when none is
+    private int staleFrom;
+
+    RowList() {
+        readOnly = false;
+        chunks = new int[4][];
+        sizes = new int[4];
+        ends = new int[4];
+        generations = new int[4];
+    }
+
+    //See share
+    private RowList(RowList source) {
+        readOnly = true;
+        chunks = source.chunks;
+        sizes = source.sizes;
+        ends = source.ends;
+        generations = source.generations;
+        chunkCount = source.chunkCount;
+        size = source.size;
+        staleFrom = chunkCount;
+    }
+
+    /**
+     * @param sortedRows the row ids in order, the list doesn't keep the array
+     * @return a list of the ids in full chunks
+     */
+    static RowList of(int[] sortedRows) {
+        RowList list = new RowList();
+        list.fill(sortedRows, sortedRows.length);
+        return list;
+    }
+
+    /**
+     * Makes a read-only copy of the list as it is now. It shares the chunks with this list,
+     * which copies a chunk before it changes it from now on.
+     * @return the copy
+     */
+    RowList share() {
+        refreshEnds();
+        generation++;
+        directoryShared = true;
+        return new RowList(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index a position in the list, 0 is the first id
+     * @return the id at that position
+     */
+    int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        }
+        refreshEnds();
+        int chunk = chunkOf(index);
+        return chunks[chunk][index - start(chunk)];
+    }
+
+    /**
+     * Copies a run of ids one chunk at a time, faster than get for every position
+     * @param from the first position to copy
+     * @param to the position after the last one
+     * @param into receives the ids, from index 0
+     */
+    void copy(int from, int to, int[] into) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of " + size);
+        }
+        refreshEnds();
+        int done = 0;
+        for (int chunk = (from < to) ? chunkOf(from) : chunkCount; done < to - from; chunk++) {
+            int offset = Math.max(0, from - start(chunk));
+            int length = Math.min(sizes[chunk] - offset, to - from - done);
+            System.arraycopy(chunks[chunk], offset, into, done, length);
+            done += length;
+        }
+    }
+
+    /**
+     * Binary searches the list for the end of the ids that go before something
+     * @param before true for the ids in front of what is looked for, then false for the rest
+     * @return the number of ids it is true for
+     */
+    int countWhile(IntPredicate before) {
+        refreshEnds();
+        int chunk = firstChunkNotBefore(before);
+        if (chunk == chunkCount) {
+            return size;
+        }
+        return start(chunk) + lowerBound(chunk, before);
+    }
+
+    /**
+     * Puts a row in its place
+     * @param before true for the ids that go before the row, then false for the rest
+     * @param row the row id
+     */
+    void insert(IntPredicate before, int row) {
+        checkWritable();
+        ownDirectory();
+        if (chunkCount == 0) {
+            addChunk(0, new int[CHUNK_SIZE], 0);
+        }
+        int chunk = Math.min(firstChunkNotBefore(before), chunkCount - 1);
+        insertAt(chunk, lowerBound(chunk, before), row);
+    }
+
+    /**
+     * Adds a batch of rows. A batch about as big as the list, such as the first load, is merged with it
+     * into new chunks, a smaller one is inserted a row at a time.
+     * @param sortedRows the new row ids, sorted the same way as the list
+     * @param compare the order of the list, negative when the first id goes first
+     */
+    void addAll(int[] sortedRows, IntBinaryOperator compare) {
+        checkWritable();
+        if ((long) sortedRows.length * MERGE_FRACTION < size) {
+            for (int row : sortedRows) {
+                insert(existing -> compare.applyAsInt(existing, row) < 0, row);
+            }
+            return;
+        }
+
+        //Merged from the front into one new array, which is then cut into chunks
+        int[] merged = new int[size + sortedRows.length];
+        int count = 0;
+        int fresh = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int[] rows = chunks[chunk];
+            for (int i = 0; i < sizes[chunk]; i++) {
+                while (fresh < sortedRows.length && compare.applyAsInt(sortedRows[fresh], rows[i]) < 0) {
+                    merged[count++] = sortedRows[fresh++];
+                }
+                merged[count++] = rows[i];
+            }
+        }
+        while (fresh < sortedRows.length) {
+            merged[count++] = sortedRows[fresh++];
+        }
+        fill(merged, count);
+    }
+
+    //Replaces every chunk with new ones cut from the sorted ids
+    private void fill(int[] sortedRows, int count) {
+        int newChunks = Math.max(1, (count + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        chunks = new int[newChunks][];
+        sizes = new int[newChunks];
+        ends = new int[newChunks];
+        generations = new int[newChunks];
+        directoryShared = false;
+        chunkCount = 0;
+        for (int from = 0; from < count; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, count - from);
+            addChunk(chunkCount, Arrays.copyOfRange(sortedRows, from, from + length), length);
+        }
+        size = count;
+        staleFrom = 0;
+        refreshEnds();
+    }
+
+    private void insertAt(int chunk, int index, int row) {
+        int[] rows = chunks[chunk];
+        int count = sizes[chunk];
+        if (index < count || count == rows.length) {
+            if (generations[chunk] != generation || count == rows.length) {
+                //Copied when shared, or when full, with room for the chunk's next few rows
+                int[] copy = new int[Math.min(Math.max(count + 1, count + (count >> 2)), 2 * CHUNK_SIZE + 1)];
+                System.arraycopy(rows, 0, copy, 0, count);
+                rows = copy;
+                chunks[chunk] = rows;
+                generations[chunk] = generation;
+            }
+            System.arraycopy(rows, index, rows, index + 1, count - index);
+        }
+        rows[index] = row;
+        sizes[chunk] = count + 1;
+        size++;
+        staleFrom = Math.min(staleFrom, chunk);
+        if (count + 1 > 2 * CHUNK_SIZE) {
+            split(chunk);
+        }
+    }
+
+    //Both halves go into new arrays, the old one may still be read by a snapshot up to its old size
+    private void split(int chunk) {
+        int[] rows = chunks[chunk];
+        int count = sizes[chunk];
+        int half = count / 2;
+        chunks[chunk] = Arrays.copyOf(rows, CHUNK_SIZE + (CHUNK_SIZE >> 2));
+        sizes[chunk] = half;
+        generations[chunk] = generation;
+        int[] right = new int[CHUNK_SIZE + (CHUNK_SIZE >> 2)];
+        System.arraycopy(rows, half, right, 0, count - half);
+        addChunk(chunk + 1, right, count - half);
+        staleFrom = Math.min(staleFrom, chunk);
+    }
+
+    private void addChunk(int at, int[] rows, int count) {
+        if (chunkCount == chunks.length) {
+            int capacity = chunks.length * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        System.arraycopy(chunks, at, chunks, at + 1, chunkCount - at);
+        System.arraycopy(sizes, at, sizes, at + 1, chunkCount - at);
+        System.arraycopy(ends, at, ends, at + 1, chunkCount - at);
+        System.arraycopy(generations, at, generations, at + 1, chunkCount - at);
+        chunks[at] = rows;
+        sizes[at] = count;
+        generations[at] = generation;
+        chunkCount++;
+        staleFrom = Math.min(staleFrom, at);
+    }
+
+    //The first change after a share copies the list of chunks, the snapshot keeps the old one
+    private void ownDirectory() {
+        if (directoryShared) {
+            int capacity = Math.max(4, chunkCount + (chunkCount >> 1));
+            chunks = Arrays.copyOf(chunks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            directoryShared = false;
+        }
+    }
+
+    //Only ever out of date in the list the store changes, never in a shared copy
+    private void refreshEnds() {
+        if (staleFrom >= chunkCount) {
+            return;
+        }
+        int end = (staleFrom > 0) ? ends[staleFrom - 1] : 0;
+        for (int chunk = staleFrom; chunk < chunkCount; chunk++) {
+            end += sizes[chunk];
+            ends[chunk] = end;
+        }
+        staleFrom = chunkCount;
+    }
+
+    private int start(int chunk) {
+        return (chunk > 0) ? ends[chunk - 1] : 0;
+    }
+
+    //The chunk holding the position, by binary search on the ends
+    private int chunkOf(int index) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    //The first chunk whose last id doesn't go before, chunkCount if every id does
+    private int firstChunkNotBefore(IntPredicate before) {
+        int low = 0;
+        int high = chunkCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sizes[middle] > 0 && before.test(chunks[middle][sizes[middle] - 1])) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(int chunk, IntPredicate before) {
+        int[] rows = chunks[chunk];
+        int low = 0;
+        int high = sizes[chunk];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (before.test(rows[middle])) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("A snapshot of the ledger can't be changed");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.pluralsight;
+
+//One vendor or description offered by the smart search, with how well it matched the search text
+public class SearchSuggestion implements Comparable<SearchSuggestion> {
+    /**
+     * How the search text was found in the value, best first
+     */
+    public enum Match { EXACT, PREFIX, WORD_PREFIX, SUBSTRING, FUZZY }
+
+    private final String value;
+    private final String field;
+    private final Match match;
+    private final int distance;
+    private final int rowCount;
+
+    public SearchSuggestion(String value, String field, Match match, int distance, int rowCount) {
+        this.value = value;
+        this.field = field;
+        this.match = match;
+        this.distance = distance;
+        this.rowCount = rowCount;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    //"vendor" or "description"
+    public String getField() {
+        return field;
+    }
+
+    public Match getMatch() {
+        return match;
+    }
+
+    //Number of typos between the search text and the value, 0 unless the match is FUZZY
+    public int getDistance() {
+        return distance;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    //Best match first, then fewest typos, then the value with the most transactions
+    @Override
+    public int compareTo(SearchSuggestion other) {
+        int compareMatch = match.compareTo(other.match);
+        if (compareMatch != 0) {
+            return compareMatch;
+        }
+        int compareDistance = Integer.compare(distance, other.distance);
+        if (compareDistance != 0) {
+            return compareDistance;
+        }
+        int compareCount = Integer.compare(other.rowCount, rowCount);
+        return (compareCount != 0) ? compareCount : value.compareToIgnoreCase(other.value);
+    }
+}
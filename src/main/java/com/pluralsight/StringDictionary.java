@@ -0,0 +1,62 @@
+package com.pluralsight;
+import java.util.Arrays;
+import java.util.HashMap;
+
+//Gives every distinct string an int id so repeated vendors and descriptions are stored once
+public class StringDictionary {
+    //Null in a read-only copy, which only decodes
+    private final HashMap<String, Integer> ids;
+    private String[] values;
+    private int size;
+
+    public StringDictionary() {
+        ids = new HashMap<>();
+        values = new String[16];
+    }
+
+    //Read-only copy for a snapshot of the store, strings are only appended so it shares the array and reads up to its size
+    StringDictionary(StringDictionary other) {
+        ids = null;
+        values = other.values;
+        size = other.size;
+    }
+
+    /**
+     * Returns the id of the string, adding it to the dictionary the first time it is seen
+     * @param value the string to encode
+     * @return the id of the string, ids start at 0 and go up by one per new string
+     */
+    public int encode(String value) {
+        if (ids == null) {
+            throw new UnsupportedOperationException("A snapshot of the ledger can't be changed");
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = size;
+            ids.put(value, id);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        return id;
+    }
+
+    /**
+     * @param id an id returned by encode
+     * @return the string with that id
+     */
+    public String decode(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Id " + id + " out of " + size);
+        }
+        return values[id];
+    }
+
+    /**
+     * @return the number of distinct strings
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,177 @@
+package com.pluralsight;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive index from a vendor or description to the rows that have it.
+ * <p>
+ * Every dictionary id keeps its own list of row ids, filled as rows are added, so indexing a row
+ * is one array append. Only the first time a string is seen it is case-folded and filed under its
+ * folded key, "verizon" finds the rows of "Verizon" and of "VERIZON".
+ * Row ids are added in increasing order, so every list is sorted and lists can be intersected in one pass.
+ * Each new folded key also goes into a TrigramIndex for prefix, substring and typo-tolerant searches.
+ * <p>
+ * A snapshot of the store shares the index instead of copying it. Everything in it only grows, so the
+ * copy reads what was there when it was made: the ids below its number of indexed ids and the rows below
+ * its number of rows. The lists of row ids are published to it at the end of every batch, see IntList.
+ */
+class TextIndex {
+    private final StringDictionary dictionary;
+    //The id arrays are replaced when a key gets another id, never changed
+    private final ConcurrentHashMap<String, int[]> idsByKey;
+    private final TrigramIndex trigrams;
+    //Ids whose lists got rows since the last publish, null in a read-only copy
+    private final IntList changedIds;
+    private final int rowLimit;
+    private IntList[] postings = new IntList[16];
+    private int indexedIds;
+
+    TextIndex(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.idsByKey = new ConcurrentHashMap<>();
+        this.trigrams = new TrigramIndex();
+        this.changedIds = new IntList();
+        this.rowLimit = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Read-only copy for a snapshot of the store, it shares everything with the other index
+     * @param dictionary the copy of the dictionary the other index was built on
+     * @param rowLimit the number of rows of the snapshot, later rows are left out
+     */
+    TextIndex(TextIndex other, StringDictionary dictionary, int rowLimit) {
+        this.dictionary = dictionary;
+        this.idsByKey = other.idsByKey;
+        this.trigrams = other.trigrams.snapshot();
+        this.changedIds = null;
+        this.rowLimit = rowLimit;
+        postings = other.postings;
+        indexedIds = other.indexedIds;
+    }
+
+    /**
+     * Files a row under a dictionary id
+     * @param id the dictionary id of the row's string
+     * @param row the row id, larger than any row added before
+     */
+    void add(int id, int row) {
+        while (indexedIds <= id) {
+            indexId(indexedIds++);
+        }
+        IntList rows = postings[id];
+        if (rows.isPublished()) {
+            changedIds.add(id);
+        }
+        rows.add(row);
+    }
+
+    //Hands the rows added since the last call to the snapshots made from now on
+    void publish() {
+        for (int i = 0; i < changedIds.size(); i++) {
+            postings[changedIds.get(i)].publish();
+        }
+        changedIds.clear();
+        trigrams.publish();
+    }
+
+    /**
+     * @param text the string to look up, case doesn't matter
+     * @return the sorted row ids of every row whose string equals the text ignoring case
+     */
+    int[] rows(String text) {
+        int[] rows = new int[0];
+        //Ids are added in increasing order, the ones this index doesn't have yet are at the end
+        for (int id : idsByKey.getOrDefault(key(text), rows)) {
+            if (id >= indexedIds) {
+                break;
+            }
+            int[] more = postings[id].publishedBelow(rowLimit);
+            rows = (rows.length == 0) ? more : union(rows, more);
+        }
+        return rows;
+    }
+
+    /**
+     * Finds the strings that start with, contain or nearly match the search text
+     * @param query the search text, case doesn't matter
+     * @param field the name of the indexed field, copied into the suggestions
+     * @return the matching strings, unsorted
+     */
+    List<SearchSuggestion> suggest(String query, String field) {
+        return trigrams.search(query, field, this::rowCount);
+    }
+
+    /**
+     * Keeps the row ids found in both sorted arrays
+     */
+    static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    //Same folding as String.equalsIgnoreCase, upper case then lower case
+    static String key(String text) {
+        return text.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    private int rowCount(String key) {
+        int count = 0;
+        for (int id : idsByKey.getOrDefault(key, new int[0])) {
+            if (id >= indexedIds) {
+                break;
+            }
+            count += postings[id].countPublishedBelow(rowLimit);
+        }
+        return count;
+    }
+
+    private void indexId(int id) {
+        if (id == postings.length) {
+            postings = Arrays.copyOf(postings, id * 2);
+        }
+        postings[id] = new IntList();
+
+        String value = dictionary.decode(id);
+        String key = key(value);
+        int[] ids = idsByKey.get(key);
+        if (ids == null) {
+            idsByKey.put(key, new int[]{id});
+            trigrams.add(key, value);
+        } else {
+            int[] more = Arrays.copyOf(ids, ids.length + 1);
+            more[ids.length] = id;
+            idsByKey.put(key, more);
+        }
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                merged[count++] = a[i++];
+            } else {
+                merged[count++] = b[j++];
+            }
+        }
+        return merged;
+    }
+}
@@ -8,9 +8,10 @@ public class Transaction implements Comparable<Transaction> {
     private LocalTime time;
     private String description;
     private String vendor;
-    private double amount;
+    private Money amount;
+    private String line;
 
-    public Transaction(LocalDate date, LocalTime time, String description, String vendor, double amount) {
+    public Transaction(LocalDate date, LocalTime time, String description, String vendor, Money amount) {
         this.date = date;
         this.time = time;
         this.description = description;
@@ -34,14 +35,53 @@ public class Transaction implements Comparable<Transaction> {
         return vendor;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
+    //Built once with a StringBuilder in the same columns as String.format("%-10s  %-9s  %-30s  %-20s  %10.2f"),
+    //a Transaction never changes so the line can be kept
     @Override
     public String toString() {
-        return String.format("%-10s  %-9s  %-30s  %-20s  %10.2f",
-        this.date, this.time, this.description, this.vendor, this.amount);
+        if (line == null) {
+            StringBuilder builder = new StringBuilder(96);
+            column(builder, date.toString(), 10);
+            column(builder, time.toString(), 9);
+            column(builder, description, 30);
+            column(builder, vendor, 20);
+
+            String money = amount.toString();
+            for (int i = money.length(); i < 10; i++) {
+                builder.append(' ');
+            }
+            builder.append(money);
+            line = builder.toString();
+        }
+        return line;
+    }
+
+    /**
+     * Checks a description or vendor before it is saved. A '|' would split its line in the file into more
+     * fields and a line break or other control character would start a new line, so neither can be saved.
+     * @param field the description or vendor
+     * @return true if it can be one field of a line in the file
+     */
+    public static boolean isSavable(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '|' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Appends the value padded like "%-Ns" and the two spaces between columns
+    private static void column(StringBuilder builder, String value, int width) {
+        builder.append(value);
+        for (int i = Math.min(value.length(), width); i < width + 2; i++) {
+            builder.append(' ');
+        }
     }
 
     //The method that compares two dates in and sorts the transactions in descending order
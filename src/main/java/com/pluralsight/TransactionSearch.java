@@ -0,0 +1,364 @@
+package com.pluralsight;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The custom search of the reports menu, also used by the LedgerServer.
+ * <p>
+ * Every criterion is optional, set the ones to search on and call find, or largest/smallest for the
+ * transactions with the largest or smallest amounts. A description or vendor is looked up in its index
+ * and the posting lists are intersected, so only those rows are checked against the dates and the amounts.
+ * Without one, the dates narrow down the positions of the sorted store and the amounts narrow down the
+ * amount order of the store, and whichever of the two leaves fewer rows is read.
+ * <p>
+ * Rows from an index come sorted by row id and have to be shown by date. A few of them are sorted,
+ * but a common vendor can have a tenth of the ledger, so then the positions are read in display order
+ * and only the rows of the vendor are kept. A page is found after reading a few hundred positions,
+ * instead of sorting every row of the vendor for every page that is asked for.
+ */
+public final class TransactionSearch {
+    //Rows that are at least 1/32 of the positions they fall in are found by reading the positions
+    private static final int DENSE_FRACTION = 32;
+
+    private LocalDate start;
+    private LocalDate end;
+    private String description;
+    private String vendor;
+    private Money amount;
+    private Money minAmount;
+    private Money maxAmount;
+
+    /**
+     * @param start the first day, null for no limit
+     */
+    public void setStart(LocalDate start) {
+        this.start = start;
+    }
+
+    /**
+     * @param end the last day, null for no limit
+     */
+    public void setEnd(LocalDate end) {
+        this.end = end;
+    }
+
+    /**
+     * @param description the description, case doesn't matter, null or empty for any
+     */
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @param vendor the vendor, case doesn't matter, null or empty for any
+     */
+    public void setVendor(String vendor) {
+        this.vendor = vendor;
+    }
+
+    /**
+     * @param amount the exact amount, compared in cents, null for any
+     */
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * @param minAmount the smallest amount to include, -50.00 leaves out payments over $50, null for no limit
+     */
+    public void setMinAmount(Money minAmount) {
+        this.minAmount = minAmount;
+    }
+
+    /**
+     * @param maxAmount the largest amount to include, null for no limit
+     */
+    public void setMaxAmount(Money maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+
+    /**
+     * Finds the transactions that match every criterion given
+     * @param store the ledger to search
+     * @param pageSize the most rows on a page of the view
+     * @return the matching rows, newest first, read a page at a time
+     */
+    public PagedView find(TransactionStore store, int pageSize) {
+        long low = lowCents();
+        long high = highCents();
+        if (low > high) {
+            return PagedView.ofRows(store, new int[0], null, pageSize);
+        }
+        IntPredicate amountFilter = amountFilter(store, low, high);
+        int[] candidates = textCandidates(store);
+        if (candidates != null) {
+            return ofCandidates(store, candidates, start, end, amountFilter, pageSize);
+        }
+
+        int firstPosition = firstPosition(store, end);
+        int lastPosition = lastPosition(store, start);
+        if (amountFilter != null) {
+            int fromRank = store.countAmountsBelow(low);
+            int toRank = toRank(store, high);
+            //Fewer rows in the amounts than in the dates, the rows come from the amount order
+            if (toRank - fromRank < lastPosition - firstPosition) {
+                int[] rows = new int[toRank - fromRank];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = store.rowByAmount(fromRank + i);
+                }
+                return ofCandidates(store, rows, start, end, null, pageSize);
+            }
+        }
+        return PagedView.ofPositions(store, firstPosition, lastPosition, amountFilter, pageSize);
+    }
+
+    /**
+     * Finds the matching transactions with the largest amounts, the biggest deposits
+     * @param store the ledger to search
+     * @param count how many to find
+     * @param pageSize the most rows on a page of the view
+     * @return at most count rows, largest amount first
+     */
+    public PagedView largest(TransactionStore store, int count, int pageSize) {
+        return PagedView.ofRanked(store, ranked(store, count, true), pageSize);
+    }
+
+    /**
+     * Finds the matching transactions with the smallest amounts, the biggest payments
+     * @param store the ledger to search
+     * @param count how many to find
+     * @param pageSize the most rows on a page of the view
+     * @return at most count rows, smallest amount first
+     */
+    public PagedView smallest(TransactionStore store, int count, int pageSize) {
+        return PagedView.ofRanked(store, ranked(store, count, false), pageSize);
+    }
+
+    /**
+     * A view of some rows in display order
+     * @param rows row ids sorted lowest first, as returned by the indexes of the store
+     * @param pageSize the most rows on a page of the view
+     */
+    public static PagedView ofRows(TransactionStore store, int[] rows, int pageSize) {
+        return ofCandidates(store, rows, null, null, null, pageSize);
+    }
+
+    /**
+     * The rows with the count largest or smallest amounts of the ones that match.
+     * Without a description or vendor there are two ways to find them: walk the amount order from
+     * one end and keep the rows in the dates, or read the dates and keep the best rows seen so far.
+     * The walk finds about one row in the dates for every amountRows / dateRows rows it reads,
+     * so it is used when count of them cost less than reading the dates.
+     */
+    private int[] ranked(TransactionStore store, int count, boolean largest) {
+        long low = lowCents();
+        long high = highCents();
+        if (count <= 0 || low > high) {
+            return new int[0];
+        }
+        IntPredicate dateFilter = dateFilter(store, start, end);
+        IntPredicate amountFilter = amountFilter(store, low, high);
+
+        int[] candidates = textCandidates(store);
+        if (candidates != null) {
+            IntPredicate keep = both(dateFilter, amountFilter);
+            return select(store, candidates.length, i -> candidates[i], keep, count, largest);
+        }
+
+        int firstPosition = firstPosition(store, end);
+        int lastPosition = lastPosition(store, start);
+        int dateRows = Math.max(0, lastPosition - firstPosition);
+        int fromRank = store.countAmountsBelow(low);
+        int toRank = toRank(store, high);
+        double walkCost = (dateFilter == null) ? count : (double) count * (toRank - fromRank) / Math.max(1, dateRows);
+        if (walkCost <= dateRows) {
+            return walk(store, fromRank, toRank, dateFilter, count, largest);
+        }
+        return select(store, dateRows, i -> store.rowAt(firstPosition + i), amountFilter, count, largest);
+    }
+
+    //The description and vendor rows intersected, null if neither is searched on
+    private int[] textCandidates(TransactionStore store) {
+        int[] candidates = null;
+        if (description != null && !description.isEmpty()) {
+            candidates = store.rowsWithDescription(description);
+        }
+        if (vendor != null && !vendor.isEmpty()) {
+            int[] vendorRows = store.rowsWithVendor(vendor);
+            candidates = (candidates == null) ? vendorRows : TextIndex.intersect(candidates, vendorRows);
+        }
+        return candidates;
+    }
+
+    //The amounts in cents of [low, high], an exact amount counts as both limits
+    private long lowCents() {
+        long low = (minAmount != null) ? minAmount.getCents() : Long.MIN_VALUE;
+        return (amount != null) ? Math.max(low, amount.getCents()) : low;
+    }
+
+    private long highCents() {
+        long high = (maxAmount != null) ? maxAmount.getCents() : Long.MAX_VALUE;
+        return (amount != null) ? Math.min(high, amount.getCents()) : high;
+    }
+
+    private static IntPredicate amountFilter(TransactionStore store, long low, long high) {
+        if (low == Long.MIN_VALUE && high == Long.MAX_VALUE) {
+            return null;
+        }
+        return row -> {
+            long cents = store.amountCents(row);
+            return cents >= low && cents <= high;
+        };
+    }
+
+    private static IntPredicate dateFilter(TransactionStore store, LocalDate start, LocalDate end) {
+        if (start == null && end == null) {
+            return null;
+        }
+        long startDay = (start != null) ? start.toEpochDay() : Long.MIN_VALUE;
+        long endDay = (end != null) ? end.toEpochDay() : Long.MAX_VALUE;
+        return row -> {
+            int day = store.epochDay(row);
+            return day >= startDay && day <= endDay;
+        };
+    }
+
+    private static IntPredicate both(IntPredicate first, IntPredicate second) {
+        if (first == null) {
+            return second;
+        }
+        return (second == null) ? first : first.and(second);
+    }
+
+    private static int firstPosition(TransactionStore store, LocalDate end) {
+        return (end != null) ? store.firstPositionOnOrBefore(end) : 0;
+    }
+
+    private static int lastPosition(TransactionStore store, LocalDate start) {
+        return (start != null) ? store.firstPositionBefore(start) : store.size();
+    }
+
+    //The rank after the last row of at most high cents
+    private static int toRank(TransactionStore store, long high) {
+        return (high == Long.MAX_VALUE) ? store.size() : store.countAmountsBelow(high + 1);
+    }
+
+    /**
+     * Reads the amount ranks [fromRank, toRank) from the largest or smallest end
+     * until count rows pass the filter
+     */
+    private static int[] walk(TransactionStore store, int fromRank, int toRank, IntPredicate keep,
+                              int count, boolean largest) {
+        int[] found = new int[Math.min(count, toRank - fromRank)];
+        int size = 0;
+        for (int i = 0; i < toRank - fromRank && size < found.length; i++) {
+            int row = store.rowByAmount(largest ? toRank - 1 - i : fromRank + i);
+            if (keep == null || keep.test(row)) {
+                found[size++] = row;
+            }
+        }
+        return (size == found.length) ? found : Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Keeps the count best of n rows in a heap with the worst of them on top,
+     * so each row is one comparison with the top and the rows are never sorted in full
+     * @param rowAt gives the row id of each of the n rows
+     */
+    private static int[] select(TransactionStore store, int n, IntUnaryOperator rowAt, IntPredicate keep,
+                                int count, boolean largest) {
+        int[] heap = new int[Math.min(count, n)];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int row = rowAt.applyAsInt(i);
+            if (keep != null && !keep.test(row)) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = row;
+                siftUp(store, heap, size++, largest);
+            } else if (size > 0 && goesBefore(store, row, heap[0], largest)) {
+                heap[0] = row;
+                siftDown(store, heap, size, largest);
+            }
+        }
+
+        //Taking the worst off the top each time fills the result from the back
+        int[] rows = new int[size];
+        for (int last = size - 1; last >= 0; last--) {
+            rows[last] = heap[0];
+            heap[0] = heap[last];
+            siftDown(store, heap, last, largest);
+        }
+        return rows;
+    }
+
+    private static void siftUp(TransactionStore store, int[] heap, int index, boolean largest) {
+        int row = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!goesBefore(store, heap[parent], row, largest)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    private static void siftDown(TransactionStore store, int[] heap, int size, boolean largest) {
+        if (size == 0) {
+            return;
+        }
+        int row = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && goesBefore(store, heap[child], heap[child + 1], largest)) {
+                child++;
+            }
+            if (!goesBefore(store, row, heap[child], largest)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+
+    //Ranked by amount and then row id, the same order as the amount order of the store
+    private static boolean goesBefore(TransactionStore store, int a, int b, boolean largest) {
+        int compare = Long.compare(store.amountCents(a), store.amountCents(b));
+        if (compare == 0) {
+            compare = Integer.compare(a, b);
+        }
+        return largest ? compare > 0 : compare < 0;
+    }
+
+    /**
+     * The candidate rows dated in [start, end] that pass the filter
+     */
+    private static PagedView ofCandidates(TransactionStore store, int[] candidates, LocalDate start, LocalDate end,
+                                          IntPredicate filter, int pageSize) {
+        int firstPosition = firstPosition(store, end);
+        int lastPosition = lastPosition(store, start);
+        if (candidates.length > 0 && (long) candidates.length * DENSE_FRACTION >= lastPosition - firstPosition) {
+            BitSet members = new BitSet(store.size());
+            for (int row : candidates) {
+                members.set(row);
+            }
+            IntPredicate keep = (filter == null) ? members::get : row -> members.get(row) && filter.test(row);
+            return PagedView.ofPositions(store, firstPosition, lastPosition, keep, pageSize);
+        }
+
+        //Few enough to sort, the dates are then checked on each row as the pages are read
+        int[] rows = store.inDisplayOrder(candidates);
+        return PagedView.ofRows(store, rows, both(dateFilter(store, start, end), filter), pageSize);
+    }
+}
@@ -0,0 +1,504 @@
+package com.pluralsight;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps the ledger in primitive columns instead of one Transaction object per row.
+ * Dates are stored as epoch days, times as seconds of the day, amounts as cents and
+ * descriptions/vendors as ids of a StringDictionary, about 28 bytes a row, plus 4 for the
+ * AmountIndex that keeps the rows sorted by amount.
+ * <p>
+ * Every row keeps the id it got when it was added (0, 1, 2...), the display order
+ * (newest first, see Transaction.compareTo) is a separate RowList of row ids that is kept
+ * sorted on every add. That list is stored oldest first, so a new transaction dated after
+ * everything else is a plain append and a backdated one only shifts the newer rows of its chunk.
+ * Transaction objects are only created when a row is asked for.
+ * <p>
+ * A store is not thread-safe. Other threads read from a snapshot, see ConcurrentLedger.
+ */
+public class TransactionStore implements Iterable<Transaction> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringDictionary descriptions;
+    private final StringDictionary vendors;
+    private final TextIndex descriptionIndex;
+    private final TextIndex vendorIndex;
+    private final LedgerTotals totals;
+    private final AmountIndex amountIndex;
+    private final boolean readOnly;
+
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private int[] secondsOfDay = new int[INITIAL_CAPACITY];
+    private long[] amountCents = new long[INITIAL_CAPACITY];
+    private int[] descriptionIds = new int[INITIAL_CAPACITY];
+    private int[] vendorIds = new int[INITIAL_CAPACITY];
+    //Row ids oldest first, the display order is this list read backwards
+    private RowList order = new RowList();
+    private int size;
+
+    public TransactionStore() {
+        descriptions = new StringDictionary();
+        vendors = new StringDictionary();
+        descriptionIndex = new TextIndex(descriptions);
+        vendorIndex = new TextIndex(vendors);
+        totals = new LedgerTotals();
+        amountIndex = new AmountIndex();
+        readOnly = false;
+    }
+
+    //See snapshot
+    private TransactionStore(TransactionStore source) {
+        descriptions = new StringDictionary(source.descriptions);
+        vendors = new StringDictionary(source.vendors);
+        descriptionIndex = new TextIndex(source.descriptionIndex, descriptions, source.size);
+        vendorIndex = new TextIndex(source.vendorIndex, vendors, source.size);
+        totals = source.totals.snapshot();
+        amountIndex = source.amountIndex.snapshot();
+        readOnly = true;
+
+        epochDays = source.epochDays;
+        secondsOfDay = source.secondsOfDay;
+        amountCents = source.amountCents;
+        descriptionIds = source.descriptionIds;
+        vendorIds = source.vendorIds;
+        order = source.order.share();
+        size = source.size;
+    }
+
+    /**
+     * Makes a read-only copy of the store as it is now.
+     * Rows are only ever appended and a written row never changes, so the copy shares the columns
+     * with this store and only reads the rows it has. Nothing else is copied either: the display order
+     * and the amount order are RowLists that copy a chunk before changing it, the dictionaries and text
+     * indexes are appended to and the copy only reads as far as they went, and the totals copy a chunk
+     * of days before changing it. So a snapshot takes the same short time whatever the size of the store.
+     * This store must not be changed while the copy is made, adding to the copy throws.
+     * @return a store that keeps the rows of this one as they are now
+     */
+    TransactionStore snapshot() {
+        return new TransactionStore(this);
+    }
+
+    /**
+     * Adds a transaction and puts it in its place in the display order
+     * @param transaction the transaction to store
+     * @return the row id of the new row
+     */
+    public int add(Transaction transaction) {
+        checkWritable();
+        long started = LedgerMetrics.STORE_INSERT.start();
+        ensureCapacity(size + 1);
+        int row = appendRow(transaction);
+
+        //Among rows with the same date and time the newest row id goes first in this list,
+        //so it shows after them, the same as appending and re-sorting with a stable sort
+        order.insert(existing -> compareRows(existing, row) < 0, row);
+        size++;
+        amountIndex.addRows(row, size, amountCents);
+        descriptionIndex.publish();
+        vendorIndex.publish();
+        LedgerMetrics.STORE_INSERT.stop(started);
+        return row;
+    }
+
+    /**
+     * Adds every transaction of the collection.
+     * The new rows are sorted on their own and then put in the display order, see RowList.addAll.
+     * @param transactions the transactions to store
+     */
+    public void addAll(Collection<Transaction> transactions) {
+        checkWritable();
+        long started = LedgerMetrics.STORE_INSERT.start();
+        ensureCapacity(size + transactions.size());
+        int[] newRows = new int[transactions.size()];
+        int count = 0;
+        for (Transaction transaction : transactions) {
+            newRows[count++] = appendRow(transaction);
+            size++;
+        }
+
+        mergeSort(newRows, new int[count], 0, count);
+        order.addAll(newRows, this::compareRows);
+        amountIndex.addRows(size - count, size, amountCents);
+        descriptionIndex.publish();
+        vendorIndex.publish();
+        LedgerMetrics.STORE_INSERT.stop(started);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the balance and the per-day/month/year totals, kept up to date on every add
+     */
+    public LedgerTotals totals() {
+        return totals;
+    }
+
+    /**
+     * @param position a position in the display order, 0 is the newest transaction
+     * @return the row id shown at that position
+     */
+    public int rowAt(int position) {
+        checkIndex(position);
+        return order.get(size - 1 - position);
+    }
+
+    /**
+     * Copies the row ids shown at a run of positions, faster than rowAt for every position
+     * @param fromPosition the first position
+     * @param count the number of positions
+     * @param into receives the row ids in display order, from index 0
+     */
+    public void rowsAt(int fromPosition, int count, int[] into) {
+        if (fromPosition < 0 || count < 0 || fromPosition + count > size) {
+            throw new IndexOutOfBoundsException("Positions " + fromPosition + " to " + (fromPosition + count) + " out of " + size);
+        }
+        order.copy(size - fromPosition - count, size - fromPosition, into);
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int row = into[i];
+            into[i] = into[j];
+            into[j] = row;
+        }
+    }
+
+    /**
+     * Binary searches the display order for the newest transaction dated on or before the given day.
+     * Together with firstPositionBefore it gives the positions of a date range, so a report over
+     * [start, end] only reads positions firstPositionOnOrBefore(end) up to firstPositionBefore(start).
+     * @param date the last day to include
+     * @return the first position dated on or before the day, size() if there is none
+     */
+    public int firstPositionOnOrBefore(LocalDate date) {
+        return size - countBefore(date.toEpochDay() + 1);
+    }
+
+    /**
+     * Binary searches the display order for the newest transaction dated before the given day
+     * @param date the first day to exclude going back in time
+     * @return the first position dated before the day, size() if there is none
+     */
+    public int firstPositionBefore(LocalDate date) {
+        return size - countBefore(date.toEpochDay());
+    }
+
+    /**
+     * Binary searches the amount order. The rows with an amount in [min, max] are the ranks
+     * countAmountsBelow(min) up to countAmountsBelow(max + 1), see rowByAmount.
+     * @param cents the amount to look for
+     * @return the number of rows with a smaller amount
+     */
+    public int countAmountsBelow(long cents) {
+        return amountIndex.countBelow(cents, amountCents);
+    }
+
+    /**
+     * @param rank a position in the amount order, 0 is the smallest amount (the largest payment)
+     *             and size() - 1 the largest. Rows with the same amount go by row id.
+     * @return the row id at that position
+     */
+    public int rowByAmount(int rank) {
+        return amountIndex.rowAt(rank);
+    }
+
+    /**
+     * Looks the vendor up in the vendor index instead of comparing every row
+     * @param vendor the vendor to find, case doesn't matter
+     * @return the ids of the matching rows, lowest first
+     */
+    public int[] rowsWithVendor(String vendor) {
+        return vendorIndex.rows(vendor);
+    }
+
+    /**
+     * Looks the description up in the description index instead of comparing every row
+     * @param description the description to find, case doesn't matter
+     * @return the ids of the matching rows, lowest first
+     */
+    public int[] rowsWithDescription(String description) {
+        return descriptionIndex.rows(description);
+    }
+
+    /**
+     * Finds vendors and descriptions that start with, contain or nearly match the search text
+     * @param query the search text, case doesn't matter
+     * @param limit the most suggestions to return
+     * @return the best suggestions first
+     */
+    public List<SearchSuggestion> suggest(String query, int limit) {
+        List<SearchSuggestion> suggestions = new ArrayList<>(vendorIndex.suggest(query, "vendor"));
+        suggestions.addAll(descriptionIndex.suggest(query, "description"));
+        Collections.sort(suggestions);
+        return suggestions.subList(0, Math.min(limit, suggestions.size()));
+    }
+
+    /**
+     * @param suggestion a suggestion returned by suggest
+     * @return the ids of the rows with that vendor or description, lowest first
+     */
+    public int[] rowsOf(SearchSuggestion suggestion) {
+        return "vendor".equals(suggestion.getField())
+                ? rowsWithVendor(suggestion.getValue())
+                : rowsWithDescription(suggestion.getValue());
+    }
+
+    /**
+     * Sorts some rows the way they are shown, newest first
+     * @param rows row ids, the array is sorted in place
+     * @return the same array
+     */
+    public int[] inDisplayOrder(int[] rows) {
+        mergeSort(rows, new int[rows.length], 0, rows.length);
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Builds a Transaction view of a row
+     * @param row the row id
+     * @return a new Transaction with the values of the row
+     */
+    public Transaction get(int row) {
+        checkIndex(row);
+        return new Transaction(
+                LocalDate.ofEpochDay(epochDays[row]),
+                LocalTime.ofSecondOfDay(secondsOfDay[row]),
+                descriptions.decode(descriptionIds[row]),
+                vendors.decode(vendorIds[row]),
+                Money.ofCents(amountCents[row]));
+    }
+
+    public int epochDay(int row) {
+        checkIndex(row);
+        return epochDays[row];
+    }
+
+    public int secondOfDay(int row) {
+        checkIndex(row);
+        return secondsOfDay[row];
+    }
+
+    public long amountCents(int row) {
+        checkIndex(row);
+        return amountCents[row];
+    }
+
+    public String description(int row) {
+        checkIndex(row);
+        return descriptions.decode(descriptionIds[row]);
+    }
+
+    public String vendor(int row) {
+        checkIndex(row);
+        return vendors.decode(vendorIds[row]);
+    }
+
+    int descriptionId(int row) {
+        checkIndex(row);
+        return descriptionIds[row];
+    }
+
+    int vendorId(int row) {
+        checkIndex(row);
+        return vendorIds[row];
+    }
+
+    StringDictionary descriptionDictionary() {
+        return descriptions;
+    }
+
+    StringDictionary vendorDictionary() {
+        return vendors;
+    }
+
+    /**
+     * Fills an empty store with the columns read back from a LedgerSnapshot.
+     * The arrays are taken over as they are, the dictionaries, indexes and totals are rebuilt from them.
+     * @param descriptionValues the descriptions in id order
+     * @param vendorValues the vendors in id order
+     * @param order the row ids oldest first, as kept by this store
+     * @param amountOrder the row ids smallest amount first, as kept by the AmountIndex
+     * @throws IllegalArgumentException if the columns don't describe a valid store
+     */
+    void restore(List<String> descriptionValues, List<String> vendorValues, int[] epochDays, int[] secondsOfDay,
+                 long[] amountCents, int[] descriptionIds, int[] vendorIds, int[] order, int[] amountOrder) {
+        checkWritable();
+        if (size != 0) {
+            throw new IllegalStateException("Only an empty store can be restored");
+        }
+        int rows = order.length;
+        if (epochDays.length != rows || secondsOfDay.length != rows || amountCents.length != rows
+                || descriptionIds.length != rows || vendorIds.length != rows) {
+            throw new IllegalArgumentException("Columns of different lengths");
+        }
+        if (new HashSet<>(descriptionValues).size() != descriptionValues.size()
+                || new HashSet<>(vendorValues).size() != vendorValues.size()) {
+            throw new IllegalArgumentException("Duplicate strings in the dictionaries");
+        }
+
+        //Everything is checked before anything is changed, a bad snapshot leaves the store empty
+        boolean[] seen = new boolean[rows];
+        for (int position = 0; position < rows; position++) {
+            int row = order[position];
+            if (row < 0 || row >= rows || seen[row]) {
+                throw new IllegalArgumentException("Position " + position + " has no valid row");
+            }
+            seen[row] = true;
+            if (position > 0 && epochDays[row] < epochDays[order[position - 1]]) {
+                throw new IllegalArgumentException("Rows out of order at position " + position);
+            }
+            if (descriptionIds[row] < 0 || descriptionIds[row] >= descriptionValues.size()
+                    || vendorIds[row] < 0 || vendorIds[row] >= vendorValues.size()) {
+                throw new IllegalArgumentException("Row " + row + " points outside the dictionaries");
+            }
+        }
+
+        amountIndex.restore(amountOrder, amountCents);
+        for (String description : descriptionValues) {
+            descriptions.encode(description);
+        }
+        for (String vendor : vendorValues) {
+            vendors.encode(vendor);
+        }
+        for (int row = 0; row < rows; row++) {
+            descriptionIndex.add(descriptionIds[row], row);
+            vendorIndex.add(vendorIds[row], row);
+        }
+        descriptionIndex.publish();
+        vendorIndex.publish();
+        //Totals are added oldest first so consecutive rows share their day buckets
+        for (int position = 0; position < rows; position++) {
+            totals.add(epochDays[order[position]], amountCents[order[position]]);
+        }
+
+        this.epochDays = epochDays;
+        this.secondsOfDay = secondsOfDay;
+        this.amountCents = amountCents;
+        this.descriptionIds = descriptionIds;
+        this.vendorIds = vendorIds;
+        this.order = RowList.of(order);
+        size = rows;
+    }
+
+    /**
+     * Iterates over the transactions in display order
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<>() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public Transaction next() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(rowAt(position++));
+            }
+        };
+    }
+
+    private int appendRow(Transaction transaction) {
+        int row = size;
+        long cents = transaction.getAmount().getCents();
+        epochDays[row] = (int) transaction.getDate().toEpochDay();
+        secondsOfDay[row] = transaction.getTime().toSecondOfDay();
+        amountCents[row] = cents;
+        descriptionIds[row] = descriptions.encode(transaction.getDescription());
+        vendorIds[row] = vendors.encode(transaction.getVendor());
+        descriptionIndex.add(descriptionIds[row], row);
+        vendorIndex.add(vendorIds[row], row);
+        totals.add(transaction.getDate(), cents);
+        return row;
+    }
+
+    //Number of rows dated before the day, found by a lower bound on the oldest-first order
+    private int countBefore(long day) {
+        return order.countWhile(row -> epochDays[row] < day);
+    }
+
+    //Oldest first, rows with the same date and time go newest row id first
+    private int compareRows(int a, int b) {
+        int compareDate = Integer.compare(epochDays[a], epochDays[b]);
+        if (compareDate != 0) {
+            return compareDate;
+        }
+        int compareTime = Integer.compare(secondsOfDay[a], secondsOfDay[b]);
+        return (compareTime != 0) ? compareTime : Integer.compare(b, a);
+    }
+
+    //Top-down merge sort of row ids, done on ints so no Integer boxing is needed
+    private void mergeSort(int[] rows, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, middle);
+        mergeSort(rows, buffer, middle, to);
+        merge(rows, buffer, from, middle, to);
+    }
+
+    //Merges the sorted runs [from, middle) and [middle, to)
+    private void merge(int[] rows, int[] buffer, int from, int middle, int to) {
+        if (from == middle || middle == to || compareRows(rows[middle - 1], rows[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareRows(buffer[left], buffer[right]) <= 0)) {
+                rows[i] = buffer[left++];
+            } else {
+                rows[i] = buffer[right++];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= epochDays.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        secondsOfDay = Arrays.copyOf(secondsOfDay, newCapacity);
+        amountCents = Arrays.copyOf(amountCents, newCapacity);
+        descriptionIds = Arrays.copyOf(descriptionIds, newCapacity);
+        vendorIds = Arrays.copyOf(vendorIds, newCapacity);
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("A snapshot of the ledger can't be changed");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " out of " + size);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.pluralsight;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Finds vendors or descriptions by prefix, substring or with a couple of typos.
+ * <p>
+ * Every distinct case-folded string is split into three-letter pieces (trigrams), each trigram
+ * lists the strings it appears in. Every word of a string also gets the trigram of its first letter
+ * padded in front, the one a search text starts with. A search only checks the strings that share
+ * enough trigrams with the search text: one typo can break at most three trigrams, so anything with
+ * fewer shared trigrams than that allows can't be a match. Every search of three letters or more needs
+ * at least one, which misses a six-letter word with one of its two typos on the first letter and the
+ * other in the middle, when the word goes on past them. Searches of one or two letters check every
+ * string, they have no trigram of their own inside a word. The index holds distinct strings, not rows,
+ * so its size follows the number of vendors and descriptions rather than the size of the ledger.
+ * Like the TextIndex it is shared with snapshots, which only read the strings added before them.
+ */
+class TrigramIndex {
+    private String[] keys;
+    private String[] values;
+    private int count;
+    private final ConcurrentHashMap<String, IntList> keysByTrigram;
+    //Lists that got ids since the last publish, null in a read-only copy
+    private final List<IntList> changed;
+
+    TrigramIndex() {
+        keys = new String[16];
+        values = new String[16];
+        keysByTrigram = new ConcurrentHashMap<>();
+        changed = new ArrayList<>();
+    }
+
+    private TrigramIndex(TrigramIndex other) {
+        keys = other.keys;
+        values = other.values;
+        count = other.count;
+        keysByTrigram = other.keysByTrigram;
+        changed = null;
+    }
+
+    //Read-only copy for a snapshot of the store, strings are only appended so it shares the arrays and reads up to its count
+    TrigramIndex snapshot() {
+        return new TrigramIndex(this);
+    }
+
+    /**
+     * Adds a distinct string
+     * @param key the case-folded string, see TextIndex.key
+     * @param value the string as it was first written, shown in the results
+     */
+    void add(String key, String value) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        int id = count;
+        keys[id] = key;
+        values[id] = value;
+        count++;
+        for (String trigram : keyTrigrams(key)) {
+            IntList ids = keysByTrigram.computeIfAbsent(trigram, unused -> new IntList());
+            if (ids.isPublished()) {
+                changed.add(ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    //Hands the strings added since the last call to the snapshots made from now on
+    void publish() {
+        for (IntList ids : changed) {
+            ids.publish();
+        }
+        changed.clear();
+    }
+
+    /**
+     * @param query the search text, case doesn't matter
+     * @param field the name of the indexed field, copied into the suggestions
+     * @param rowCount gives the number of rows of a case-folded string
+     * @return every matching string, unsorted
+     */
+    List<SearchSuggestion> search(String query, String field, ToIntFunction<String> rowCount) {
+        List<SearchSuggestion> suggestions = new ArrayList<>();
+        String text = TextIndex.key(query.trim());
+        if (text.isEmpty()) {
+            return suggestions;
+        }
+
+        int maxDistance = maxDistance(text);
+        for (int id : candidates(text)) {
+            String key = keys[id];
+            SearchSuggestion.Match match = null;
+            int distance = 0;
+            if (key.equals(text)) {
+                match = SearchSuggestion.Match.EXACT;
+            } else if (key.startsWith(text)) {
+                match = SearchSuggestion.Match.PREFIX;
+            } else if (key.contains(" " + text)) {
+                match = SearchSuggestion.Match.WORD_PREFIX;
+            } else if (key.contains(text)) {
+                match = SearchSuggestion.Match.SUBSTRING;
+            } else if (maxDistance > 0) {
+                distance = closestDistance(text, key, maxDistance);
+                if (distance <= maxDistance) {
+                    match = SearchSuggestion.Match.FUZZY;
+                }
+            }
+
+            if (match != null) {
+                suggestions.add(new SearchSuggestion(values[id], field, match, distance, rowCount.applyAsInt(key)));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @param text the case-folded search text
+     * @return the ids of the strings that share enough trigrams with the text to be a match, unsorted
+     */
+    int[] candidates(String text) {
+        int maxDistance = maxDistance(text);
+        Set<String> queryTrigrams = trigrams(text);
+        //A substring misses at most the three trigrams touching the padding. A typo breaks up to three trigrams, and
+        //a typo match against the start of a word may miss the one behind the text too, as the word goes on after it
+        int needed = (maxDistance == 0) ? queryTrigrams.size() - 3 : queryTrigrams.size() - 1 - 3 * maxDistance;
+        if (text.length() >= 3) {
+            needed = Math.max(needed, 1);
+        }
+        if (needed <= 0) {
+            int[] all = new int[count];
+            Arrays.setAll(all, id -> id);
+            return all;
+        }
+
+        int[] shared = new int[count];
+        IntList candidates = new IntList();
+        for (String trigram : queryTrigrams) {
+            IntList ids = keysByTrigram.get(trigram);
+            if (ids != null) {
+                for (int id : ids.publishedBelow(count)) {
+                    if (++shared[id] == needed) {
+                        candidates.add(id);
+                    }
+                }
+            }
+        }
+        int[] found = new int[candidates.size()];
+        Arrays.setAll(found, candidates::get);
+        return found;
+    }
+
+    //Short words would match nearly everything with two typos allowed
+    private static int maxDistance(String text) {
+        if (text.length() <= 3) {
+            return 0;
+        }
+        return (text.length() <= 5) ? 1 : 2;
+    }
+
+    /**
+     * Smallest number of typos between the text and the whole key or the start of any of its words,
+     * so "tony wholsale" and "wholsale" both find "tony's wholesale"
+     */
+    private static int closestDistance(String text, String key, int maxDistance) {
+        int best = boundedDistance(text, key, maxDistance);
+        for (int start = 0; start < key.length() && best > 0; start++) {
+            if (start == 0 || key.charAt(start - 1) == ' ') {
+                int end = Math.min(key.length(), start + text.length());
+                best = Math.min(best, boundedDistance(text, key.substring(start, end), maxDistance));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Levenshtein distance that gives up once it is sure to go over the limit
+     * @return the distance, or limit + 1 if it is larger than the limit
+     */
+    static int boundedDistance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    //Trigrams of a string, with the first letter of every word after the first padded like the first
+    private static Set<String> keyTrigrams(String key) {
+        Set<String> trigrams = trigrams(key);
+        for (int i = 1; i < key.length(); i++) {
+            if (key.charAt(i - 1) == ' ' && key.charAt(i) != ' ') {
+                trigrams.add("  " + key.charAt(i));
+            }
+        }
+        return trigrams;
+    }
+
+    //Trigrams of the text padded with two spaces in front and one behind, so prefixes get their own trigrams
+    private static Set<String> trigrams(String text) {
+        String padded = "  " + text + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
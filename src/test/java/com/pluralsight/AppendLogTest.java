@@ -0,0 +1,121 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AppendLogTest {
+    private static final String WHOLE_LINES = "2025-10-14|15:47:23|Large Pepperoni|Dave|18.99\n"
+            + "2025-10-14|16:02:10|Flour|Costco|-120.00\n";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void recoverCutsATornLastLineThatStillParses() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        //1250.00 cut off after 12 is a valid line of its own
+        String torn = "2025-10-15|10:00:00|Catering|Bob|12";
+        Files.writeString(file, WHOLE_LINES + torn, StandardCharsets.UTF_8);
+
+        assertEquals(torn.length(), AppendLog.recover(file));
+        assertEquals(WHOLE_LINES, Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void recoverLeavesWholeLinesAlone() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        Files.writeString(file, WHOLE_LINES, StandardCharsets.UTF_8);
+
+        assertEquals(0, AppendLog.recover(file));
+        assertEquals(WHOLE_LINES, Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void wholeLinesEndLeavesALineInProgressAlone() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        //Another program in the middle of its write
+        Files.writeString(file, WHOLE_LINES + "2025-10-15|10:0", StandardCharsets.UTF_8);
+
+        assertEquals(WHOLE_LINES.length(), AppendLog.wholeLinesEnd(file));
+        assertEquals(WHOLE_LINES + "2025-10-15|10:0", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void appendedLinesAreWholeAfterRecover() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        Files.writeString(file, WHOLE_LINES + "2025-10-15|10:0", StandardCharsets.UTF_8);
+        AppendLog.recover(file);
+
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            log.append(pizza());
+        }
+        assertEquals(WHOLE_LINES + "2025-10-16|12:30:00|Large Pepperoni|Dave|18.99\n",
+                Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writePutsTheLinesInTheFileBeforeThePolicyForcesThem() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("records:100"))) {
+            log.append(pizza());
+            assertEquals(0, Files.size(file));
+
+            log.write();
+            assertEquals("2025-10-16|12:30:00|Large Pepperoni|Dave|18.99\n", Files.readString(file, StandardCharsets.UTF_8));
+            //Nothing is written twice when it is forced later
+            log.sync();
+        }
+        assertEquals("2025-10-16|12:30:00|Large Pepperoni|Dave|18.99\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ownWriteIsFoundWhenAnotherProgramAppendsAroundIt() throws IOException {
+        Path file = folder.resolve("transactions.csv");
+        byte[] ours = "2025-10-16|12:30:00|Large Pepperoni|Dave|18.99\n".getBytes(StandardCharsets.UTF_8);
+        String other = "2025-10-16|12:31:00|Garlic Knots|Erin|6.50\n";
+        long sizeBefore = WHOLE_LINES.length();
+
+        //The other program's line lands between taking the size and our write
+        Files.writeString(file, WHOLE_LINES + other + new String(ours, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        long sizeAfter = Files.size(file);
+        assertArrayEquals(new long[]{sizeBefore + other.length(), sizeAfter},
+                AppendLog.locate(file, ours, 0, ours.length, sizeBefore, sizeAfter));
+
+        //It lands between our write and reading the position, which is then past the end of our write
+        Files.writeString(file, WHOLE_LINES + new String(ours, StandardCharsets.UTF_8) + other, StandardCharsets.UTF_8);
+        assertArrayEquals(new long[]{sizeBefore, sizeBefore + ours.length},
+                AppendLog.locate(file, ours, 0, ours.length, sizeBefore, sizeAfter));
+    }
+
+    @Test
+    void failedWriteFailsTheLog() throws IOException {
+        //Every write to /dev/full fails with no space left on the device
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full));
+
+        AppendLog log = AppendLog.open(full, FsyncPolicy.parse("records:2"));
+        log.append(pizza());
+        assertThrows(IOException.class, () -> log.append(pizza()));
+
+        //The lost batch is not written again and nothing after it is taken
+        assertThrows(IOException.class, log::sync);
+        assertThrows(IOException.class, () -> log.append(pizza()));
+        assertThrows(IOException.class, log::close);
+    }
+
+    private static Transaction pizza() {
+        return new Transaction(LocalDate.of(2025, 10, 16), LocalTime.of(12, 30), "Large Pepperoni", "Dave",
+                Money.ofCents(1899));
+    }
+}
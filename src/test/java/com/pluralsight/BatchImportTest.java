@@ -0,0 +1,93 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchImportTest {
+    private static final String PEPPERONI = "2025-10-14|15:47:23|Large Pepperoni|Dave|18.99\n";
+    private static final String FLOUR = "2025-10-14|16:02:10|Flour|Costco|-120.00\n";
+    private static final String CATERING = "2025-10-15|10:00:00|Catering|Bob|1250.00\n";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void importingTheSameExportTwiceAddsNothing() throws IOException {
+        Path export = write("export.csv", PEPPERONI + FLOUR + CATERING);
+        Path file = folder.resolve("transactions.csv");
+        TransactionStore store = new TransactionStore();
+
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            BatchImport.Result first = BatchImport.importFile(export, store, log);
+            assertEquals(3, first.getImported());
+            assertEquals(0, first.getDuplicates());
+
+            BatchImport.Result second = BatchImport.importFile(export, store, log);
+            assertEquals(0, second.getImported());
+            assertEquals(3, second.getDuplicates());
+            assertTrue(second.getRejected().isEmpty());
+        }
+        assertEquals(3, store.size());
+        assertEquals(PEPPERONI + FLOUR + CATERING, Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void repeatedLineInTheExportIsImportedOnce() throws IOException {
+        Path export = write("export.csv", PEPPERONI + FLOUR + PEPPERONI);
+        //Same everything but a cent, a different sale
+        Path similar = write("similar.csv", "2025-10-14|15:47:23|Large Pepperoni|Dave|18.98\n");
+        TransactionStore store = new TransactionStore();
+
+        try (AppendLog log = AppendLog.open(folder.resolve("transactions.csv"), FsyncPolicy.parse("record"))) {
+            BatchImport.Result result = BatchImport.importFile(export, store, log);
+            assertEquals(2, result.getImported());
+            assertEquals(1, result.getDuplicates());
+            assertEquals(1, BatchImport.importFile(similar, store, log).getImported());
+        }
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void rejectedLinesKeepTheirLineNumbers() throws IOException {
+        Path export = write("export.csv", "not a transaction\n"
+                + PEPPERONI
+                + "2025-10-14|17:00:00|Free slice|Dave|0.00\n"
+                + "2025-13-40|10:00:00|Flour|Costco|-120.00\n"
+                + FLOUR
+                + "2025-10-15|11:00:00| |Bob|20.00\n"
+                + CATERING
+                + "2025-10-15|12:00:00|Tip jar|Dave|five\n");
+        Path file = folder.resolve("transactions.csv");
+        TransactionStore store = new TransactionStore();
+
+        BatchImport.Result result;
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            result = BatchImport.importFile(export, store, log);
+        }
+
+        assertEquals(3, result.getImported());
+        List<Long> lineNumbers = new ArrayList<>();
+        for (LedgerLoader.MalformedLine line : result.getRejected()) {
+            lineNumbers.add(line.getLineNumber());
+        }
+        assertEquals(List.of(1L, 3L, 4L, 6L, 8L), lineNumbers);
+        assertEquals("2025-10-14|17:00:00|Free slice|Dave|0.00", result.getRejected().get(1).getLine());
+        assertEquals("Description and vendor can't be empty", result.getRejected().get(3).getReason());
+        assertEquals(PEPPERONI + FLOUR + CATERING, Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    private Path write(String name, String lines) throws IOException {
+        Path path = folder.resolve(name);
+        Files.writeString(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+}
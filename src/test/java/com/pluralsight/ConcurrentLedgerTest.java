@@ -0,0 +1,262 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Hammers a ConcurrentLedger with writer threads while reader threads check every snapshot they get.
+ * <p>
+ * Every transaction carries its writer and sequence number in its amount, and its vendor, description,
+ * date and time follow from them, so a row with values from two different transactions is caught.
+ * The queue keeps the order of each writer, so a snapshot must hold sequence numbers 0 to k-1 of every
+ * writer and nothing else: a lost or doubled transaction shows up as a gap or a repeat. Snapshots must
+ * also be sorted, match their own totals and never go back in time, nor behind the totals the ledger
+ * published before them. At the end the ledger and the
+ * file written by the AppendLog must both hold every transaction exactly once.
+ */
+class ConcurrentLedgerTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final int SEQUENCES_PER_WRITER = 1_000_000;
+    private static final int PER_WRITER = 5_000;
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    @Timeout(value = 2, unit = TimeUnit.MINUTES)
+    void writersAndReadersNeverLoseOrTearTransactions() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        List<Throwable> failures = new ArrayList<>();
+        AtomicLong snapshotsChecked = new AtomicLong();
+        ConcurrentLedger ledger;
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("records:1000"))) {
+            ledger = ConcurrentLedger.start(new TransactionStore(), log, 10_000);
+
+            List<Thread> writerThreads = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writerThreads.add(start(failures, "writer-" + w, () -> {
+                    List<CompletableFuture<Void>> saved = new ArrayList<>(PER_WRITER);
+                    for (int sequence = 0; sequence < PER_WRITER; sequence++) {
+                        saved.add(ledger.submit(transaction(writer, sequence)));
+                    }
+                    for (CompletableFuture<Void> future : saved) {
+                        future.join();
+                    }
+                }));
+            }
+
+            List<Thread> readerThreads = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readerThreads.add(start(failures, "reader-" + r, () -> {
+                    long lastVersion = -1;
+                    int lastSize = 0;
+                    while (!done(writerThreads)) {
+                        long version = ledger.version();
+                        long published = ledger.totals().overall().getCount();
+                        TransactionStore snapshot = ledger.snapshot();
+                        if (version < lastVersion || snapshot.size() < lastSize) {
+                            throw new IllegalStateException("Snapshot went back from " + lastSize + " to " + snapshot.size() + " rows");
+                        }
+                        if (published > snapshot.size()) {
+                            throw new IllegalStateException("Totals of " + published + " rows published before a snapshot of " + snapshot.size());
+                        }
+                        check(snapshot);
+                        lastVersion = version;
+                        lastSize = snapshot.size();
+                        snapshotsChecked.incrementAndGet();
+                    }
+                }));
+            }
+
+            for (Thread thread : writerThreads) {
+                thread.join();
+            }
+            for (Thread thread : readerThreads) {
+                thread.join();
+            }
+            ledger.close();
+        }
+
+        if (!failures.isEmpty()) {
+            fail("A thread failed", failures.get(0));
+        }
+        assertTrue(snapshotsChecked.get() > 0, "No snapshot was checked");
+
+        int[] counts = check(ledger.snapshot());
+        assertEquals(ledger.snapshot().totals().overall().getBalanceCents(), ledger.totals().overall().getBalanceCents());
+        assertEquals((long) WRITERS * PER_WRITER, ledger.totals().overall().getCount());
+        List<Transaction> saved = new ArrayList<>();
+        List<LedgerLoader.MalformedLine> malformed = LedgerLoader.load(file, saved);
+        assertTrue(malformed.isEmpty(), () -> "The file has a torn line: " + malformed.get(0));
+        TransactionStore reloaded = new TransactionStore();
+        reloaded.addAll(saved);
+        int[] savedCounts = check(reloaded);
+        for (int w = 0; w < WRITERS; w++) {
+            assertEquals(PER_WRITER, counts[w], "Rows of writer " + w + " in the ledger");
+            assertEquals(PER_WRITER, savedCounts[w], "Rows of writer " + w + " in the file");
+        }
+    }
+
+    @Test
+    void completedSubmitIsInTheFileWhateverThePolicy() throws Exception {
+        for (String policy : new String[]{"records:1000", "interval:600000"}) {
+            Path file = folder.resolve(policy.replace(':', '-') + ".csv");
+            try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse(policy))) {
+                ConcurrentLedger ledger = ConcurrentLedger.start(new TransactionStore(), log, 16);
+                ledger.submit(transaction(0, 0)).join();
+
+                List<Transaction> saved = new ArrayList<>();
+                assertTrue(LedgerLoader.load(file, saved).isEmpty());
+                assertEquals(1, saved.size(), "Lines in the file with " + policy);
+                ledger.close();
+            }
+        }
+    }
+
+    @Test
+    void savedBatchThatCantBeMergedCompletesAndStopsTheLedger() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        TransactionStore failingStore = new TransactionStore() {
+            @Override
+            public void addAll(Collection<Transaction> transactions) {
+                throw new IllegalStateException("No room in the oven");
+            }
+        };
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            ConcurrentLedger ledger = ConcurrentLedger.start(failingStore, log, 16);
+            //In the file, so reported as saved, a retry would only write it twice
+            ledger.submit(transaction(0, 0)).join();
+
+            CompletionException failure = assertThrows(CompletionException.class, () -> ledger.submit(transaction(0, 1)).join());
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            assertThrows(CompletionException.class, () -> ledger.betweenBatches(store -> { }).join());
+            ledger.close();
+        }
+        List<Transaction> saved = new ArrayList<>();
+        LedgerLoader.load(file, saved);
+        assertEquals(1, saved.size());
+    }
+
+    @Test
+    void batchThatCantBeSavedFailsItsSubmits() throws Exception {
+        AppendLog log = AppendLog.open(folder.resolve("transactions.csv"), FsyncPolicy.parse("record"));
+        log.close();
+        ConcurrentLedger ledger = ConcurrentLedger.start(new TransactionStore(), log, 16);
+
+        CompletionException failure = assertThrows(CompletionException.class, () -> ledger.submit(transaction(0, 0)).join());
+        assertInstanceOf(IOException.class, failure.getCause());
+        assertEquals(0, ledger.snapshot().size());
+        ledger.close();
+    }
+
+    //Every value of the transaction follows from the writer and the sequence number
+    private static Transaction transaction(int writer, int sequence) {
+        long cents = (long) writer * SEQUENCES_PER_WRITER + sequence + 1;
+        return new Transaction(
+                FIRST_DAY.plusDays((sequence * 7L + writer) % 365),
+                LocalTime.ofSecondOfDay(sequence % 86_400),
+                "Order " + sequence % 100,
+                "writer-" + writer,
+                Money.ofCents((sequence % 3 == 0) ? -cents : cents));
+    }
+
+    /**
+     * Checks every row of a snapshot
+     * @return the number of rows of each writer
+     */
+    private static int[] check(TransactionStore snapshot) {
+        int[] counts = new int[WRITERS];
+        BitSet[] sequences = new BitSet[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            sequences[w] = new BitSet();
+        }
+        long balance = 0;
+        int previousDay = Integer.MAX_VALUE;
+        int previousSecond = Integer.MAX_VALUE;
+
+        for (int position = 0; position < snapshot.size(); position++) {
+            int row = snapshot.rowAt(position);
+            long cents = Math.abs(snapshot.amountCents(row)) - 1;
+            int writer = (int) (cents / SEQUENCES_PER_WRITER);
+            int sequence = (int) (cents % SEQUENCES_PER_WRITER);
+            Transaction expected = transaction(writer, sequence);
+            Transaction actual = snapshot.get(row);
+            if (writer >= WRITERS || !actual.getDate().equals(expected.getDate()) || !actual.getTime().equals(expected.getTime())
+                    || !actual.getDescription().equals(expected.getDescription()) || !actual.getVendor().equals(expected.getVendor())
+                    || !actual.getAmount().equals(expected.getAmount())) {
+                throw new IllegalStateException("Torn row " + row + ": " + actual);
+            }
+
+            int day = snapshot.epochDay(row);
+            int second = snapshot.secondOfDay(row);
+            if (day > previousDay || (day == previousDay && second > previousSecond)) {
+                throw new IllegalStateException("Rows out of order at position " + position);
+            }
+            previousDay = day;
+            previousSecond = second;
+
+            if (sequences[writer].get(sequence)) {
+                throw new IllegalStateException("Writer " + writer + " has sequence " + sequence + " twice");
+            }
+            sequences[writer].set(sequence);
+            counts[writer]++;
+            balance += snapshot.amountCents(row);
+        }
+
+        //Each writer's transactions are added in the order it sent them, so anything but 0 to k-1 is a lost one
+        for (int w = 0; w < WRITERS; w++) {
+            if (sequences[w].length() != counts[w]) {
+                throw new IllegalStateException("Writer " + w + " is missing sequence " + sequences[w].nextClearBit(0));
+            }
+        }
+        if (snapshot.totals().overall().getCount() != snapshot.size() || snapshot.totals().overall().getBalanceCents() != balance) {
+            throw new IllegalStateException("Totals don't match the rows of the snapshot");
+        }
+        return counts;
+    }
+
+    private static boolean done(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Thread start(List<Throwable> failures, String name, Runnable work) {
+        Thread thread = new Thread(() -> {
+            try {
+                work.run();
+            } catch (Throwable failure) {
+                synchronized (failures) {
+                    failures.add(failure);
+                }
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,155 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LedgerAnalyticsTest {
+    @Test
+    void vendorsShareAGroupWhateverTheirCaseAndGoLargestFirst() {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(GroupKey.VENDOR);
+        List<LedgerAnalytics.Group> groups = analytics.run(store());
+
+        assertEquals(List.of("Costco", "Dave", "Bob"), keys(groups));
+        assertEquals(3, groups.get(0).getCount());
+        assertEquals(-37500, groups.get(0).getTotal().getCents());
+        assertEquals(-12500, groups.get(0).getAverage().getCents());
+        assertEquals(4, groups.get(1).getCount());
+        assertEquals(3400, groups.get(1).getTotal().getCents());
+        //1 and 2 cents average to 1.5, halves are rounded up
+        assertEquals(2, groups.get(2).getAverage().getCents());
+        assertNull(groups.get(0).getThenKey());
+        assertNull(groups.get(0).getChangePercent());
+    }
+
+    @Test
+    void vendorThenMonthComparesEachVendorWithItsMonthBefore() {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(GroupKey.VENDOR);
+        analytics.setThenBy(GroupKey.MONTH);
+        List<LedgerAnalytics.Group> groups = analytics.run(store());
+
+        //Months without rows are left out
+        assertEquals(List.of("Costco 2025-01", "Costco 2025-02", "Dave 2025-01", "Dave 2025-02", "Dave 2025-03", "Bob 2025-03"),
+                labels(groups));
+        assertNull(groups.get(0).getChangePercent());
+        //150.00 spent in January, 225.00 in February
+        assertEquals(50.0, groups.get(1).getChangePercent(), 1e-9);
+        assertEquals((2001 - 1899) * 100.0 / 1899, groups.get(3).getChangePercent(), 1e-9);
+        //From a profit to a loss
+        assertNull(groups.get(4).getChangePercent());
+        //Nothing from Bob in February to compare with
+        assertNull(groups.get(5).getChangePercent());
+    }
+
+    @Test
+    void monthThenVendorComparesTheSameVendorAcrossMonths() {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(GroupKey.MONTH);
+        analytics.setThenBy(GroupKey.VENDOR);
+        List<LedgerAnalytics.Group> groups = analytics.run(store());
+
+        assertEquals(List.of("2025-01 Costco", "2025-01 Dave", "2025-02 Costco", "2025-02 Dave", "2025-03 Dave", "2025-03 Bob"),
+                labels(groups));
+        assertEquals(50.0, groups.get(2).getChangePercent(), 1e-9);
+        assertEquals(2001, groups.get(3).getTotal().getCents());
+        assertNull(groups.get(0).getChangePercent());
+    }
+
+    @Test
+    void paymentsOfAFewWeeks() {
+        LedgerAnalytics analytics = new LedgerAnalytics();
+        analytics.setGroupBy(GroupKey.WEEK);
+        analytics.setInclude(LedgerAnalytics.Include.PAYMENTS);
+        analytics.setStart(LocalDate.of(2025, 1, 15));
+        analytics.setEnd(LocalDate.of(2025, 2, 28));
+        List<LedgerAnalytics.Group> groups = analytics.run(store());
+
+        //Weeks are counted from the oldest day of the report and start on Monday
+        assertEquals(List.of("week of 2025-01-20", "week of 2025-02-03"), keys(groups));
+        assertEquals(-5000, groups.get(0).getTotal().getCents());
+        assertEquals(-22500, groups.get(1).getTotal().getCents());
+        //Two weeks in between had no payments
+        assertNull(groups.get(1).getChangePercent());
+        //Every row of the dates is read, deposits too
+        assertEquals(4, analytics.getRowsRead());
+    }
+
+    @Test
+    void rangesAddedUpOnTheForkJoinPoolMatchOneByOne() {
+        Random random = new Random(7);
+        LocalDate firstDay = LocalDate.of(2020, 1, 1);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            transactions.add(new Transaction(firstDay.plusDays(random.nextInt(1_000)), LocalTime.NOON, "Order",
+                    "Vendor " + random.nextInt(40), Money.ofCents(random.nextInt(20_000) - 10_000)));
+        }
+        TransactionStore store = new TransactionStore();
+        store.addAll(transactions);
+
+        //The whole ledger is read by row id, a range of dates by position
+        for (LocalDate end : new LocalDate[]{null, firstDay.plusDays(600)}) {
+            Map<String, long[]> expected = new HashMap<>();
+            for (Transaction transaction : transactions) {
+                if (end == null || !transaction.getDate().isAfter(end)) {
+                    long[] figures = expected.computeIfAbsent(transaction.getVendor(), vendor -> new long[2]);
+                    figures[0]++;
+                    figures[1] += transaction.getAmount().getCents();
+                }
+            }
+
+            LedgerAnalytics analytics = new LedgerAnalytics();
+            analytics.setEnd(end);
+            List<LedgerAnalytics.Group> groups = analytics.run(store);
+            assertEquals(expected.size(), groups.size());
+            for (LedgerAnalytics.Group group : groups) {
+                assertEquals(expected.get(group.getKey())[0], group.getCount(), group.getKey());
+                assertEquals(expected.get(group.getKey())[1], group.getTotal().getCents(), group.getKey());
+            }
+        }
+    }
+
+    private static TransactionStore store() {
+        TransactionStore store = new TransactionStore();
+        store.addAll(List.of(
+                transaction(2025, 1, 5, "Flour", "Costco", -10000),
+                transaction(2025, 1, 10, "Large Pepperoni", "Dave", 1899),
+                transaction(2025, 1, 20, "Cheese", "COSTCO", -5000),
+                transaction(2025, 2, 3, "Flour", "costco", -22500),
+                transaction(2025, 2, 11, "Large Pepperoni", "Dave", 1000),
+                transaction(2025, 2, 12, "Large Pepperoni", "Dave", 1001),
+                transaction(2025, 3, 1, "Refund", "Dave", -500),
+                transaction(2025, 3, 2, "Tip", "Bob", 1),
+                transaction(2025, 3, 3, "Tip", "Bob", 2)));
+        return store;
+    }
+
+    private static Transaction transaction(int year, int month, int day, String description, String vendor, long cents) {
+        return new Transaction(LocalDate.of(year, month, day), LocalTime.NOON, description, vendor, Money.ofCents(cents));
+    }
+
+    private static List<String> keys(List<LedgerAnalytics.Group> groups) {
+        List<String> keys = new ArrayList<>();
+        for (LedgerAnalytics.Group group : groups) {
+            keys.add(group.getKey());
+        }
+        return keys;
+    }
+
+    private static List<String> labels(List<LedgerAnalytics.Group> groups) {
+        List<String> labels = new ArrayList<>();
+        for (LedgerAnalytics.Group group : groups) {
+            labels.add(group.getKey() + " " + group.getThenKey());
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,207 @@
+package com.pluralsight;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerArchiveTest {
+    private static final String JUNE = "2025-06-03|11:00:00|Large Pepperoni|Dave|18.99\n"
+            + "2025-06-20|12:00:00|Flour|Costco|-120.00\n";
+    private static final String JULY = "2025-07-04|13:00:00|Catering|Bob|1250.00\n";
+    private static final String AUGUST = "2025-08-15|14:00:00|Cheese|Costco|-80.50\n";
+    private static final String SEPTEMBER = "2025-09-01|15:00:00|Large Pepperoni|Dave|18.99\n";
+
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    @TempDir
+    Path folder;
+
+    private Path file;
+
+    @BeforeEach
+    void writeLedger() throws IOException {
+        file = folder.resolve("transactions.csv");
+        //Not in date order, the way a file looks after late receipts
+        Files.writeString(file, JULY + SEPTEMBER + JUNE + AUGUST, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void commitMovesTheClosedMonthsIntoSegments() throws IOException {
+        compact(YearMonth.of(2025, 8));
+
+        List<LedgerArchive.Segment> segments = LedgerArchive.segments(file);
+        assertEquals(2, segments.size());
+        assertEquals(YearMonth.of(2025, 6), segments.get(0).getMonth());
+        assertEquals(LocalDate.of(2025, 6, 3), segments.get(0).getFirstDate());
+        assertEquals(LocalDate.of(2025, 6, 20), segments.get(0).getLastDate());
+        assertEquals(2, segments.get(0).getRows());
+        assertEquals(1899, segments.get(0).getTotals().getDepositCents());
+        assertEquals(-12000, segments.get(0).getTotals().getPaymentCents());
+        assertEquals(YearMonth.of(2025, 7), segments.get(1).getMonth());
+        assertEquals(JULY.length(), segments.get(1).getLineBytes());
+
+        assertEquals(SEPTEMBER + AUGUST, read(file));
+        assertFalse(Files.exists(LedgerSnapshot.pathFor(file)));
+        assertEquals(List.of(JUNE, JULY), archivedLines());
+    }
+
+    @Test
+    void secondCompactionOnlyTakesTheNewMonths() throws IOException {
+        compact(YearMonth.of(2025, 8));
+        //A late receipt of a month that is already archived
+        String lateJune = "2025-06-30|23:00:00|Tip jar|Dave|5.00\n";
+        Files.writeString(file, lateJune, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        compact(YearMonth.of(2025, 9));
+
+        assertEquals(SEPTEMBER + lateJune, read(file));
+        assertEquals(List.of(JUNE, JULY, AUGUST), archivedLines());
+        assertEquals(6, reload().size());
+
+        //And the next one still runs, there is nothing left to take
+        assertNull(LedgerArchive.prepare(file, reload(), YearMonth.of(2025, 9)));
+        compact(YearMonth.of(2025, 10));
+        assertEquals(lateJune, read(file));
+        assertEquals(6, reload().size());
+    }
+
+    @Test
+    void linesAppendedAfterPrepareStayInTheFile() throws IOException {
+        LedgerArchive.Compaction compaction = LedgerArchive.prepare(file, reload(), YearMonth.of(2025, 8));
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("records:100"))) {
+            //Backdated into a month that is being archived, and still waiting in the log when commit starts
+            log.append(new Transaction(LocalDate.of(2025, 7, 31), LocalTime.of(22, 0), "Late delivery", "Bob",
+                    Money.ofCents(4000)));
+            compaction.commit(log);
+            log.append(new Transaction(LocalDate.of(2025, 9, 2), LocalTime.NOON, "Flour", "Costco", Money.ofCents(-6000)));
+        }
+
+        assertEquals(SEPTEMBER + AUGUST + "2025-07-31|22:00:00|Late delivery|Bob|40.00\n"
+                + "2025-09-02|12:00:00|Flour|Costco|-60.00\n", read(file));
+        assertEquals(List.of(JUNE, JULY), archivedLines());
+        assertEquals(7, reload().size());
+    }
+
+    @Test
+    void commitRefusesAFileThatLostArchivedRows() throws IOException {
+        LedgerArchive.Compaction compaction = LedgerArchive.prepare(file, reload(), YearMonth.of(2025, 8));
+        Files.writeString(file, SEPTEMBER + AUGUST + JULY, StandardCharsets.UTF_8);
+
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            assertThrows(IOException.class, () -> compaction.commit(log));
+        }
+        assertEquals(SEPTEMBER + AUGUST + JULY, read(file));
+        assertTrue(LedgerArchive.segments(file).isEmpty());
+        assertFalse(LedgerArchive.recover(file));
+        assertEquals(0, countFiles(LedgerArchive.pathFor(file)));
+    }
+
+    @Test
+    void recoverFinishesACompactionThatWasDecided() throws IOException {
+        LedgerArchive.prepare(file, reload(), YearMonth.of(2025, 8));
+        //A crash right after the rewritten file was saved, before the segments got their names
+        Files.writeString(folder.resolve("transactions.csv.compacted"), SEPTEMBER + AUGUST, StandardCharsets.UTF_8);
+        assertTrue(LedgerArchive.segments(file).isEmpty());
+
+        assertTrue(LedgerArchive.recover(file));
+        assertEquals(SEPTEMBER + AUGUST, read(file));
+        assertFalse(Files.exists(folder.resolve("transactions.csv.compacted")));
+        assertEquals(List.of(JUNE, JULY), archivedLines());
+        assertEquals(5, reload().size());
+    }
+
+    @Test
+    void recoverThrowsAwayACompactionThatWasNotDecided() throws IOException {
+        LedgerArchive.prepare(file, reload(), YearMonth.of(2025, 8));
+        assertEquals(2, countFiles(LedgerArchive.pathFor(file)));
+
+        assertFalse(LedgerArchive.recover(file));
+        assertEquals(JULY + SEPTEMBER + JUNE + AUGUST, read(file));
+        assertEquals(0, countFiles(LedgerArchive.pathFor(file)));
+        assertEquals(5, reload().size());
+    }
+
+    @Test
+    void loadReadsEverySegmentOldestFirst() throws IOException {
+        compact(YearMonth.of(2025, 9));
+
+        List<Transaction> archived = new ArrayList<>();
+        LedgerArchive.load(file, archived);
+        assertEquals(4, archived.size());
+        assertEquals(LocalDate.of(2025, 6, 3), archived.get(0).getDate());
+        assertEquals(LocalDate.of(2025, 8, 15), archived.get(3).getDate());
+        assertEquals("Catering", archived.get(2).getDescription());
+        assertEquals(125000, archived.get(2).getAmount().getCents());
+    }
+
+    private void compact(YearMonth closedBefore) throws IOException {
+        LedgerArchive.Compaction compaction = LedgerArchive.prepare(file, reload(), closedBefore);
+        if (compaction == null) {
+            return;
+        }
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            compaction.commit(log);
+        }
+    }
+
+    //The ledger the way a start without a snapshot loads it
+    private TransactionStore reload() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        LedgerArchive.load(file, transactions);
+        assertTrue(LedgerLoader.load(file, transactions).isEmpty());
+        TransactionStore store = new TransactionStore();
+        store.addAll(transactions);
+        return store;
+    }
+
+    //The lines of every segment, one string per month
+    private List<String> archivedLines() throws IOException {
+        List<String> months = new ArrayList<>();
+        for (LedgerArchive.Segment segment : LedgerArchive.segments(file)) {
+            List<Transaction> rows = new ArrayList<>();
+            LedgerArchive.load(file, rows);
+            StringBuilder lines = new StringBuilder();
+            for (Transaction transaction : rows) {
+                if (YearMonth.from(transaction.getDate()).equals(segment.getMonth())) {
+                    lines.append(transaction.getDate()).append('|')
+                            .append(transaction.getTime().format(TIME_FMT)).append('|')
+                            .append(transaction.getDescription()).append('|')
+                            .append(transaction.getVendor()).append('|');
+                    Money.appendTo(lines, transaction.getAmount().getCents()).append('\n');
+                }
+            }
+            months.add(lines.toString());
+        }
+        return months;
+    }
+
+    private static String read(Path path) throws IOException {
+        return Files.readString(path, StandardCharsets.UTF_8);
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.count();
+        }
+    }
+}
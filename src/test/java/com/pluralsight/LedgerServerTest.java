@@ -0,0 +1,88 @@
+package com.pluralsight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LedgerServerTest {
+    @TempDir
+    Path folder;
+
+    private Path file;
+    private AppendLog log;
+    private ConcurrentLedger ledger;
+    private LedgerServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        file = folder.resolve("transactions.csv");
+        log = AppendLog.open(file, FsyncPolicy.parse("record"));
+        ledger = ConcurrentLedger.start(new TransactionStore(), log, 16);
+        server = LedgerServer.start(ledger, 0);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.stop();
+        ledger.close();
+        log.close();
+    }
+
+    @Test
+    void depositIsSavedAsOneLine() throws Exception {
+        assertEquals(201, post("/deposits", "Large Pepperoni", "Dave"));
+        assertEquals("2025-10-14|15:47:23|Large Pepperoni|Dave|18.99\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void lineBreaksAndBarsAreRejected() throws Exception {
+        //JSON escapes, the server gets a real line break, carriage return, tab and bell
+        assertEquals(400, post("/deposits", "Two\\nlines|x", "Dave"));
+        assertEquals(400, post("/payments", "Flour", "Cost|co"));
+        assertEquals(400, post("/payments", "Flo\\rur", "Costco"));
+        assertEquals(400, post("/deposits", "Large\\tPepperoni", "Dave"));
+        assertEquals(400, post("/deposits", "Large Pepperoni", "Da\\u0007ve"));
+
+        assertEquals("", Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals(0, ledger.snapshot().size());
+    }
+
+    @Test
+    void ledgerRefusesWhatTheServerWouldReject() {
+        Transaction torn = new Transaction(LocalDate.of(2025, 10, 14), LocalTime.NOON, "Two\nlines", "Dave",
+                Money.ofCents(1899));
+
+        CompletionException failure = assertThrows(CompletionException.class, () -> ledger.submit(torn).join());
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        assertEquals(0, ledger.snapshot().size());
+    }
+
+    private int post(String path, String description, String vendor) throws Exception {
+        String body = "{\"date\":\"2025-10-14\",\"time\":\"15:47:23\",\"description\":\"" + description
+                + "\",\"vendor\":\"" + vendor + "\",\"amount\":18.99}";
+        //The server only listens on the loopback address
+        URI uri = new URI("http", null, InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), path, null, null);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+}
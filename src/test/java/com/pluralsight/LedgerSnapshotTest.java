@@ -0,0 +1,119 @@
+package com.pluralsight;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerSnapshotTest {
+    private static final int ROWS = 20_000;
+
+    @TempDir
+    Path folder;
+
+    private Path file;
+    private Path snapshot;
+
+    @BeforeEach
+    void writeLedger() throws IOException {
+        file = folder.resolve("transactions.csv");
+        snapshot = LedgerSnapshot.pathFor(file);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            lines.append(String.format("2025-%02d-%02d|%02d:%02d:00|Order %d|Vendor %d|%d.50%n",
+                    i % 12 + 1, i % 28 + 1, i % 24, i % 60, i % 97, i % 13, (i % 5 == 0) ? -(i % 300) : i % 300));
+        }
+        Files.writeString(file, lines, StandardCharsets.UTF_8);
+        assertTrue(Files.size(file) > 512 * 1024, "The ledger has to be bigger than the checked head and tail used to be");
+    }
+
+    @Test
+    void loadsWhatWasWritten() throws IOException {
+        TransactionStore store = loadFile();
+        LedgerSnapshot.write(snapshot, file, store);
+
+        TransactionStore restored = new TransactionStore();
+        assertEquals(Files.size(file), LedgerSnapshot.load(snapshot, file, restored));
+        assertSame(store, restored);
+    }
+
+    @Test
+    void linesAppendedAfterTheSnapshotAreLeftToParse() throws IOException {
+        LedgerSnapshot.write(snapshot, file, loadFile());
+        long covered = Files.size(file);
+        Files.writeString(file, "2025-12-31|23:59:00|Large Pepperoni|Dave|18.99\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        assertEquals(covered, LedgerSnapshot.load(snapshot, file, new TransactionStore()));
+    }
+
+    @Test
+    void snapshotTakenWhileWatchingCoversOnlyTheLoadedLines() throws IOException {
+        //Another register is halfway through a line when the file is loaded
+        append("2025-12-30|12:00:00|Catering|Bob|12");
+        long loadedBytes = AppendLog.wholeLinesEnd(file);
+        List<Transaction> loaded = new ArrayList<>();
+        assertTrue(LedgerLoader.load(file, 0, loadedBytes, loaded).isEmpty());
+        TransactionStore store = new TransactionStore();
+        store.addAll(loaded);
+        append("50.00\n2025-12-31|23:59:00|Large Pepperoni|Dave|18.99\n");
+
+        LedgerSnapshot.write(snapshot, file, store, loadedBytes);
+
+        TransactionStore restored = new TransactionStore();
+        assertEquals(loadedBytes, LedgerSnapshot.load(snapshot, file, restored));
+        List<Transaction> replayed = new ArrayList<>();
+        assertTrue(LedgerLoader.load(file, loadedBytes, Files.size(file), replayed).isEmpty());
+        assertEquals(ROWS, restored.size());
+        assertEquals(2, replayed.size());
+        assertEquals(125000, replayed.get(0).getAmount().getCents());
+    }
+
+    @Test
+    void editInTheMiddleThatKeepsTheLengthIsCaught() throws IOException {
+        LedgerSnapshot.write(snapshot, file, loadFile());
+
+        //Fixing an amount in the middle of the file, 12.50 becomes 21.50
+        byte[] bytes = Files.readAllBytes(file);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int amount = text.indexOf("|12.50", bytes.length / 2);
+        assertTrue(amount > 0);
+        bytes[amount + 1] = '2';
+        bytes[amount + 2] = '1';
+        Files.write(file, bytes);
+
+        TransactionStore restored = new TransactionStore();
+        assertEquals(-1, LedgerSnapshot.load(snapshot, file, restored));
+        assertEquals(0, restored.size());
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private TransactionStore loadFile() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        assertTrue(LedgerLoader.load(file, transactions).isEmpty());
+        TransactionStore store = new TransactionStore();
+        store.addAll(transactions);
+        return store;
+    }
+
+    private static void assertSame(TransactionStore expected, TransactionStore actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.totals().overall().getBalanceCents(), actual.totals().overall().getBalanceCents());
+        for (int position = 0; position < expected.size(); position++) {
+            assertEquals(expected.get(expected.rowAt(position)).toString(), actual.get(actual.rowAt(position)).toString());
+            assertEquals(expected.rowByAmount(position), actual.rowByAmount(position));
+        }
+    }
+}
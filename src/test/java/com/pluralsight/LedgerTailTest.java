@@ -0,0 +1,138 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LedgerTailTest {
+    private static final String PEPPERONI = "2025-10-14|15:47:23|Large Pepperoni|Dave|18.99\n";
+    private static final String FLOUR = "2025-10-14|16:02:10|Flour|Costco|-120.00\n";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void linesThisAppSavedAreNotAddedTwice() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            ConcurrentLedger ledger = ConcurrentLedger.start(new TransactionStore(), log, 16);
+            try (LedgerTail tail = LedgerTail.start(file, 0, ledger, log)) {
+                ledger.submit(pizza(1899)).get();
+                append(file, FLOUR);
+                ledger.submit(pizza(2500)).get();
+
+                assertEquals(Files.size(file), catchUp(ledger, tail));
+                assertEquals(3, ledger.snapshot().size());
+                assertEquals(1899 + 2500 - 12000, ledger.totals().overall().getBalanceCents());
+                assertEquals(1, tail.getRowsAdded());
+                assertEquals(0, tail.getLinesSkipped());
+                assertNull(tail.getLastProblem());
+            } finally {
+                ledger.close();
+            }
+        }
+    }
+
+    @Test
+    void halfWrittenLineIsReadOnceItIsWhole() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        Files.writeString(file, PEPPERONI, StandardCharsets.UTF_8);
+        List<Transaction> loaded = new ArrayList<>();
+        LedgerLoader.load(file, loaded);
+        TransactionStore store = new TransactionStore();
+        store.addAll(loaded);
+
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            ConcurrentLedger ledger = ConcurrentLedger.start(store, log, 16);
+            try (LedgerTail tail = LedgerTail.start(file, PEPPERONI.length(), ledger, log)) {
+                //Catering|Bob|12 would read as 12.00 if it were taken before the rest of 1250.00 arrives
+                append(file, "2025-10-15|10:00:00|Catering|Bob|12");
+                assertEquals(PEPPERONI.length(), catchUp(ledger, tail));
+                assertEquals(1, ledger.snapshot().size());
+
+                append(file, "50.00\n");
+                assertEquals(Files.size(file), catchUp(ledger, tail));
+                assertEquals(2, ledger.snapshot().size());
+                assertEquals(1899 + 125000, ledger.totals().overall().getBalanceCents());
+                assertEquals(1, tail.getRowsAdded());
+                assertEquals(0, tail.getLinesSkipped());
+            } finally {
+                ledger.close();
+            }
+        }
+    }
+
+    @Test
+    void halfLineCutOffByThisAppIsSkipped() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            ConcurrentLedger ledger = ConcurrentLedger.start(new TransactionStore(), log, 16);
+            try (LedgerTail tail = LedgerTail.start(file, 0, ledger, log)) {
+                append(file, "2025-10-15|10:00:00|Catering|Bob|12");
+                //Our batch lands right after the half line and the other program's rest comes after that
+                ledger.submit(pizza(1899)).get();
+                append(file, "50.00\n" + FLOUR);
+
+                assertEquals(Files.size(file), catchUp(ledger, tail));
+                //The catering is lost, its two halves are read as bad lines, and the flour after it is read
+                assertEquals(2, ledger.snapshot().size());
+                assertEquals(1899 - 12000, ledger.totals().overall().getBalanceCents());
+                assertEquals(1, tail.getRowsAdded());
+                assertEquals(2, tail.getLinesSkipped());
+            } finally {
+                ledger.close();
+            }
+        }
+    }
+
+    @Test
+    void snapshotWithoutATailCoversOnlyTheLoadedLines() throws Exception {
+        Path file = folder.resolve("transactions.csv");
+        Files.writeString(file, PEPPERONI, StandardCharsets.UTF_8);
+        long loadedBytes = AppendLog.wholeLinesEnd(file);
+        List<Transaction> loaded = new ArrayList<>();
+        LedgerLoader.load(file, 0, loadedBytes, loaded);
+        TransactionStore store = new TransactionStore();
+        store.addAll(loaded);
+
+        try (AppendLog log = AppendLog.open(file, FsyncPolicy.parse("record"))) {
+            //The tail couldn't be started, another register goes on appending
+            append(file, FLOUR);
+            long covered = LedgerTail.coveredBytes(null, true, loadedBytes, log.getBytesWritten());
+            assertEquals(loadedBytes, covered);
+            Path snapshot = LedgerSnapshot.pathFor(file);
+            LedgerSnapshot.write(snapshot, file, store, covered);
+            assertEquals(loadedBytes, LedgerSnapshot.load(snapshot, file, new TransactionStore()));
+
+            //Once this app appended too, its lines and the other register's can't be told apart
+            log.append(pizza(2500));
+            assertEquals(-1, LedgerTail.coveredBytes(null, true, loadedBytes, log.getBytesWritten()));
+            assertEquals(Long.MAX_VALUE, LedgerTail.coveredBytes(null, false, loadedBytes, log.getBytesWritten()));
+        }
+    }
+
+    //catchUp has to run on the writer thread, the watcher may have caught up already and then there's nothing left
+    private static long catchUp(ConcurrentLedger ledger, LedgerTail tail) throws Exception {
+        long[] offset = new long[1];
+        ledger.betweenBatches(store -> offset[0] = tail.catchUp()).get();
+        return offset[0];
+    }
+
+    private static void append(Path file, String text) throws Exception {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private static Transaction pizza(long cents) {
+        return new Transaction(LocalDate.of(2025, 10, 14), LocalTime.NOON, "Large Pepperoni", "Dave", Money.ofCents(cents));
+    }
+}
@@ -0,0 +1,56 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    @Test
+    void parseReadsShortAndPaddedDecimals() {
+        assertEquals(-50, Money.parse("-0.5").getCents());
+        assertEquals(100, Money.parse("1.").getCents());
+        assertEquals(25, Money.parse(".25").getCents());
+        assertEquals(1234, Money.parse("12.340").getCents());
+        assertEquals(50, Money.parse("+.5").getCents());
+        assertEquals(-500, Money.parse("-5").getCents());
+    }
+
+    @Test
+    void parseRejectsAThirdDecimalThatIsntZero() {
+        assertThrows(NumberFormatException.class, () -> Money.parse("12.345"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("0.001"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.0001"));
+    }
+
+    @Test
+    void parseThrowsInsteadOfWrappingAroundTheLargestLong() {
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07").getCents());
+        assertEquals(-Long.MAX_VALUE, Money.parse("-92233720368547758.07").getCents());
+        assertThrows(NumberFormatException.class, () -> Money.parse("92233720368547758.08"));
+        //Only the missing decimals make it too large
+        assertThrows(NumberFormatException.class, () -> Money.parse("92233720368547759"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("922337203685477580.7"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("99999999999999999999999"));
+    }
+
+    @Test
+    void parseRejectsWhatIsntANumber() {
+        for (String text : new String[]{"", "-", ".", "$5.00", "5,00", "1.2.3", "12a", " 12", "1e3", "--5"}) {
+            assertThrows(NumberFormatException.class, () -> Money.parse(text), text);
+        }
+    }
+
+    @Test
+    void textReadsBackAsTheSameCents() {
+        for (long cents : new long[]{0, 5, -5, 50, -50, 99, -99, 100, -100, 3299, -120000, Long.MAX_VALUE, -Long.MAX_VALUE}) {
+            String text = Money.ofCents(cents).toString();
+            assertEquals(cents, Money.parse(text).getCents(), text);
+            assertEquals(text, Money.appendTo(new StringBuilder(), cents).toString());
+        }
+        assertEquals("-0.05", Money.ofCents(-5).toString());
+        assertEquals("-0.50", Money.ofCents(-50).toString());
+        assertEquals("0.99", Money.ofCents(99).toString());
+        assertEquals("-1200.00", Money.ofCents(-120000).toString());
+    }
+}
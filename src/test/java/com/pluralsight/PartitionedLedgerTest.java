@@ -0,0 +1,104 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PartitionedLedgerTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void currentMonthIsReadWithTheLinesTheFsyncPolicyHoldsBack() throws IOException {
+        LocalDate today = LocalDate.now();
+        Path monthFile = folder.resolve("downtown").resolve(YearMonth.from(today) + ".csv");
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 4, FsyncPolicy.parse("records:100"))) {
+            partitions.add("downtown", pizza(today, 1899));
+
+            //Only part of the month, so it is loaded from its file instead of answered from the manifest
+            assertEquals(1, partitions.totals("downtown", today, today).getCount());
+            assertEquals(1899, partitions.totals("downtown", today, today).getDepositCents());
+
+            partitions.writeManifest();
+            assertEquals("downtown|" + YearMonth.from(today) + "|" + Files.size(monthFile) + "|1|1899|0",
+                    Files.readString(folder.resolve("manifest.csv"), StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    @Test
+    void manifestAnswersWholeMonthsUntilAFileChanges() throws IOException {
+        YearMonth march = YearMonth.of(2024, 3);
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 4, FsyncPolicy.parse("record"))) {
+            partitions.addAll("downtown", List.of(pizza(march.atDay(2), 1899), pizza(march.atDay(20), -500)));
+            partitions.add("uptown", pizza(march.atDay(5), 2500));
+        }
+
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 4, FsyncPolicy.parse("record"))) {
+            //Nothing changed, so nothing is read
+            assertEquals(0, partitions.loadedPartitions());
+            assertEquals(List.of("downtown", "uptown"), partitions.stores());
+            LedgerTotals.Totals march2024 = partitions.totals(null, march.atDay(1), march.atEndOfMonth());
+            assertEquals(3, march2024.getCount());
+            assertEquals(3899, march2024.getBalanceCents());
+            assertEquals(0, partitions.loadedPartitions());
+        }
+
+        //Lines added behind the manifest's back, and a store it doesn't know about
+        Files.writeString(folder.resolve("downtown").resolve("2024-03.csv"), "2024-03-21|12:00:00|Catering|Bob|100.00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.createDirectories(folder.resolve("eastside"));
+        Files.writeString(folder.resolve("eastside").resolve("2024-03.csv"), "2024-03-09|12:00:00|Flour|Costco|-30.00\n",
+                StandardCharsets.UTF_8);
+        Files.delete(folder.resolve("uptown").resolve("2024-03.csv"));
+
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 4, FsyncPolicy.parse("record"))) {
+            assertEquals(2, partitions.loadedPartitions());
+            assertEquals(List.of("downtown", "eastside"), partitions.stores());
+            assertEquals(3, partitions.totals("downtown", march.atDay(1), march.atEndOfMonth()).getCount());
+            assertEquals(-3000, partitions.totals("eastside", march.atDay(1), march.atEndOfMonth()).getBalanceCents());
+        }
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 4, FsyncPolicy.parse("record"))) {
+            //Counted once, the manifest has it now
+            assertEquals(0, partitions.loadedPartitions());
+            assertEquals(8399, partitions.totals(null, march.atDay(1), march.atEndOfMonth()).getBalanceCents());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedMonthsAreDroppedButNotTheCurrentOne() throws IOException {
+        LocalDate today = LocalDate.now();
+        YearMonth first = YearMonth.from(today).minusYears(2);
+        try (PartitionedLedger partitions = PartitionedLedger.open(folder, 2, FsyncPolicy.parse("record"))) {
+            partitions.add("downtown", pizza(today, 1000));
+            for (int i = 0; i < 6; i++) {
+                partitions.add("downtown", pizza(first.plusMonths(i).atDay(10), 100 + i));
+            }
+
+            //forEachMonth loads every month of the range in turn, newest first
+            LocalDate start = first.atDay(5);
+            List<Long> balances = new ArrayList<>();
+            partitions.forEachMonth("downtown", start, today, month -> balances.add(month.totals().overall().getBalanceCents()));
+            assertEquals(List.of(1000L, 105L, 104L, 103L, 102L, 101L, 100L), balances);
+            //Two old months and the current month
+            assertEquals(3, partitions.loadedPartitions());
+
+            assertEquals(1000 + 100 + 101 + 102 + 103 + 104 + 105, partitions.totals("downtown", start, today).getBalanceCents());
+            assertEquals(3, partitions.loadedPartitions());
+        }
+    }
+
+    private static Transaction pizza(LocalDate date, long cents) {
+        return new Transaction(date, LocalTime.NOON, "Large Pepperoni", "Dave", Money.ofCents(cents));
+    }
+}
@@ -0,0 +1,115 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReportCacheTest {
+    private static final LocalDate SEPTEMBER_FIRST = LocalDate.of(2025, 9, 1);
+    private static final LocalDate SEPTEMBER_LAST = LocalDate.of(2025, 9, 30);
+    private static final LocalDate TODAY = LocalDate.of(2025, 10, 14);
+
+    private final AtomicLong version = new AtomicLong();
+    private final ReportCache cache = new ReportCache(10, version::get);
+    private int runs;
+
+    @Test
+    void batchInsideTheDatesDropsTheResult() {
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        addBatch(LocalDate.of(2025, 9, 15));
+
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        assertEquals(2, runs);
+    }
+
+    @Test
+    void saleRungUpTodayLeavesAClosedMonthKept() {
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        addBatch(TODAY);
+
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        assertEquals(1, runs);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void openEndedDatesAreDroppedByEveryBatch() {
+        report("since", SEPTEMBER_FIRST, null, 1);
+        report("until", null, SEPTEMBER_LAST, 1);
+        report("all", null, null, 1);
+        addBatch(TODAY);
+        addBatch(LocalDate.of(2000, 1, 1));
+
+        report("since", SEPTEMBER_FIRST, null, 1);
+        report("until", null, SEPTEMBER_LAST, 1);
+        report("all", null, null, 1);
+        assertEquals(6, runs);
+    }
+
+    @Test
+    void fullCacheDropsTheResultUsedLongestAgo() {
+        report("first", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        report("second", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        //Using the first makes the second the one used longest ago
+        report("first", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        report("third", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        assertEquals(3, runs);
+
+        report("first", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        report("third", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        assertEquals(3, runs);
+        report("second", SEPTEMBER_FIRST, SEPTEMBER_LAST, 4);
+        assertEquals(4, runs);
+    }
+
+    @Test
+    void resultIsNotKeptWhenABatchInItsDatesCameInWhileItRan() {
+        cache.get("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, () -> {
+            runs++;
+            addBatch(LocalDate.of(2025, 9, 15));
+            return "result";
+        }, result -> 1);
+
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        assertEquals(2, runs);
+
+        //A batch outside the dates while it runs doesn't matter
+        cache.get("months", SEPTEMBER_FIRST, SEPTEMBER_LAST, () -> {
+            runs++;
+            addBatch(TODAY);
+            return "result";
+        }, result -> 1);
+        report("months", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        assertEquals(3, runs);
+    }
+
+    @Test
+    void resultIsNotKeptWhenTooManyBatchesCameInWhileItRan() {
+        cache.get("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, () -> {
+            runs++;
+            //Far more batches than the cache remembers the dates of, all outside the report
+            for (int i = 0; i < 100; i++) {
+                addBatch(TODAY);
+            }
+            return "result";
+        }, result -> 1);
+
+        report("vendors", SEPTEMBER_FIRST, SEPTEMBER_LAST, 1);
+        assertEquals(2, runs);
+    }
+
+    private void report(String report, LocalDate start, LocalDate end, int items) {
+        cache.get(report, start, end, () -> {
+            runs++;
+            return report;
+        }, result -> items);
+    }
+
+    //What the ConcurrentLedger does for a batch of one transaction
+    private void addBatch(LocalDate date) {
+        cache.added(version.incrementAndGet(), new int[]{(int) date.toEpochDay()});
+    }
+}
@@ -0,0 +1,151 @@
+package com.pluralsight;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionSearchTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    private static final int ROWS = 20_000;
+    private static final int PAGE_SIZE = 50;
+
+    private static TransactionStore store;
+
+    @BeforeAll
+    static void fillStore() {
+        Random random = new Random(7);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            //Whole dollars from -$100 to $100, so every amount comes up about a hundred times
+            transactions.add(new Transaction(
+                    FIRST_DAY.plusDays(random.nextInt(2_000)),
+                    LocalTime.ofSecondOfDay(random.nextInt(86_400)),
+                    "Order " + random.nextInt(30),
+                    "Vendor " + random.nextInt(40),
+                    Money.ofCents((random.nextInt(201) - 100) * 100L)));
+        }
+        store = new TransactionStore();
+        store.addAll(transactions);
+    }
+
+    @Test
+    void amountRangeWithDatesAndVendorMatchesAFilterOfEveryRow() {
+        TransactionSearch search = new TransactionSearch();
+        search.setStart(LocalDate.of(2021, 3, 1));
+        search.setEnd(LocalDate.of(2023, 6, 30));
+        search.setVendor("vendor 7");
+        search.setMinAmount(Money.ofCents(-2_500));
+        search.setMaxAmount(Money.ofCents(4_000));
+
+        List<Integer> found = rows(search.find(store, PAGE_SIZE));
+        assertTrue(found.size() > 50);
+        assertEquals(bruteForce(LocalDate.of(2021, 3, 1), LocalDate.of(2023, 6, 30), "Vendor 7", -2_500, 4_000), found);
+    }
+
+    @Test
+    void amountRangeReadsFromTheAmountsOrTheDatesAlike() {
+        //A few amounts over every date, read from the amount order
+        TransactionSearch narrowAmounts = new TransactionSearch();
+        narrowAmounts.setMinAmount(Money.ofCents(9_900));
+        assertEquals(bruteForce(null, null, null, 9_900, Long.MAX_VALUE), rows(narrowAmounts.find(store, PAGE_SIZE)));
+
+        //Every amount but the largest over a few days, read from the dates
+        TransactionSearch narrowDates = new TransactionSearch();
+        narrowDates.setStart(LocalDate.of(2022, 5, 1));
+        narrowDates.setEnd(LocalDate.of(2022, 5, 20));
+        narrowDates.setMaxAmount(Money.ofCents(9_000));
+        assertEquals(bruteForce(LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 20), null, Long.MIN_VALUE, 9_000),
+                rows(narrowDates.find(store, PAGE_SIZE)));
+
+        TransactionSearch empty = new TransactionSearch();
+        empty.setMinAmount(Money.ofCents(100));
+        empty.setMaxAmount(Money.ofCents(-100));
+        assertTrue(rows(empty.find(store, PAGE_SIZE)).isEmpty());
+    }
+
+    @Test
+    void largestAndSmallestBreakTiesLikeTheAmountOrder() {
+        //Walking the amount order, no dates
+        assertRanked(new TransactionSearch(), null, null, null, 250);
+
+        //Selecting from a few days in a heap
+        TransactionSearch days = new TransactionSearch();
+        days.setStart(LocalDate.of(2022, 5, 1));
+        days.setEnd(LocalDate.of(2022, 5, 10));
+        assertRanked(days, LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 10), null, 30);
+
+        //Selecting from the rows of a vendor in the dates
+        TransactionSearch vendor = new TransactionSearch();
+        vendor.setVendor("Vendor 3");
+        vendor.setStart(LocalDate.of(2021, 1, 1));
+        assertRanked(vendor, LocalDate.of(2021, 1, 1), null, "Vendor 3", 120);
+    }
+
+    @Test
+    void countLargerThanTheMatchesGivesEveryMatch() {
+        TransactionSearch search = new TransactionSearch();
+        search.setStart(LocalDate.of(2022, 5, 1));
+        search.setEnd(LocalDate.of(2022, 5, 3));
+        int matches = bruteForce(LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 3), null, Long.MIN_VALUE, Long.MAX_VALUE).size();
+
+        assertEquals(matches, rows(search.largest(store, matches + 1_000, PAGE_SIZE)).size());
+        assertRanked(search, LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 3), null, matches + 1_000);
+        assertRanked(new TransactionSearch(), null, null, null, ROWS + 1);
+    }
+
+    @Test
+    void countOfZeroOrLessFindsNothing() {
+        TransactionSearch search = new TransactionSearch();
+        assertTrue(rows(search.largest(store, 0, PAGE_SIZE)).isEmpty());
+        assertTrue(rows(search.smallest(store, -5, PAGE_SIZE)).isEmpty());
+        search.setVendor("Vendor 3");
+        assertTrue(rows(search.largest(store, 0, PAGE_SIZE)).isEmpty());
+    }
+
+    private static void assertRanked(TransactionSearch search, LocalDate start, LocalDate end, String vendor, int count) {
+        List<Integer> matches = bruteForce(start, end, vendor, Long.MIN_VALUE, Long.MAX_VALUE);
+        Comparator<Integer> byAmount = Comparator.<Integer>comparingLong(store::amountCents).thenComparingInt(row -> row);
+
+        List<Integer> smallest = new ArrayList<>(matches);
+        smallest.sort(byAmount);
+        List<Integer> largest = new ArrayList<>(matches);
+        largest.sort(byAmount.reversed());
+        assertEquals(largest.subList(0, Math.min(count, largest.size())), rows(search.largest(store, count, PAGE_SIZE)));
+        assertEquals(smallest.subList(0, Math.min(count, smallest.size())), rows(search.smallest(store, count, PAGE_SIZE)));
+    }
+
+    //Every row in display order that matches, checked one by one
+    private static List<Integer> bruteForce(LocalDate start, LocalDate end, String vendor, long low, long high) {
+        IntPredicate matches = row -> (start == null || store.epochDay(row) >= start.toEpochDay())
+                && (end == null || store.epochDay(row) <= end.toEpochDay())
+                && (vendor == null || store.vendor(row).equals(vendor))
+                && store.amountCents(row) >= low && store.amountCents(row) <= high;
+        List<Integer> rows = new ArrayList<>();
+        for (int position = 0; position < store.size(); position++) {
+            int row = store.rowAt(position);
+            if (matches.test(row)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static List<Integer> rows(PagedView view) {
+        List<Integer> rows = new ArrayList<>();
+        do {
+            for (int row : view.page()) {
+                rows.add(row);
+            }
+        } while (view.next());
+        return rows;
+    }
+}
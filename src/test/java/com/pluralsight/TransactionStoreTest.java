@@ -0,0 +1,127 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransactionStoreTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void snapshotsKeepTheirRowsWhileTheStoreChanges() {
+        Random random = new Random(42);
+        List<Transaction> added = new ArrayList<>();
+        TransactionStore store = new TransactionStore();
+        List<TransactionStore> snapshots = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+
+        //A first load, then batches of every size, one by one adds and backdated rows, with new vendors along the way
+        int[] batches = {30_000, 1, 500, 1, 1, 20_000, 3, 2_000, 1};
+        for (int batch : batches) {
+            List<Transaction> transactions = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                transactions.add(transaction(random, added.size() + i));
+            }
+            if (batch == 1) {
+                store.add(transactions.get(0));
+            } else {
+                store.addAll(transactions);
+            }
+            added.addAll(transactions);
+            snapshots.add(store.snapshot());
+            sizes.add(added.size());
+        }
+        //Enough rows on the same day and amount to split their chunks of both orders, with snapshots in between
+        for (int i = 0; i < 10_000; i++) {
+            Transaction transaction = new Transaction(FIRST_DAY.plusDays(1_000), LocalTime.NOON, "Refill", "Vendor 0",
+                    Money.ofCents(1_250));
+            store.add(transaction);
+            added.add(transaction);
+            if (i % 2_500 == 0) {
+                snapshots.add(store.snapshot());
+                sizes.add(added.size());
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            TransactionStore expected = new TransactionStore();
+            expected.addAll(added.subList(0, sizes.get(i)));
+            assertSame(expected, snapshots.get(i));
+        }
+        assertSame(store.snapshot(), store);
+    }
+
+    @Test
+    void snapshotCantBeChanged() {
+        TransactionStore store = new TransactionStore();
+        store.add(transaction(new Random(1), 0));
+        TransactionStore snapshot = store.snapshot();
+
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(transaction(new Random(2), 1)));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.totals().add(FIRST_DAY, 100));
+        assertEquals(1, snapshot.size());
+    }
+
+    private static Transaction transaction(Random random, int number) {
+        //Vendors keep coming, descriptions repeat, amounts are all over the place
+        return new Transaction(
+                FIRST_DAY.plusDays(random.nextInt(2_000)),
+                LocalTime.ofSecondOfDay(random.nextInt(86_400)),
+                "Order " + random.nextInt(300),
+                "Vendor " + number / 50,
+                Money.ofCents(random.nextInt(200_000) - 100_000));
+    }
+
+    private static void assertSame(TransactionStore expected, TransactionStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int position = 0; position < expected.size(); position++) {
+            assertEquals(expected.rowAt(position), actual.rowAt(position), "Row at position " + position);
+            assertEquals(expected.rowByAmount(position), actual.rowByAmount(position), "Row at amount rank " + position);
+        }
+        int[] expectedRows = new int[expected.size()];
+        int[] actualRows = new int[actual.size()];
+        expected.rowsAt(0, expected.size(), expectedRows);
+        actual.rowsAt(0, actual.size(), actualRows);
+        assertArrayEquals(expectedRows, actualRows);
+
+        for (int vendor = 0; vendor * 50 <= expected.size(); vendor++) {
+            assertArrayEquals(expected.rowsWithVendor("vendor " + vendor), actual.rowsWithVendor("VENDOR " + vendor));
+        }
+        for (int order = 0; order < 300; order += 37) {
+            assertArrayEquals(expected.rowsWithDescription("Order " + order), actual.rowsWithDescription("Order " + order));
+        }
+        assertEquals(suggestions(expected, "vendr 1"), suggestions(actual, "vendr 1"));
+
+        assertTotals(expected.totals().overall(), actual.totals().overall());
+        for (LocalDate day = FIRST_DAY.minusDays(1); day.isBefore(FIRST_DAY.plusDays(2_001)); day = day.plusDays(1)) {
+            assertTotals(expected.totals().day(day), actual.totals().day(day));
+            assertTotals(expected.totals().month(day), actual.totals().month(day));
+            assertTotals(expected.totals().year(day), actual.totals().year(day));
+            assertEquals(expected.firstPositionBefore(day), actual.firstPositionBefore(day));
+        }
+        for (long cents = -100_000; cents <= 100_000; cents += 7_919) {
+            assertEquals(expected.countAmountsBelow(cents), actual.countAmountsBelow(cents));
+        }
+    }
+
+    private static List<String> suggestions(TransactionStore store, String query) {
+        List<String> values = new ArrayList<>();
+        for (SearchSuggestion suggestion : store.suggest(query, 20)) {
+            values.add(suggestion.getValue() + " " + suggestion.getRowCount());
+        }
+        return values;
+    }
+
+    private static void assertTotals(LedgerTotals.Totals expected, LedgerTotals.Totals actual) {
+        assertEquals(expected.getDepositCents(), actual.getDepositCents());
+        assertEquals(expected.getPaymentCents(), actual.getPaymentCents());
+        assertEquals(expected.getCount(), actual.getCount());
+    }
+}
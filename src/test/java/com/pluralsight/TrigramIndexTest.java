@@ -0,0 +1,57 @@
+package com.pluralsight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrigramIndexTest {
+    private static final String[] VALUES = {"Pizza Hut", "Large Pepperoni", "Costco", "Tony's Wholesale", "Flour"};
+    private static final int FILLERS = 1_000;
+
+    @Test
+    void shortTypoSearchesOnlyExamineStringsSharingATrigram() {
+        TrigramIndex index = index();
+
+        for (String query : List.of("pizs", "wxole", "pepler")) {
+            int[] candidates = index.candidates(query);
+            assertTrue(candidates.length < 10, query + " examined " + candidates.length + " strings");
+        }
+        assertEquals(List.of("Pizza Hut FUZZY"), search(index, "pizs"));
+        //A typo right after the first letter of a word that isn't the first one
+        assertEquals(List.of("Tony's Wholesale FUZZY"), search(index, "wxole"));
+        assertEquals(List.of("Large Pepperoni FUZZY"), search(index, "pepler"));
+        assertEquals(List.of("Costco SUBSTRING"), search(index, "stc"));
+    }
+
+    @Test
+    void oneOrTwoLettersStillFindSubstrings() {
+        TrigramIndex index = index();
+
+        assertEquals(VALUES.length + FILLERS, index.candidates("tc").length);
+        assertEquals(List.of("Costco SUBSTRING"), search(index, "tc"));
+    }
+
+    private static TrigramIndex index() {
+        TrigramIndex index = new TrigramIndex();
+        for (String value : VALUES) {
+            index.add(TextIndex.key(value), value);
+        }
+        for (int i = 0; i < FILLERS; i++) {
+            String value = "Vendor " + i;
+            index.add(TextIndex.key(value), value);
+        }
+        index.publish();
+        return index;
+    }
+
+    private static List<String> search(TrigramIndex index, String query) {
+        List<String> found = new ArrayList<>();
+        for (SearchSuggestion suggestion : index.search(query, "vendor", key -> 1)) {
+            found.add(suggestion.getValue() + " " + suggestion.getMatch());
+        }
+        return found;
+    }
+}